@@ -52,9 +52,15 @@ export class ClueClient {
     if (!this.ws) throw new Error('Not connected');
     this.ws.onmessage = (ev) => {
       try { 
-        const msg = JSON.parse(String(ev.data));
-        console.log('[ClueClient] Received message:', msg);
-        handler(msg);
+        const parsed = JSON.parse(String(ev.data));
+        // the server may coalesce several messages from one flush tick into an array frame
+        const msgs: ServerMsg[] = Array.isArray(parsed) ? parsed : [parsed];
+        for (const msg of msgs) {
+          // server heartbeat: answer so an idle tab isn't reaped, and keep it out of the UI
+          if (msg && msg.type === 'PING') { this.ws?.send(JSON.stringify({ type: 'PONG' })); continue; }
+          console.log('[ClueClient] Received message:', msg);
+          handler(msg);
+        }
       } catch (err) {
         console.error('[ClueClient] Failed to parse message:', err);
       }
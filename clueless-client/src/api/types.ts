@@ -42,6 +42,7 @@ export interface LobbySnapshot {
 
 export type ServerMsg =
   | { type: 'PONG'; payload: string }
+  | { type: 'PING' }
   | { type: 'ACK'; for: 'JOIN' | 'JOIN_LOBBY' | 'SELECT_CHARACTER' | 'UNSELECT_CHARACTER' | 'SET_READY' | 'START_GAME' | 'MOVE' | 'MOVE_TO_HALLWAY' | 'MOVE_FROM_HALLWAY' | 'SUGGEST' | 'ACCUSE' | 'END_TURN' | 'NEW_GAME'; state?: GameSnapshot; lobby?: LobbySnapshot; [k: string]: any }
   | { type: 'EVENT'; event: 'JOIN' | 'LOBBY_JOIN' | 'CHARACTER_SELECTED' | 'CHARACTER_UNSELECTED' | 'READY_CHANGED' | 'START_GAME' | 'MOVE' | 'MOVE_TO_HALLWAY' | 'MOVE_FROM_HALLWAY' | 'SUGGEST' | 'ACCUSE' | 'TURN' | 'NEW_GAME' | 'DISPROVE_REVEAL' | 'DISPROVE_DONE'; state?: GameSnapshot; lobby?: LobbySnapshot; [k: string]: any }
   | { type: 'DISPROVE_REQUEST'; gameId: string; disprover: string; suggester: string; suspect: string; weapon: string; room: string; candidateCards: string }
@@ -1,18 +1,72 @@
 package edu.jhu.clueless;
 
 import edu.jhu.clueless.network.ClueServer;
+import edu.jhu.clueless.network.Cluster;
+import edu.jhu.clueless.network.EngineServer;
+import edu.jhu.clueless.network.Gateway;
 import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.NioClueServer;
+import edu.jhu.clueless.network.Replicator;
+import edu.jhu.clueless.network.Standby;
 import edu.jhu.clueless.network.WsBridgeServer;
+import edu.jhu.clueless.util.ConfigLoader;
+import edu.jhu.clueless.util.LoggerUtil;
+
+import java.nio.file.Path;
 
 public class App {
     public static void main(String[] args) throws Exception {
-        int tcpPort = 8080;
-        int wsPort = 8081;
+        int tcpPort = ConfigLoader.getInt("clueless.tcp.port", 8080);
+        int wsPort = ConfigLoader.getInt("clueless.ws.port", 8081);
+        // "nio" (default) = selector event loops; "virtual" = thread-per-connection on virtual threads;
+        // "blocking" = legacy fixed thread pool fallback
+        String tcpMode = ConfigLoader.getString("clueless.tcp.mode", "nio");
+
+        // "all" (default) = connections and games in this process; "engine" = games only, for
+        // gateways on a Unix socket; "gateway" = connections only, games in engine processes;
+        // "standby" = replica of a primary's games, serving clients only once promoted
+        String role = ConfigLoader.getString("clueless.role", "all");
 
         MessageRouter router = new MessageRouter();
+        router.registerGauges();
+
+        if ("engine".equalsIgnoreCase(role)) {
+            EngineServer engine = new EngineServer(Path.of(ConfigLoader.getString("clueless.engine.socket", "/tmp/clueless-engine.sock")), router);
+            engine.bind();
+            engine.run();
+            return;
+        }
+        if ("standby".equalsIgnoreCase(role)) {
+            Standby standby = new Standby(Path.of(ConfigLoader.getString("clueless.replication.socket", "/tmp/clueless-standby.sock")), router);
+            standby.registerGauges();
+            standby.start();
+            standby.awaitPromotion();
+        }
+        // a primary ships every applied command to its standby, if one is configured
+        Replicator replicator = Replicator.fromConfig(router);
+        if (replicator != null) {
+            replicator.registerGauges();
+            replicator.start();
+        }
+
+        if ("gateway".equalsIgnoreCase(role)) {
+            Gateway.fromConfig(router).start();
+        } else {
+            // Join the cluster, if one is configured; games owned by other nodes get forwarded
+            Cluster cluster = Cluster.fromConfig(router);
+            if (cluster != null) cluster.start();
+        }
 
         // Start TCP server
-        Thread tcp = new Thread(new ClueServer(tcpPort, router), "clue-tcp");
+        Runnable tcpServer;
+        if ("blocking".equalsIgnoreCase(tcpMode)) {
+            tcpServer = new ClueServer(tcpPort, router, ClueServer.Mode.POOLED);
+        } else if ("virtual".equalsIgnoreCase(tcpMode)) {
+            tcpServer = new ClueServer(tcpPort, router, ClueServer.Mode.VIRTUAL);
+        } else {
+            tcpServer = new NioClueServer(tcpPort, router, ConfigLoader.getInt("clueless.nio.loops", Runtime.getRuntime().availableProcessors()));
+        }
+        Thread tcp = new Thread(tcpServer, "clue-tcp");
         tcp.setDaemon(true);
         tcp.start();
 
@@ -20,6 +74,6 @@ public class App {
         WsBridgeServer ws = new WsBridgeServer(wsPort, router);
         ws.start();
 
-        System.out.println("[APP] Servers up. TCP: " + tcpPort + " WS: " + wsPort);
+        LoggerUtil.get("APP").info("Servers up. TCP: {} ({}) WS: {}", tcpPort, tcpMode, wsPort);
     }
 }
@@ -2,6 +2,7 @@ package edu.jhu.clueless.engine;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 public class GameEngine {
 
@@ -9,6 +10,7 @@ public class GameEngine {
     private final MoveHandler moveHandler;
     private final SuggestionHandler suggestionHandler;
     private final Board board;
+    private volatile GameSnapshot snapshot;
 
     public GameEngine(GameState gameState) {
         this.gameState = gameState != null ? gameState : new GameState();
@@ -16,8 +18,23 @@ public class GameEngine {
         this.moveHandler = new MoveHandler(this.gameState, this.board);
         this.suggestionHandler = new SuggestionHandler(this.gameState); // adjust if needed
         ensureBoardInitialized();
+        // not publishSnapshot(): a constructor shouldn't call a method a subclass can override
+        this.snapshot = GameSnapshot.capture(this.gameState, board, null);
     }
 
+    /**
+     * Captures the current state as an immutable snapshot and makes it the one
+     * {@link #getSnapshot()} returns. Call from the game's writer once an action is complete.
+     */
+    public GameSnapshot publishSnapshot() {
+        GameSnapshot s = GameSnapshot.capture(gameState, board, snapshot);
+        snapshot = s;
+        return s;
+    }
+
+    /** The last published snapshot; safe to read from any thread. */
+    public GameSnapshot getSnapshot() { return snapshot; }
+
     private void ensureBoardInitialized() {
         if (gameState.getRooms().isEmpty()) {
             // Populate rooms and connections from the canonical board definition
@@ -27,7 +44,16 @@ public class GameEngine {
     }
 
     public void startGame() {
-        GameManager.setupAndDeal(this.gameState, this.board);
+        startGame(new Random());
+    }
+
+    /** Same as {@link #startGame()}, dealing from {@code new Random(dealSeed)}: one seed, one deal. */
+    public void startGame(long dealSeed) {
+        startGame(new Random(dealSeed));
+    }
+
+    private void startGame(Random rng) {
+        GameManager.setupAndDeal(this.gameState, this.board, rng);
         // Ensure a current player is set
         if (gameState.getCurrentPlayer() == null) {
             for (Player p : gameState.getPlayers().values()) { if (p.isActive()) { gameState.setCurrentPlayer(p); break; } }
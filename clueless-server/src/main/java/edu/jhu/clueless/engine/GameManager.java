@@ -1,11 +1,14 @@
 package edu.jhu.clueless.engine;
 
+import edu.jhu.clueless.util.LoggerUtil;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
 public class GameManager {
+	private static final LoggerUtil LOG = LoggerUtil.get("SETUP");
 
 	public static class DealResult {
 		public final Solution solution;
@@ -20,6 +23,10 @@ public class GameManager {
 		return setupAndDeal(state, board, new Random());
 	}
 
+	public static final List<String> WEAPONS = List.of(
+		"CANDLESTICK", "DAGGER", "LEAD_PIPE", "REVOLVER", "ROPE", "WRENCH"
+	);
+
 	// Starting hallway assignments for each character
 	private static final java.util.Map<String, String> STARTING_HALLWAYS = java.util.Map.of(
 		"SCARLET", "HALL_LOUNGE",
@@ -39,8 +46,7 @@ public class GameManager {
 		List<String> suspects = new ArrayList<>();
 		Collections.addAll(suspects, "GREEN", "MUSTARD", "PEACOCK", "PLUM", "SCARLET", "WHITE");
 
-		List<String> weapons = new ArrayList<>();
-		Collections.addAll(weapons, "CANDLESTICK", "DAGGER", "LEAD_PIPE", "REVOLVER", "ROPE", "WRENCH");
+		List<String> weapons = new ArrayList<>(WEAPONS);
 
 		List<String> rooms = new ArrayList<>(board.getRooms().keySet());
 
@@ -78,7 +84,7 @@ public class GameManager {
 				if (hallway != null) {
 					hallway.occupy(p);
 					p.setLocation(hallway);
-					System.out.println("[SETUP] " + p.getName() + " (" + characterName + ") placed in starting hallway " + startingHallwayId);
+					LOG.debug("{} ({}) placed in starting hallway {}", p.getName(), characterName, startingHallwayId);
 				}
 			}
 		}
@@ -0,0 +1,238 @@
+package edu.jhu.clueless.engine;
+
+import java.util.*;
+
+/**
+ * An immutable picture of a game, published by {@link GameEngine#publishSnapshot()} after each
+ * committed action. Readers on any thread get a consistent view from
+ * {@link GameEngine#getSnapshot()} without locking or touching the live Player/Room/Hallway
+ * objects.
+ *
+ * Capturing shares structure with the previous snapshot: a player, room or hallway that has
+ * not changed keeps the same view object (no allocation), and a list whose entries are all
+ * unchanged is reused as a whole. Turn-to-turn only a couple of views are new.
+ */
+public final class GameSnapshot {
+
+    public record CardView(String name, String type) { }
+
+    public record PlayerView(String name, String character, String room, String locationType, String locationName,
+                             boolean active, String roomEntryType, boolean mustExit, List<CardView> hand) { }
+
+    public record RoomView(String name, List<String> occupants) { }
+
+    public record HallwayView(String id, String a, String b, String occupant) { }
+
+    private final long version;
+    private final List<PlayerView> players;
+    private final List<RoomView> rooms;
+    private final List<HallwayView> hallways; // null without a board
+    private final String currentPlayer;
+    private final boolean gameOver;
+    private final String winner;
+    // the board's hallways in output order, worked out once per board
+    private final Board board;
+    private final List<Board.Hallway> hallwayOrder;
+
+    private GameSnapshot(long version, List<PlayerView> players, List<RoomView> rooms, List<HallwayView> hallways,
+                         String currentPlayer, boolean gameOver, String winner, Board board, List<Board.Hallway> hallwayOrder) {
+        this.version = version;
+        this.players = players;
+        this.rooms = rooms;
+        this.hallways = hallways;
+        this.currentPlayer = currentPlayer;
+        this.gameOver = gameOver;
+        this.winner = winner;
+        this.board = board;
+        this.hallwayOrder = hallwayOrder;
+    }
+
+    public long getVersion() { return version; }
+    public List<PlayerView> getPlayers() { return players; }
+    public List<RoomView> getRooms() { return rooms; }
+    public List<HallwayView> getHallways() { return hallways; }
+    public String getCurrentPlayer() { return currentPlayer; }
+    public boolean isGameOver() { return gameOver; }
+    public String getWinner() { return winner; }
+
+    /** Reads {@code gs} (and {@code board}, if given); {@code prev} may be null. */
+    public static GameSnapshot capture(GameState gs, Board board, GameSnapshot prev) {
+        List<PlayerView> prevPlayers = prev != null ? prev.players : List.of();
+        List<PlayerView> players = new ArrayList<>(gs.getPlayers().size());
+        for (Player p : gs.getPlayers().values()) {
+            PlayerView old = players.size() < prevPlayers.size() ? prevPlayers.get(players.size()) : null;
+            players.add(playerView(p, old));
+        }
+
+        List<RoomView> prevRooms = prev != null ? prev.rooms : List.of();
+        List<RoomView> rooms = new ArrayList<>(gs.getRooms().size());
+        for (Room r : gs.getRooms().values()) {
+            RoomView old = rooms.size() < prevRooms.size() ? prevRooms.get(rooms.size()) : null;
+            rooms.add(roomView(r, old));
+        }
+
+        List<Board.Hallway> order = null;
+        List<HallwayView> hallways = null;
+        if (board != null) {
+            order = prev != null && prev.board == board ? prev.hallwayOrder : hallwayOrder(board);
+            List<HallwayView> prevHallways = prev != null && prev.hallways != null ? prev.hallways : List.of();
+            hallways = new ArrayList<>(order.size());
+            for (Board.Hallway h : order) {
+                HallwayView old = hallways.size() < prevHallways.size() ? prevHallways.get(hallways.size()) : null;
+                hallways.add(hallwayView(h, old));
+            }
+            hallways = share(hallways, prev != null ? prev.hallways : null);
+        }
+
+        Player cp = gs.getCurrentPlayer();
+        return new GameSnapshot(prev != null ? prev.version + 1 : 1,
+                share(players, prev != null ? prev.players : null),
+                share(rooms, prev != null ? prev.rooms : null),
+                hallways, cp != null ? cp.getName() : null, gs.isGameOver(), gs.getWinner(), board, order);
+    }
+
+    /**
+     * The snapshot as plain maps and lists, in the shape clients receive as "state". Builds
+     * fresh collections; callers may keep or serialize them.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> root = new LinkedHashMap<>();
+        List<Map<String, Object>> ps = new ArrayList<>(players.size());
+        for (PlayerView p : players) {
+            Map<String, Object> pm = new LinkedHashMap<>();
+            pm.put("name", p.name());
+            pm.put("character", p.character());
+            pm.put("room", p.room());
+            if (p.locationType() != null) {
+                Map<String, Object> loc = new LinkedHashMap<>();
+                loc.put("type", p.locationType());
+                loc.put("name", p.locationName());
+                pm.put("location", loc);
+            } else {
+                pm.put("location", null);
+            }
+            pm.put("active", p.active());
+            pm.put("roomEntryType", p.roomEntryType());
+            pm.put("mustExit", p.mustExit());
+            List<Map<String, Object>> hand = new ArrayList<>(p.hand().size());
+            for (CardView c : p.hand()) {
+                Map<String, Object> cm = new LinkedHashMap<>();
+                cm.put("name", c.name());
+                cm.put("type", c.type());
+                hand.add(cm);
+            }
+            pm.put("hand", hand);
+            ps.add(pm);
+        }
+        root.put("players", ps);
+
+        List<Map<String, Object>> rs = new ArrayList<>(rooms.size());
+        for (RoomView r : rooms) {
+            Map<String, Object> rm = new LinkedHashMap<>();
+            rm.put("name", r.name());
+            rm.put("occupants", new ArrayList<>(r.occupants()));
+            rs.add(rm);
+        }
+        root.put("rooms", rs);
+
+        if (hallways != null) {
+            List<Map<String, Object>> hs = new ArrayList<>(hallways.size());
+            for (HallwayView h : hallways) {
+                Map<String, Object> hm = new LinkedHashMap<>();
+                hm.put("id", h.id());
+                hm.put("a", h.a());
+                hm.put("b", h.b());
+                hm.put("occupant", h.occupant());
+                hs.add(hm);
+            }
+            root.put("hallways", hs);
+        }
+        root.put("currentPlayer", currentPlayer);
+        root.put("gameOver", gameOver);
+        root.put("winner", winner);
+        return root;
+    }
+
+    private static PlayerView playerView(Player p, PlayerView old) {
+        String room = p.getCurrentRoom() != null ? p.getCurrentRoom().getName() : null;
+        String locType = null, locName = null;
+        if (p.getLocation() instanceof Board.Hallway h) {
+            locType = "HALLWAY";
+            locName = h.getId();
+        } else if (room != null) {
+            locType = "ROOM";
+            locName = room;
+        }
+        String entry = p.getRoomEntryType().name();
+        boolean mustExit = p.mustExitRoomBeforeActions();
+        List<Card> hand = p.getHand() != null ? p.getHand() : List.of();
+        if (old != null && old.name().equals(p.getName()) && Objects.equals(old.character(), p.getCharacterName())
+                && Objects.equals(old.room(), room) && Objects.equals(old.locationType(), locType)
+                && Objects.equals(old.locationName(), locName) && old.active() == p.isActive()
+                && old.roomEntryType().equals(entry) && old.mustExit() == mustExit && sameHand(old.hand(), hand)) {
+            return old;
+        }
+        List<CardView> cards = old != null && sameHand(old.hand(), hand) ? old.hand() : cardViews(hand);
+        return new PlayerView(p.getName(), p.getCharacterName(), room, locType, locName, p.isActive(), entry, mustExit, cards);
+    }
+
+    private static boolean sameHand(List<CardView> views, List<Card> hand) {
+        if (views.size() != hand.size()) return false;
+        for (int i = 0; i < hand.size(); i++) {
+            CardView v = views.get(i);
+            Card c = hand.get(i);
+            if (!v.name().equals(c.getName()) || !v.type().equals(c.getType().toString())) return false;
+        }
+        return true;
+    }
+
+    private static List<CardView> cardViews(List<Card> hand) {
+        List<CardView> out = new ArrayList<>(hand.size());
+        for (Card c : hand) out.add(new CardView(c.getName(), c.getType().toString()));
+        return List.copyOf(out);
+    }
+
+    private static RoomView roomView(Room r, RoomView old) {
+        List<Player> occ = r.getOccupants();
+        if (old != null && old.name().equals(r.getName()) && old.occupants().size() == occ.size()) {
+            boolean same = true;
+            for (int i = 0; i < occ.size() && same; i++) same = old.occupants().get(i).equals(occ.get(i).getName());
+            if (same) return old;
+        }
+        List<String> names = new ArrayList<>(occ.size());
+        for (Player p : occ) names.add(p.getName());
+        return new RoomView(r.getName(), List.copyOf(names));
+    }
+
+    private static HallwayView hallwayView(Board.Hallway h, HallwayView old) {
+        String occupant = h.getOccupant() != null ? h.getOccupant().getName() : null;
+        if (old != null && old.id().equals(h.getName()) && Objects.equals(old.occupant(), occupant)) return old;
+        return new HallwayView(h.getName(), h.getA().getName(), h.getB().getName(), occupant);
+    }
+
+    private static List<Board.Hallway> hallwayOrder(Board board) {
+        List<Board.Hallway> out = new ArrayList<>();
+        for (Board.Hallway h : board.getHallways().values()) {
+            // de-duplicate: only include canonical ids where id equals getName()
+            if (!h.getName().contains("_")) continue; // defensive; all ids contain _
+            // only include once by requiring a.getName() < b.getName()
+            String[] parts = h.getName().split("_");
+            if (parts.length == 2) {
+                String a = parts[0], b = parts[1];
+                if (a.compareTo(b) > 0) continue; // skip reverse
+            }
+            out.add(h);
+        }
+        return List.copyOf(out);
+    }
+
+    // the previous list itself when every entry is the same view object
+    private static <T> List<T> share(List<T> fresh, List<T> prev) {
+        if (prev != null && prev.size() == fresh.size()) {
+            boolean same = true;
+            for (int i = 0; i < fresh.size() && same; i++) same = fresh.get(i) == prev.get(i);
+            if (same) return prev;
+        }
+        return Collections.unmodifiableList(fresh);
+    }
+}
@@ -1,89 +1,184 @@
 package edu.jhu.clueless.engine;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Simple in-memory lobby for a gameId. Tracks players and their selected characters.
+ * In-memory lobby for a gameId. Tracks players, their selected characters and readiness.
+ *
+ * Safe for concurrent use without locks. Each player gets a seat (0..63) on join; the set of
+ * seated, ready and character-holding players are bitmasks, so {@link #allReady()} and
+ * {@link #allSelectedCharacters()} are single comparisons. A character is owned by whoever
+ * CASes their playerId into its slot in a 6-slot array, so two players can never both get
+ * it. {@link #getVersion()} moves on every change, letting callers reuse a snapshot built at
+ * the same version.
+ *
+ * Different players may act concurrently; one player's own selects and unselects are
+ * expected to arrive in order (the router applies a game's commands one at a time).
  */
 public class Lobby {
-    private final String gameId;
-    private final LinkedHashSet<String> players = new LinkedHashSet<>();
-    private final Map<String, String> selections = new LinkedHashMap<>(); // playerId -> character
-    private final Map<String, Boolean> ready = new LinkedHashMap<>(); // playerId -> ready
-    private boolean started;
+    /** Seats are bits in a long. */
+    public static final int MAX_PLAYERS = 64;
 
     public static final List<String> CHARACTERS = List.of(
             "GREEN", "MUSTARD", "PEACOCK", "PLUM", "SCARLET", "WHITE"
     );
 
+    private final String gameId;
+    private final Map<String, Integer> seats = new ConcurrentHashMap<>(); // playerId -> seat
+    private final AtomicReferenceArray<String> seated = new AtomicReferenceArray<>(MAX_PLAYERS); // seat -> playerId
+    private final AtomicInteger nextSeat = new AtomicInteger();
+    private final AtomicReferenceArray<String> owners = new AtomicReferenceArray<>(CHARACTERS.size()); // character -> playerId
+    private final AtomicLong joinedMask = new AtomicLong();
+    private final AtomicLong readyMask = new AtomicLong();
+    private final AtomicLong selectedMask = new AtomicLong();
+    private final AtomicLong version = new AtomicLong();
+    private volatile boolean started;
+
     public Lobby(String gameId) { this.gameId = gameId; }
 
     public String getGameId() { return gameId; }
     public boolean isStarted() { return started; }
-    public void setStarted(boolean started) { this.started = started; }
-    public Set<String> getPlayers() { return Collections.unmodifiableSet(players); }
-    public Map<String, String> getSelections() { return Collections.unmodifiableMap(selections); }
-    public Map<String, Boolean> getReadyMap() { return Collections.unmodifiableMap(ready); }
-
-    public void join(String playerId) {
-        if (playerId != null && !playerId.isBlank()) {
-            players.add(playerId);
-            ready.putIfAbsent(playerId, false);
+    public void setStarted(boolean started) { this.started = started; version.incrementAndGet(); }
+
+    /** Bumped by every change to players, selections, readiness or the started flag. */
+    public long getVersion() { return version.get(); }
+
+    public boolean hasPlayer(String playerId) { return playerId != null && seats.containsKey(playerId); }
+    public int getPlayerCount() { return Long.bitCount(joinedMask.get()); }
+
+    /** Players in join order. */
+    public Set<String> getPlayers() {
+        LinkedHashSet<String> out = new LinkedHashSet<>();
+        forEachSeated((seat, p) -> out.add(p));
+        return Collections.unmodifiableSet(out);
+    }
+
+    /** playerId -> character, in join order. */
+    public Map<String, String> getSelections() {
+        LinkedHashMap<String, String> out = new LinkedHashMap<>();
+        forEachSeated((seat, p) -> {
+            String c = getSelectedCharacter(p);
+            if (c != null) out.put(p, c);
+        });
+        return Collections.unmodifiableMap(out);
+    }
+
+    /** playerId -> ready, in join order. */
+    public Map<String, Boolean> getReadyMap() {
+        long ready = readyMask.get();
+        LinkedHashMap<String, Boolean> out = new LinkedHashMap<>();
+        forEachSeated((seat, p) -> out.put(p, (ready & (1L << seat)) != 0));
+        return Collections.unmodifiableMap(out);
+    }
+
+    /**
+     * Seats {@code playerId} if they aren't already. Returns false only when the lobby is full;
+     * a null or blank id is ignored.
+     */
+    public boolean join(String playerId) {
+        if (playerId == null || playerId.isBlank()) return true;
+        Integer seat = seats.get(playerId);
+        if (seat == null) {
+            seat = seats.computeIfAbsent(playerId, k -> {
+                if (nextSeat.get() >= MAX_PLAYERS) return null;
+                int s = nextSeat.getAndIncrement();
+                if (s >= MAX_PLAYERS) return null;
+                seated.set(s, k);
+                return s;
+            });
+            if (seat == null) return false;
+            long bit = 1L << seat;
+            if ((joinedMask.getAndUpdate(m -> m | bit) & bit) == 0) version.incrementAndGet();
         }
+        return true;
     }
 
     public boolean selectCharacter(String playerId, String character) {
         if (playerId == null || character == null) return false;
-        String up = character.trim().toUpperCase(Locale.ROOT);
-        if (!CHARACTERS.contains(up)) return false;
-        // character must be free (or already assigned to this player)
-        if (isCharacterTakenByOther(playerId, up)) return false;
-        players.add(playerId);
-        selections.put(playerId, up);
+        int slot = CHARACTERS.indexOf(character.trim().toUpperCase(Locale.ROOT));
+        if (slot < 0) return false;
+        if (!join(playerId)) return false;
+        // claim the character unless someone else holds it
+        while (true) {
+            String owner = owners.get(slot);
+            if (playerId.equals(owner)) return true;
+            if (owner != null) return false;
+            if (owners.compareAndSet(slot, null, playerId)) break;
+        }
+        // then give back whatever this player held before
+        for (int i = 0; i < owners.length(); i++) {
+            if (i != slot) owners.compareAndSet(i, playerId, null);
+        }
+        long bit = 1L << seats.get(playerId);
+        selectedMask.getAndUpdate(m -> m | bit);
+        version.incrementAndGet();
         return true;
     }
 
-    public String getSelectedCharacter(String playerId) { return selections.get(playerId); }
+    public String getSelectedCharacter(String playerId) {
+        if (playerId == null) return null;
+        for (int i = 0; i < owners.length(); i++) {
+            if (playerId.equals(owners.get(i))) return CHARACTERS.get(i);
+        }
+        return null;
+    }
 
     public boolean unselectCharacter(String playerId) {
         if (playerId == null) return false;
-        return selections.remove(playerId) != null;
+        boolean released = false;
+        for (int i = 0; i < owners.length(); i++) {
+            released |= owners.compareAndSet(i, playerId, null);
+        }
+        if (!released) return false;
+        long bit = 1L << seats.get(playerId);
+        selectedMask.getAndUpdate(m -> m & ~bit);
+        version.incrementAndGet();
+        return true;
     }
 
     public List<String> getAvailableCharacters() {
-        List<String> avail = new ArrayList<>(CHARACTERS);
-        avail.removeAll(selections.values());
+        List<String> avail = new ArrayList<>(CHARACTERS.size());
+        for (int i = 0; i < owners.length(); i++) {
+            if (owners.get(i) == null) avail.add(CHARACTERS.get(i));
+        }
         return avail;
     }
 
     public void setReady(String playerId, boolean isReady) {
-        if (playerId == null) return;
-        if (players.contains(playerId)) ready.put(playerId, isReady);
+        Integer seat = playerId == null ? null : seats.get(playerId);
+        if (seat == null) return;
+        long bit = 1L << seat;
+        long before = readyMask.getAndUpdate(m -> isReady ? m | bit : m & ~bit);
+        if (((before & bit) != 0) != isReady) version.incrementAndGet();
     }
 
     public boolean isReady(String playerId) {
-        return Boolean.TRUE.equals(ready.get(playerId));
+        Integer seat = playerId == null ? null : seats.get(playerId);
+        return seat != null && (readyMask.get() & (1L << seat)) != 0;
     }
 
     public boolean allReady() {
-        if (players.isEmpty()) return false;
-        for (String p : players) {
-            if (!Boolean.TRUE.equals(ready.get(p))) return false;
-        }
-        return true;
+        long joined = joinedMask.get();
+        return joined != 0 && (readyMask.get() & joined) == joined;
     }
 
     public boolean allSelectedCharacters() {
-        for (String p : players) {
-            if (selections.get(p) == null) return false;
-        }
-        return !players.isEmpty();
+        long joined = joinedMask.get();
+        return joined != 0 && (selectedMask.get() & joined) == joined;
     }
 
-    private boolean isCharacterTakenByOther(String playerId, String character) {
-        for (Map.Entry<String,String> e : selections.entrySet()) {
-            if (!e.getKey().equals(playerId) && character.equalsIgnoreCase(e.getValue())) return true;
+    private interface SeatVisitor { void visit(int seat, String playerId); }
+
+    private void forEachSeated(SeatVisitor v) {
+        int n = Math.min(nextSeat.get(), MAX_PLAYERS);
+        long joined = joinedMask.get();
+        for (int s = 0; s < n; s++) {
+            String p = seated.get(s);
+            if (p != null && (joined & (1L << s)) != 0) v.visit(s, p);
         }
-        return false;
     }
 }
@@ -1,6 +1,9 @@
 package edu.jhu.clueless.engine;
 
+import edu.jhu.clueless.util.LoggerUtil;
+
 public class MoveHandler {
+    private static final LoggerUtil LOG = LoggerUtil.get("MOVE");
 
     private final GameState gameState;
     private final Board board;
@@ -27,7 +30,7 @@ public class MoveHandler {
                 h.vacate();
                 player.setCurrentRoom(targetRoom);
                 targetRoom.addOccupant(player);
-                System.out.println("[MOVE] " + player.getName() + " exited hallway " + h.getName() + " into " + targetRoom.getName());
+                LOG.debug("{} exited hallway {} into {}", player.getName(), h.getName(), targetRoom.getName());
                 return true;
             } else {
                 return false;
@@ -38,7 +41,7 @@ public class MoveHandler {
         if (player.getCurrentRoom() == null) {
             player.setCurrentRoom(targetRoom);
             targetRoom.addOccupant(player);
-            System.out.println("[MOVE] " + player.getName() + " placed in " + targetRoom.getName());
+            LOG.debug("{} placed in {}", player.getName(), targetRoom.getName());
             return true;
         }
 
@@ -63,7 +66,7 @@ public class MoveHandler {
         player.setCurrentRoom(targetRoom);
         targetRoom.addOccupant(player);
 
-        System.out.println("[MOVE] " + player.getName() + " moved to " + targetRoom.getName());
+        LOG.debug("{} moved to {}", player.getName(), targetRoom.getName());
         return true;
     }
 
@@ -89,7 +92,7 @@ public class MoveHandler {
         // occupy hallway
         h.occupy(player);
         player.setLocation(h);
-        System.out.println("[MOVE] " + player.getName() + " entered hallway " + h.getName());
+        LOG.debug("{} entered hallway {}", player.getName(), h.getName());
         return true;
     }
 
@@ -109,7 +112,7 @@ public class MoveHandler {
         h.vacate();
         player.setCurrentRoom(targetRoom);
         targetRoom.addOccupant(player);
-        System.out.println("[MOVE] " + player.getName() + " exited hallway " + h.getName() + " into " + targetRoom.getName());
+        LOG.debug("{} exited hallway {} into {}", player.getName(), h.getName(), targetRoom.getName());
         return true;
     }
 }
@@ -0,0 +1,480 @@
+package edu.jhu.clueless.network;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import edu.jhu.clueless.engine.Board;
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.network.dto.ClientMessage;
+import edu.jhu.clueless.util.JsonUtil;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of the JSON messages, negotiated per connection: a raw TCP client
+ * opts in by sending {@link #MAGIC} as its very first byte, a WebSocket client by sending
+ * binary frames. The message model is unchanged, only its encoding differs.
+ *
+ * <pre>
+ * frame (raw TCP)   varint body length, body      (WebSocket binary frames carry the body only)
+ * body              one value
+ * value             tag byte, then
+ *   0 NULL, 1 FALSE, 2 TRUE
+ *   3 INT           zigzag varint
+ *   4 DOUBLE        8 bytes, big-endian
+ *   5 STRING        varint byte length, UTF-8
+ *   6 SYMBOL        varint symbol id
+ *   7 ARRAY         varint count, values
+ *   8 OBJECT        varint count, (key, value) pairs; key is varint (id &lt;&lt; 1) for a
+ *                   symbol or ((byte length &lt;&lt; 1) | 1) followed by UTF-8
+ *   16..255         symbol id (tag - 16), the short form of SYMBOL
+ * </pre>
+ *
+ * Symbol ids 0..31 are message types and 32 on are the 6 suspects, the 6 weapons, the 9
+ * rooms and the 12 hallways of {@link Board#standard()}, then field names and common values.
+ * Both lists are written out below rather than derived from MessageType's order or the
+ * board, because clients hold the same table: an id never changes once shipped, new
+ * symbols go in a free message type slot or at the end. ("PONG" is in both lists; it was a
+ * value before it was a message type, and decoding accepts either id.)
+ *
+ * Outbound messages are transcoded straight from the router's JSON text in one pass, with
+ * no tree in between; {@link OutboundMessage} does it at most once per message, and only if
+ * a binary peer is sent it.
+ */
+public final class BinaryCodec {
+
+    /** First byte a raw TCP client sends to switch the connection to binary. Never valid in JSON text. */
+    public static final int MAGIC = 0xB1;
+    public static final int MAX_FRAME_BYTES = 64 * 1024;
+
+    static final int NULL = 0, FALSE = 1, TRUE = 2, INT = 3, DOUBLE = 4, STRING = 5, SYMBOL = 6, ARRAY = 7, OBJECT = 8;
+    static final int SHORT_SYMBOL_BASE = 16;
+    static final int MESSAGE_TYPE_SLOTS = 32;
+
+    // index = symbol id; null marks a free slot
+    private static final String[] TYPE_SYMBOLS = {
+            "PING", "JOIN", "MOVE", "MOVE_TO_HALLWAY", "MOVE_FROM_HALLWAY", "SUGGEST", "DISPROVE_REQUEST",
+            "DISPROVE_RESPONSE", "ACCUSE", "END_TURN", "NEW_GAME", "JOIN_LOBBY", "SELECT_CHARACTER",
+            "UNSELECT_CHARACTER", "SET_READY", "START_GAME", "RESYNC", "PONG", "RESUME"};
+    private static final String[] OTHER_SYMBOLS = {
+            // suspects, weapons, rooms, hallways
+            "GREEN", "MUSTARD", "PEACOCK", "PLUM", "SCARLET", "WHITE",
+            "CANDLESTICK", "DAGGER", "LEAD_PIPE", "REVOLVER", "ROPE", "WRENCH",
+            "HALL", "LOUNGE", "STUDY", "LIBRARY", "BILLIARD", "CONSERVATORY", "BALLROOM", "KITCHEN", "DINING",
+            "HALL_STUDY", "HALL_LOUNGE", "LIBRARY_STUDY", "BILLIARD_HALL", "DINING_LOUNGE", "BILLIARD_LIBRARY",
+            "BILLIARD_DINING", "CONSERVATORY_LIBRARY", "BALLROOM_BILLIARD", "DINING_KITCHEN",
+            "BALLROOM_CONSERVATORY", "BALLROOM_KITCHEN",
+            // field names
+            "type", "correlationId", "gameId", "playerId", "payload", "message", "event", "for",
+            "state", "lobby", "version", "baseVersion", "delta", "room", "hallway", "suspect", "weapon",
+            "card", "candidateCards", "disprover", "suggester", "winner", "result", "gameOver",
+            "eliminated", "keepPlayers", "by", "players", "rooms", "hallways", "name", "character",
+            "location", "active", "roomEntryType", "mustExit", "hand", "occupants", "id", "a", "b",
+            "occupant", "currentPlayer", "started", "selections", "available", "ready", "to", "player",
+            "deltas", "hallwayId", "chosen", "chosenCard", "characterName", "suggestedBy",
+            // values
+            "ACK", "EVENT", "ERROR", "PONG", "ROOM", "HALLWAY", "CHARACTER", "WEAPON", "NONE", "SELF",
+            "SUGGESTION", "WIN", "LOSE", "LOBBY_JOIN", "CHARACTER_SELECTED", "CHARACTER_UNSELECTED",
+            "READY_CHANGED", "TURN", "DISPROVE_REVEAL", "DISPROVE_DONE"};
+
+    private static final List<String> SYMBOLS;
+    private static final Map<String, Integer> SYMBOL_IDS = new HashMap<>();
+
+    static {
+        List<String> s = new ArrayList<>(Arrays.asList(TYPE_SYMBOLS));
+        while (s.size() < MESSAGE_TYPE_SLOTS) s.add(null);
+        Collections.addAll(s, OTHER_SYMBOLS);
+        SYMBOLS = Collections.unmodifiableList(s);
+        for (int i = 0; i < s.size(); i++) if (s.get(i) != null) SYMBOL_IDS.putIfAbsent(s.get(i), i);
+        for (MessageType t : MessageType.values()) {
+            Integer id = SYMBOL_IDS.get(t.name());
+            if (id == null || id >= MESSAGE_TYPE_SLOTS) throw new IllegalStateException("MessageType " + t + " needs a slot in TYPE_SYMBOLS");
+        }
+    }
+
+    private BinaryCodec() { }
+
+    /** The shared symbol table, index = id; unused MessageType slots are null. */
+    public static List<String> symbols() { return SYMBOLS; }
+
+    // ---- encoding ----
+
+    /** Binary body for a JSON document, as built by the router. */
+    public static byte[] encodeJson(String json) {
+        Out out = new Out(Math.max(16, json.length() / 2));
+        JsonText in = new JsonText(json);
+        in.value(out, 0);
+        if (in.skipSpace() < json.length()) throw new IllegalArgumentException("Trailing characters in JSON");
+        return out.toByteArray();
+    }
+
+    public static byte[] encode(ClientMessage msg) {
+        return encodeJson(JsonUtil.toJson(msg));
+    }
+
+    /** varint length prefix for a body of {@code length} bytes. */
+    public static byte[] frameHeader(int length) {
+        Out out = new Out(5);
+        out.varint(length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads JSON text and writes each value as it goes. An object or array reserves one byte
+     * for its count and is shifted along in the rare case the count needs more.
+     */
+    private static final class JsonText {
+        private final String s;
+        private final StringBuilder chars = new StringBuilder();
+        private int i;
+
+        JsonText(String s) { this.s = s; }
+
+        int skipSpace() {
+            while (i < s.length()) {
+                char c = s.charAt(i);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') break;
+                i++;
+            }
+            return i;
+        }
+
+        void value(Out out, int depth) {
+            if (depth > 32) throw new IllegalArgumentException("JSON nested too deeply");
+            if (skipSpace() >= s.length()) throw new IllegalArgumentException("Truncated JSON");
+            char c = s.charAt(i);
+            switch (c) {
+                case '{' -> object(out, depth);
+                case '[' -> array(out, depth);
+                case '"' -> writeString(out, string());
+                case 't' -> { literal("true"); out.put(TRUE); }
+                case 'f' -> { literal("false"); out.put(FALSE); }
+                case 'n' -> { literal("null"); out.put(NULL); }
+                default -> number(out);
+            }
+        }
+
+        private void object(Out out, int depth) {
+            i++;
+            out.put(OBJECT);
+            int at = out.reserve();
+            int n = 0;
+            if (skipSpace() < s.length() && s.charAt(i) == '}') {
+                i++;
+            } else {
+                while (true) {
+                    if (skipSpace() >= s.length() || s.charAt(i) != '"') throw new IllegalArgumentException("Expected a key at " + i);
+                    String key = string();
+                    Integer id = SYMBOL_IDS.get(key);
+                    if (id != null) {
+                        out.varint(id << 1);
+                    } else {
+                        byte[] b = key.getBytes(StandardCharsets.UTF_8);
+                        out.varint((b.length << 1) | 1);
+                        out.put(b);
+                    }
+                    expect(':');
+                    value(out, depth + 1);
+                    n++;
+                    if (next() == '}') break;
+                }
+            }
+            out.count(at, n);
+        }
+
+        private void array(Out out, int depth) {
+            i++;
+            out.put(ARRAY);
+            int at = out.reserve();
+            int n = 0;
+            if (skipSpace() < s.length() && s.charAt(i) == ']') {
+                i++;
+            } else {
+                while (true) {
+                    value(out, depth + 1);
+                    n++;
+                    if (next() == ']') break;
+                }
+            }
+            out.count(at, n);
+        }
+
+        // the ',' between members, or the closing bracket
+        private char next() {
+            if (skipSpace() >= s.length()) throw new IllegalArgumentException("Truncated JSON");
+            char c = s.charAt(i++);
+            if (c != ',' && c != '}' && c != ']') throw new IllegalArgumentException("Unexpected '" + c + "' at " + (i - 1));
+            return c;
+        }
+
+        private void expect(char c) {
+            if (skipSpace() >= s.length() || s.charAt(i) != c) throw new IllegalArgumentException("Expected '" + c + "' at " + i);
+            i++;
+        }
+
+        private void literal(String word) {
+            if (!s.startsWith(word, i)) throw new IllegalArgumentException("Bad JSON literal at " + i);
+            i += word.length();
+        }
+
+        private String string() {
+            int start = ++i;
+            // usual case: nothing escaped, so the value is a plain substring
+            while (i < s.length()) {
+                char c = s.charAt(i);
+                if (c == '"') return s.substring(start, i++);
+                if (c == '\\') break;
+                i++;
+            }
+            chars.setLength(0);
+            chars.append(s, start, i);
+            while (true) {
+                if (i >= s.length()) throw new IllegalArgumentException("Unterminated JSON string");
+                char c = s.charAt(i++);
+                if (c == '"') return chars.toString();
+                if (c != '\\') {
+                    chars.append(c);
+                    continue;
+                }
+                if (i >= s.length()) throw new IllegalArgumentException("Unterminated JSON string");
+                char e = s.charAt(i++);
+                switch (e) {
+                    case 'n' -> chars.append('\n');
+                    case 't' -> chars.append('\t');
+                    case 'r' -> chars.append('\r');
+                    case 'b' -> chars.append('\b');
+                    case 'f' -> chars.append('\f');
+                    case 'u' -> {
+                        if (i + 4 > s.length()) throw new IllegalArgumentException("Bad \\u escape");
+                        chars.append((char) Integer.parseInt(s, i, i + 4, 16));
+                        i += 4;
+                    }
+                    default -> chars.append(e); // \" \\ \/
+                }
+            }
+        }
+
+        private void number(Out out) {
+            int start = i;
+            boolean integral = true;
+            while (i < s.length()) {
+                char c = s.charAt(i);
+                if (c == '.' || c == 'e' || c == 'E') integral = false;
+                else if (c != '-' && c != '+' && (c < '0' || c > '9')) break;
+                i++;
+            }
+            if (start == i) throw new IllegalArgumentException("Unexpected '" + s.charAt(i) + "' at " + i);
+            String n = s.substring(start, i);
+            Long l = integral ? parseLong(n) : null;
+            if (l != null) {
+                out.put(INT);
+                out.varlong((l << 1) ^ (l >> 63));
+            } else {
+                out.put(DOUBLE);
+                try {
+                    out.putLong(Double.doubleToLongBits(Double.parseDouble(n)));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad JSON number " + n);
+                }
+            }
+        }
+    }
+
+    private static void writeString(Out out, String s) {
+        Integer id = SYMBOL_IDS.get(s);
+        if (id != null) {
+            if (id < 256 - SHORT_SYMBOL_BASE) {
+                out.put(SHORT_SYMBOL_BASE + id);
+            } else {
+                out.put(SYMBOL);
+                out.varint(id);
+            }
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.put(STRING);
+        out.varint(b.length);
+        out.put(b);
+    }
+
+    private static Long parseLong(String s) {
+        try { return Long.parseLong(s); } catch (NumberFormatException e) { return null; }
+    }
+
+    // ---- decoding ----
+
+    /** Decode one body (no length prefix). */
+    public static JsonElement decode(ByteBuffer body) {
+        try {
+            JsonElement e = readValue(body, 0);
+            if (body.hasRemaining()) throw new IllegalArgumentException("Trailing bytes in binary message");
+            return e;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated binary message");
+        }
+    }
+
+    /** A binary request, decoded by the same rules as a JSON one: {@link CommandDecoder#decode(String)}. */
+    public static Command decodeCommand(ByteBuffer body) {
+        return CommandDecoder.decode(toJson(body));
+    }
+
+    /** JSON text of a binary body; used where the rest of the pipeline still wants text. */
+    public static String toJson(ByteBuffer body) {
+        return decode(body).toString();
+    }
+
+    private static JsonElement readValue(ByteBuffer in, int depth) {
+        if (depth > 32) throw new IllegalArgumentException("Binary message nested too deeply");
+        int tag = in.get() & 0xFF;
+        if (tag >= SHORT_SYMBOL_BASE) return new JsonPrimitive(symbol(tag - SHORT_SYMBOL_BASE));
+        switch (tag) {
+            case NULL: return JsonNull.INSTANCE;
+            case FALSE: return new JsonPrimitive(false);
+            case TRUE: return new JsonPrimitive(true);
+            case INT: {
+                long z = readVarlong(in);
+                return new JsonPrimitive((z >>> 1) ^ -(z & 1));
+            }
+            case DOUBLE: return new JsonPrimitive(Double.longBitsToDouble(in.getLong()));
+            case STRING: return new JsonPrimitive(readUtf8(in, readVarint(in)));
+            case SYMBOL: return new JsonPrimitive(symbol(readVarint(in)));
+            case ARRAY: {
+                int n = readCount(in);
+                JsonArray a = new JsonArray(n);
+                for (int i = 0; i < n; i++) a.add(readValue(in, depth + 1));
+                return a;
+            }
+            case OBJECT: {
+                int n = readCount(in);
+                JsonObject o = new JsonObject();
+                for (int i = 0; i < n; i++) {
+                    int k = readVarint(in);
+                    String key = (k & 1) == 0 ? symbol(k >>> 1) : readUtf8(in, k >>> 1);
+                    o.add(key, readValue(in, depth + 1));
+                }
+                return o;
+            }
+            default: throw new IllegalArgumentException("Unknown binary tag " + tag);
+        }
+    }
+
+    private static String symbol(int id) {
+        String s = id >= 0 && id < SYMBOLS.size() ? SYMBOLS.get(id) : null;
+        if (s == null) throw new IllegalArgumentException("Unknown symbol " + id);
+        return s;
+    }
+
+    private static int readCount(ByteBuffer in) {
+        int n = readVarint(in);
+        if (n > in.remaining()) throw new IllegalArgumentException("Bad element count " + n);
+        return n;
+    }
+
+    private static String readUtf8(ByteBuffer in, int len) {
+        if (len > in.remaining()) throw new IllegalArgumentException("Bad string length " + len);
+        if (!in.hasArray()) {
+            byte[] b = new byte[len];
+            in.get(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), len, StandardCharsets.UTF_8);
+        in.position(in.position() + len);
+        return s;
+    }
+
+    /** Reads an unsigned varint of at most 5 bytes. */
+    public static int readVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get() & 0xFF;
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (v < 0) throw new IllegalArgumentException("varint out of range");
+                return v;
+            }
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+
+    private static long readVarlong(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.get() & 0xFF;
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+
+    /** Growable byte sink; cheaper than ByteArrayOutputStream's synchronized methods. */
+    private static final class Out {
+        private byte[] buf;
+        private int len;
+
+        Out(int initial) { buf = new byte[initial]; }
+
+        void put(int b) {
+            if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            buf[len++] = (byte) b;
+        }
+
+        void put(byte[] b) {
+            if (len + b.length > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + b.length));
+            System.arraycopy(b, 0, buf, len, b.length);
+            len += b.length;
+        }
+
+        void putLong(long v) {
+            for (int i = 56; i >= 0; i -= 8) put((int) (v >>> i));
+        }
+
+        void varint(int v) {
+            while ((v & ~0x7F) != 0) { put((v & 0x7F) | 0x80); v >>>= 7; }
+            put(v);
+        }
+
+        void varlong(long v) {
+            while ((v & ~0x7FL) != 0) { put((int) ((v & 0x7F) | 0x80)); v >>>= 7; }
+            put((int) v);
+        }
+
+        /** Holds a place for a count written later by {@link #count}. */
+        int reserve() {
+            put(0);
+            return len - 1;
+        }
+
+        void count(int at, int n) {
+            if (n < 0x80) {
+                buf[at] = (byte) n;
+                return;
+            }
+            // needs more than the one byte reserved: move what followed it along
+            int extra = 0;
+            for (int v = n >>> 7; v != 0; v >>>= 7) extra++;
+            if (len + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+            System.arraycopy(buf, at + 1, buf, at + 1 + extra, len - at - 1);
+            len += extra;
+            int v = n;
+            for (int p = at; (v & ~0x7F) != 0; p++) {
+                buf[p] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[at + extra] = (byte) v;
+        }
+
+        byte[] toByteArray() { return Arrays.copyOf(buf, len); }
+    }
+}
@@ -0,0 +1,123 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.util.LoggerUtil;
+import edu.jhu.clueless.util.Metrics;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A client as seen by the router, independent of transport (blocking TCP, NIO TCP,
+ * WebSocket). Every message goes through a bounded {@link OutboundQueue}, so send() never
+ * blocks on the peer's socket (except under the BLOCK overflow policy, by design).
+ */
+public abstract class ClientConnection {
+    private static final LoggerUtil LOG = LoggerUtil.get("CONN");
+    private static final LongAdder OPEN = Metrics.counter("connections.opened");
+    private static final LongAdder CLOSED = Metrics.counter("connections.closed");
+    static {
+        Metrics.gauge("connections.open", () -> OPEN.sum() - CLOSED.sum());
+    }
+
+    private final String id;
+    private final OutboundQueue queue;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean deltaUpdates;
+    private volatile boolean binaryProtocol;
+    private final Map<String, Long> stateVersions = new ConcurrentHashMap<>(); // gameId -> last state version sent
+    private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+    private volatile long lastActivityNanos = System.nanoTime();
+    // owned by the Heartbeat wheel thread
+    long wheelDeadlineNanos;
+    long pingedAtNanos;
+
+    protected ClientConnection() {
+        this(UUID.randomUUID().toString(), OutboundQueue.Config.fromConfig());
+    }
+
+    protected ClientConnection(String id, OutboundQueue.Config config) {
+        this.id = id;
+        this.queue = new OutboundQueue(new OutboundQueue.Sink() {
+            @Override public void write(OutboundMessage m) throws IOException { writeToTransport(m); }
+            @Override public void writeBatch(List<OutboundMessage> batch) throws IOException { writeBatchToTransport(batch); }
+            @Override public void flush() throws IOException { flushTransport(); }
+            @Override public boolean isWritable() { return transportWritable(); }
+            @Override public void abort(String reason) {
+                LOG.warn("{} closing: {}", ClientConnection.this.id, reason);
+                close();
+            }
+        }, config);
+        OPEN.increment();
+    }
+
+    public String getId() { return id; }
+
+    public OutboundQueue getQueue() { return queue; }
+
+    public boolean isOpen() { return !closed.get(); }
+
+    /** Whether this peer negotiated the {@link BinaryCodec} encoding instead of JSON text. */
+    public boolean usesBinaryProtocol() { return binaryProtocol; }
+    protected void setBinaryProtocol(boolean on) { binaryProtocol = on; }
+
+    /** Whether this client asked for versioned change sets instead of full snapshots. */
+    public boolean wantsDeltaUpdates() { return deltaUpdates; }
+    public void setDeltaUpdates(boolean on) {
+        deltaUpdates = on;
+        if (!on) stateVersions.clear();
+    }
+
+    /** Version of the last state this client was sent for the game, or -1. */
+    public long getStateVersion(String gameId) { return stateVersions.getOrDefault(gameId, -1L); }
+    public void setStateVersion(String gameId, long version) { stateVersions.put(gameId, version); }
+
+    /** Records inbound traffic for the {@link Heartbeat}; one volatile write, called per read. */
+    public void touch() { lastActivityNanos = System.nanoTime(); }
+    public long lastActivityNanos() { return lastActivityNanos; }
+
+    /** Runs once when the connection closes, on whichever thread closes it. */
+    public void addCloseListener(Runnable r) {
+        closeListeners.add(r);
+        if (closed.get() && closeListeners.remove(r)) r.run(); // raced with close()
+    }
+
+    public void send(String json) {
+        queue.offer(new OutboundMessage(json));
+    }
+
+    public void send(OutboundMessage m) {
+        queue.offer(m);
+    }
+
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        CLOSED.increment();
+        queue.close();
+        closeTransport();
+        // whoever removes a listener runs it, so one racing with addCloseListener runs once
+        for (Runnable r : closeListeners) {
+            if (!closeListeners.remove(r)) continue;
+            try { r.run(); } catch (RuntimeException e) { LOG.warn("close listener failed", e); }
+        }
+    }
+
+    // --- transport hooks; the write/flush hooks are only ever called from one writer at a time ---
+
+    protected abstract void writeToTransport(OutboundMessage m) throws IOException;
+
+    protected void writeBatchToTransport(List<OutboundMessage> batch) throws IOException {
+        for (OutboundMessage m : batch) writeToTransport(m);
+    }
+
+    protected void flushTransport() throws IOException { }
+
+    protected boolean transportWritable() { return true; }
+
+    protected abstract void closeTransport();
+}
@@ -1,19 +1,20 @@
 package edu.jhu.clueless.network;
 
-import edu.jhu.clueless.network.dto.ClientMessage;
-import edu.jhu.clueless.util.JsonUtil;
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.util.LoggerUtil;
 
 import java.io.*;
 import java.net.Socket;
-import java.util.UUID;
+import java.nio.ByteBuffer;
 
 public class ClientHandler implements Runnable {
+    private static final LoggerUtil LOG = LoggerUtil.get("CLIENT");
     private final Socket socket;
     private final MessageRouter router;
 
     private BufferedReader in;
-    private PrintWriter out;
-    private final String clientId = UUID.randomUUID().toString();
+    private SocketConnection connection;
 
     public ClientHandler(Socket socket, MessageRouter router) {
         this.socket = socket;
@@ -22,30 +23,118 @@ public class ClientHandler implements Runnable {
 
     @Override
     public void run() {
+        String clientId = "?";
         try {
-            in  = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+            // Plain JDK reader/writer classes guard themselves with j.u.c locks rather than monitors,
+            // so a blocked readLine/write unmounts cleanly when this runs on a virtual thread.
+            InputStream raw = new BufferedInputStream(socket.getInputStream());
+            connection = new SocketConnection(socket);
+            clientId = connection.getId();
+            Heartbeat.watch(connection);
+
+            // a binary client announces itself with the magic byte; anything else is JSON lines
+            raw.mark(1);
+            if (raw.read() == BinaryCodec.MAGIC) {
+                connection.setBinaryProtocol(true);
+                readFrames(raw, clientId);
+                return;
+            }
+            raw.reset();
+            in = new BufferedReader(new InputStreamReader(raw));
 
             String line;
             while ((line = in.readLine()) != null) {
+                connection.touch();
                 if (line.isBlank()) continue;
 
-                System.out.println("[CLIENT " + clientId + "] IN  " + line);
+                if (LOG.isDebugEnabled()) LOG.payload(clientId + " IN", line);
 
-                ClientMessage msg = JsonUtil.fromJson(line, ClientMessage.class);
-                System.out.println("[CLIENT " + clientId + "] TYPE " + (msg != null ? msg.getType() : "null"));
+                Command cmd;
+                try {
+                    cmd = CommandDecoder.decode(line);
+                } catch (IllegalArgumentException bad) {
+                    connection.send(EventWriter.error(bad.getMessage()));
+                    continue;
+                }
+                LOG.debug("{} TYPE {}", clientId, cmd.type());
 
-                router.route(clientId, msg, out);
+                router.route(connection, cmd);
             }
         } catch (IOException ioe) {
-            System.err.println("[CLIENT " + clientId + "] IO error: " + ioe.getMessage());
+            if (connection == null || connection.isOpen()) LOG.warn("{} IO error: {}", clientId, ioe.getMessage());
         } catch (Exception ex) {
-            System.err.println("[CLIENT " + clientId + "] Error: " + ex.getMessage());
+            LOG.warn("{} error: {}", clientId, ex.getMessage());
         } finally {
             try { if (in != null) in.close(); } catch (IOException ignored) {}
-            try { if (out != null) out.flush(); } catch (Exception ignored) {}
+            if (connection != null) connection.close();
+            try { socket.close(); } catch (IOException ignored) {}
+            LOG.info("{} disconnected", clientId);
+        }
+    }
+
+    private void readFrames(InputStream raw, String clientId) throws IOException {
+        while (true) {
+            int len = readVarint(raw);
+            if (len < 0) return;
+            if (len > BinaryCodec.MAX_FRAME_BYTES) {
+                LOG.warn("{} binary frame of {} bytes, closing", clientId, len);
+                return;
+            }
+            byte[] body = raw.readNBytes(len);
+            if (body.length < len) return;
+            connection.touch();
+            try {
+                Command cmd = BinaryCodec.decodeCommand(ByteBuffer.wrap(body));
+                LOG.debug("{} TYPE {} (binary)", clientId, cmd.type());
+                router.route(connection, cmd);
+            } catch (RuntimeException e) {
+                String m = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                connection.send(EventWriter.error(m));
+            }
+        }
+    }
+
+    // -1 on clean EOF before the first byte
+    private static int readVarint(InputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) return -1;
+                throw new EOFException("truncated frame header");
+            }
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("bad frame header");
+    }
+
+    /** Outbound side of a blocking socket; written by the queue's writer, one flush per batch. */
+    static final class SocketConnection extends ClientConnection {
+        private final Socket socket;
+        private final OutputStream out;
+
+        SocketConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        // bytes are encoded once per message and shared across a broadcast's subscribers
+        @Override protected void writeToTransport(OutboundMessage m) throws IOException {
+            if (usesBinaryProtocol()) {
+                byte[] body = m.binary();
+                out.write(BinaryCodec.frameHeader(body.length));
+                out.write(body);
+                return;
+            }
+            out.write(m.utf8());
+            out.write('\n');
+        }
+
+        @Override protected void flushTransport() throws IOException { out.flush(); }
+
+        @Override protected void closeTransport() {
             try { socket.close(); } catch (IOException ignored) {}
-            System.out.println("[CLIENT " + clientId + "] disconnected");
         }
     }
-}
\ No newline at end of file
+}
@@ -1,41 +1,80 @@
 package edu.jhu.clueless.network;
 
 
+import edu.jhu.clueless.util.LoggerUtil;
+
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 
 public class ClueServer implements Runnable {
+    private static final LoggerUtil LOG = LoggerUtil.get("SERVER");
+    private static final long ACCEPT_BACKOFF_MS = 50;
+
+    /**
+     * POOLED: each ClientHandler takes one thread of a fixed pool for the life of its socket.
+     * VIRTUAL: each ClientHandler gets its own virtual thread; blocking socket reads/writes
+     * unmount from the carrier, so the connection count is no longer capped by the pool.
+     */
+    public enum Mode { POOLED, VIRTUAL }
+
     private final int port;
     private final MessageRouter router;
+    private final Mode mode;
     private final ExecutorService pool;
+    private final CountDownLatch bound = new CountDownLatch(1);
+    private volatile ServerSocket server;
 
     public ClueServer(int port, MessageRouter router) {
+        this(port, router, Mode.POOLED);
+    }
+
+    public ClueServer(int port, MessageRouter router, Mode mode) {
         this.port = port;
         this.router = router;
-        this.pool = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+        this.mode = mode;
+        this.pool = mode == Mode.VIRTUAL
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("clue-client-", 0).factory())
+                : Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
     }
 
     public void start() {
-        ServerSocket server = null;
         try {
             server = new ServerSocket();
             server.setReuseAddress(true);
-            server.bind(new InetSocketAddress(port));
-            System.out.println("Server listening on " + port);
+            server.bind(new InetSocketAddress(port), 1024);
+            bound.countDown();
+            LOG.info("Server listening on {} ({})", server.getLocalPort(), mode);
             while (!pool.isShutdown()) {
-                Socket socket = server.accept();
-                System.out.println("[SERVER] Client connected: " + socket.getRemoteSocketAddress());
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (IOException e) {
+                    if (pool.isShutdown() || server.isClosed()) break;
+                    // e.g. EMFILE; the listener itself is still fine
+                    LOG.error("accept failed", e);
+                    try {
+                        Thread.sleep(ACCEPT_BACKOFF_MS);
+                    } catch (InterruptedException ie) {
+                        break;
+                    }
+                    continue;
+                }
+                LOG.info("Client connected: {}", socket.getRemoteSocketAddress());
                 pool.execute(new ClientHandler(socket, router));
             }
         } catch (IOException e) {
-            System.err.println("[SERVER] Error: " + e.getMessage());
-            e.printStackTrace();
+            if (!pool.isShutdown()) {
+                LOG.error("server failed to start", e);
+            }
         } finally {
+            bound.countDown();
             if (server != null) {
                 try { server.close(); } catch (IOException ignored) {}
             }
@@ -43,8 +82,25 @@ public class ClueServer implements Runnable {
         }
     }
 
+    public void stop() {
+        pool.shutdownNow();
+        ServerSocket s = server;
+        if (s != null) {
+            try { s.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    /** Blocks until the listening socket is bound; useful when started with port 0. */
+    public int awaitBound(long timeout, TimeUnit unit) throws InterruptedException {
+        bound.await(timeout, unit);
+        ServerSocket s = server;
+        return s != null ? s.getLocalPort() : -1;
+    }
+
+    public Mode getMode() { return mode; }
+
     @Override
     public void run() {
         start();
     }
-}
\ No newline at end of file
+}
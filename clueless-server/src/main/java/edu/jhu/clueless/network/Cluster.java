@@ -0,0 +1,189 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.util.ConfigLoader;
+import edu.jhu.clueless.util.LoggerUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This process's membership in a cluster of game servers. Every node owns the gameIds that
+ * a shared {@link HashRing} maps to it; a client can connect to any node, and commands for
+ * a game owned elsewhere are forwarded to the owner, whose replies and broadcasts come back
+ * the same way. Membership is static: the same list on every node, given inline or in a
+ * file (see {@link #fromConfig}).
+ *
+ * Nodes talk over one TCP connection per direction of each pair, framed by
+ * {@link LinkProtocol}: the origin's {@link Forwarder} sends requests, the owner's
+ * {@link LinkServer} applies them for a stand-in connection and sends back whatever that
+ * connection is sent.
+ */
+public final class Cluster implements MessageRouter.Remote, AutoCloseable {
+    private static final LoggerUtil LOG = LoggerUtil.get("CLUSTER");
+    private static final long ACCEPT_BACKOFF_MS = 100;
+
+    /** One node: its id on the ring and the host:port its cluster listener binds. */
+    public record Member(String id, String host, int port) {
+        /** {@code id=host:port} */
+        public static Member parse(String spec) {
+            String s = spec.trim();
+            int eq = s.indexOf('='), colon = s.lastIndexOf(':');
+            if (eq <= 0 || colon < eq) throw new IllegalArgumentException("Bad cluster member '" + s + "', expected id=host:port");
+            try {
+                return new Member(s.substring(0, eq).trim(), s.substring(eq + 1, colon).trim(), Integer.parseInt(s.substring(colon + 1).trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad port in cluster member '" + s + "'");
+            }
+        }
+    }
+
+    private final Member self;
+    private final HashRing ring;
+    private final MessageRouter router;
+    private final Forwarder forwarder;
+    private final long connectTimeoutMs;
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger inboundSeq = new AtomicInteger();
+    private volatile ServerSocket server;
+    private volatile boolean closed;
+
+    public Cluster(String selfId, List<Member> members, MessageRouter router) {
+        this(selfId, members, router, ConfigLoader.getInt("clueless.cluster.vnodes", 128));
+    }
+
+    public Cluster(String selfId, List<Member> members, MessageRouter router, int virtualNodes) {
+        this.router = router;
+        this.connectTimeoutMs = ConfigLoader.getLong("clueless.cluster.connectTimeoutMs", 1000);
+        this.forwarder = new Forwarder(selfId, ConfigLoader.getLong("clueless.cluster.retryMs", 1000), "cluster");
+        Member me = null;
+        List<String> ids = new ArrayList<>();
+        for (Member m : members) {
+            if (ids.contains(m.id())) throw new IllegalArgumentException("Duplicate cluster member " + m.id());
+            ids.add(m.id());
+            if (m.id().equals(selfId)) me = m;
+            else forwarder.addTarget(m.id(), () -> connect(m));
+        }
+        if (me == null) throw new IllegalArgumentException("Cluster members don't include this node (" + selfId + ")");
+        this.self = me;
+        this.ring = new HashRing(ids, virtualNodes);
+    }
+
+    /**
+     * A cluster built from {@code clueless.cluster.self} and the member list in
+     * {@code clueless.cluster.nodes} ("a=host:port,b=host:port,...") or, if that is unset, the
+     * file named by {@code clueless.cluster.file} (one member per line, '#' comments).
+     * Null when no self id is configured, i.e. this server runs alone.
+     */
+    public static Cluster fromConfig(MessageRouter router) throws IOException {
+        String selfId = ConfigLoader.getString("clueless.cluster.self", "");
+        if (selfId.isBlank()) return null;
+        List<Member> members = new ArrayList<>();
+        String inline = ConfigLoader.getString("clueless.cluster.nodes", "");
+        if (!inline.isBlank()) {
+            for (String spec : inline.split(",")) if (!spec.isBlank()) members.add(Member.parse(spec));
+        } else {
+            String file = ConfigLoader.getString("clueless.cluster.file", "");
+            if (file.isBlank()) throw new IllegalArgumentException("clueless.cluster.self is set but no clueless.cluster.nodes or clueless.cluster.file");
+            for (String line : Files.readAllLines(Path.of(file))) {
+                int hash = line.indexOf('#');
+                String spec = (hash >= 0 ? line.substring(0, hash) : line).trim();
+                if (!spec.isEmpty()) members.add(Member.parse(spec));
+            }
+        }
+        return new Cluster(selfId.trim(), members, router);
+    }
+
+    /** Binds the cluster listener and starts taking this node's share of the ring. */
+    public void start() throws IOException {
+        ServerSocket ss = new ServerSocket();
+        ss.setReuseAddress(true);
+        ss.bind(new InetSocketAddress(self.host(), self.port()));
+        server = ss;
+        forwarder.start();
+        Thread.ofPlatform().daemon().name("cluster-accept").start(this::acceptLoop);
+        router.setRemote(this);
+        LOG.info("Node {} listening on {} with peers {}", self.id(), ss.getLocalPort(), forwarder.targetIds());
+    }
+
+    public String selfId() { return self.id(); }
+
+    public String ownerOf(String gameId) { return ring.ownerOf(gameId); }
+
+    public boolean owns(String gameId) { return ring.ownerOf(gameId).equals(self.id()); }
+
+    @Override
+    public boolean isLocal(String gameId) { return owns(gameId); }
+
+    /** Sends {@code cmd} to the node owning its game; replies come back to {@code from}. */
+    @Override
+    public void forward(ClientConnection from, Command cmd) {
+        // a forwarded command must land on its owner; never bounce it on if the rings disagree
+        if (from instanceof LinkServer.RemoteClient) {
+            from.send(EventWriter.error("Game " + cmd.gameId() + " is not owned by node " + self.id(), cmd.header().correlationId()));
+            return;
+        }
+        forwarder.forward(ring.ownerOf(cmd.gameId()), from, cmd);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        router.setRemote(null);
+        ServerSocket ss = server;
+        if (ss != null) Forwarder.closeQuietly(ss);
+        forwarder.stop();
+        for (Socket s : inbound) Forwarder.closeQuietly(s);
+    }
+
+    private Forwarder.Link connect(Member m) throws IOException {
+        Socket s = new Socket();
+        try {
+            s.setTcpNoDelay(true);
+            s.connect(new InetSocketAddress(m.host(), m.port()), (int) connectTimeoutMs);
+            return Forwarder.Link.of(s);
+        } catch (IOException e) {
+            Forwarder.closeQuietly(s);
+            throw e;
+        }
+    }
+
+    private void acceptLoop() {
+        ServerSocket ss = server;
+        while (!closed) {
+            try {
+                Socket s = ss.accept();
+                s.setTcpNoDelay(true);
+                inbound.add(s);
+                Thread.ofPlatform().daemon().name("cluster-in-" + inboundSeq.incrementAndGet()).start(() -> {
+                    try {
+                        LinkServer.serve(Forwarder.Link.of(s), router);
+                    } catch (IOException e) {
+                        LOG.warn("Inbound cluster link failed: {}", e.getMessage());
+                    } finally {
+                        inbound.remove(s);
+                        Forwarder.closeQuietly(s);
+                    }
+                });
+            } catch (IOException e) {
+                if (closed || ss.isClosed()) return;
+                // e.g. out of file descriptors; peers can't forward here without it, so keep trying
+                LOG.error("cluster accept failed", e);
+                try {
+                    Thread.sleep(ACCEPT_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.util.LoggerUtil;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Back tier of a split deployment: runs the games for one or more {@link Gateway}s, which
+ * connect over a Unix domain socket. Each gateway link is served on its own thread by
+ * {@link LinkServer}; the router, mailboxes and game loops are the same as in a
+ * single-process server, only without client sockets to look after.
+ */
+public final class EngineServer implements Runnable, AutoCloseable {
+    private static final LoggerUtil LOG = LoggerUtil.get("ENGINE");
+    private static final long ACCEPT_BACKOFF_MS = 100;
+
+    private final Path socket;
+    private final MessageRouter router;
+    private final Set<SocketChannel> links = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger linkSeq = new AtomicInteger();
+    private volatile ServerSocketChannel server;
+    private volatile boolean closed;
+
+    public EngineServer(Path socket, MessageRouter router) {
+        this.socket = socket;
+        this.router = router;
+    }
+
+    /** Binds the socket file, replacing one left behind by an earlier run. */
+    public void bind() throws IOException {
+        Files.deleteIfExists(socket);
+        ServerSocketChannel ch = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        ch.bind(UnixDomainSocketAddress.of(socket));
+        server = ch;
+        LOG.info("Engine listening on {}", socket);
+    }
+
+    /** Accepts gateway links until closed; call {@link #bind()} first. */
+    @Override
+    public void run() {
+        ServerSocketChannel ss = server;
+        while (!closed) {
+            try {
+                SocketChannel ch = ss.accept();
+                links.add(ch);
+                Thread.ofPlatform().daemon().name("engine-link-" + linkSeq.incrementAndGet()).start(() -> {
+                    try {
+                        LinkServer.serve(Forwarder.Link.of(ch), router);
+                    } finally {
+                        links.remove(ch);
+                    }
+                });
+            } catch (IOException e) {
+                if (closed || !ss.isOpen()) return;
+                // e.g. out of file descriptors; this is the engine's only way in, so keep trying
+                LOG.error("engine accept failed", e);
+                try {
+                    Thread.sleep(ACCEPT_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ServerSocketChannel ss = server;
+        if (ss != null) Forwarder.closeQuietly(ss);
+        for (SocketChannel ch : links) Forwarder.closeQuietly(ch);
+        try { Files.deleteIfExists(socket); } catch (IOException ignored) { }
+    }
+}
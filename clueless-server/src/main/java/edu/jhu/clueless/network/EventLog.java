@@ -0,0 +1,62 @@
+package edu.jhu.clueless.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A game's recent broadcasts, numbered 1, 2, 3, ... so a client that reconnects can say the
+ * last one it saw and be sent only what it missed. Holds the last {@code capacity} events;
+ * of those carrying a snapshot (see {@link OutboundMessage#snapshot}) only the newest of each
+ * key keeps it, the way a slow client's queue conflates them, so the log stays small.
+ *
+ * Confined to the game's mailbox, like the rest of the session.
+ */
+final class EventLog {
+    private final OutboundMessage[] ring;
+    private final Map<String, Long> lastWithSnapshot = new HashMap<>(); // conflation key -> seq
+    private long nextSeq = 1;
+
+    EventLog(int capacity) {
+        this.ring = new OutboundMessage[Math.max(1, capacity)];
+    }
+
+    /** {@code json} with the next event's number added as "seq", right after its first field. */
+    String stamp(String json) {
+        int at = json.indexOf(',');
+        if (at < 0) at = json.endsWith("}") ? json.length() - 1 : json.length();
+        return json.substring(0, at) + ",\"seq\":" + nextSeq + json.substring(at);
+    }
+
+    /** Records {@code m}, which was built from {@link #stamp}, as the next event. */
+    void append(OutboundMessage m) {
+        long seq = nextSeq++;
+        String key = m.getConflationKey();
+        if (key != null) {
+            Long prev = lastWithSnapshot.put(key, seq);
+            if (prev != null && prev > seq - ring.length) {
+                int i = slot(prev);
+                ring[i] = ring[i].withoutSnapshot();
+            }
+        }
+        ring[slot(seq)] = m;
+    }
+
+    /** Number of the newest event, or 0 before the first. */
+    long lastSeq() { return nextSeq - 1; }
+
+    /**
+     * Everything after {@code seen}, oldest first, or null when that isn't possible: some of
+     * it has already been overwritten, or {@code seen} is from some other run of the game.
+     */
+    List<OutboundMessage> since(long seen) {
+        long oldest = Math.max(1, nextSeq - ring.length);
+        if (seen < oldest - 1 || seen > lastSeq()) return null;
+        List<OutboundMessage> out = new ArrayList<>((int) (lastSeq() - seen));
+        for (long s = seen + 1; s < nextSeq; s++) out.add(ring[slot(s)]);
+        return out;
+    }
+
+    private int slot(long seq) { return (int) ((seq - 1) % ring.length); }
+}
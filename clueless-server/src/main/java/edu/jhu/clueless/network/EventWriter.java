@@ -0,0 +1,234 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.util.JsonUtil;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes the router's outbound JSON (ACK/EVENT/ERROR and friends, plus the state and lobby
+ * trees) into a StringBuilder that each thread reuses, so an event costs the one String it
+ * produces instead of a concatenation and an esc() copy per field.
+ *
+ * Message prefixes like {"type":"ACK","for":"MOVE" are built once per type. String values are
+ * copied straight into the builder and only the characters that need escaping are replaced.
+ * Output is byte-for-byte what the router produced before: top-level fields escape backslash
+ * and quote (and now control characters, which used to break line framing), and tree()
+ * matches Gson's default output, HTML-safe escapes included.
+ *
+ * Usage: {@code EventWriter.ack(MessageType.MOVE).str("gameId", id).end()}. head() returns the
+ * message without its closing brace, for StateChange to append the state fields.
+ */
+public final class EventWriter {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_RETAINED = 64 * 1024; // don't pin a huge builder after one big snapshot
+
+    private static final ThreadLocal<EventWriter> LOCAL = ThreadLocal.withInitial(EventWriter::new);
+
+    private static final String[] ACK_PREFIX = new String[MessageType.values().length];
+    private static final Map<String, String> EVENT_PREFIX = new ConcurrentHashMap<>();
+    private static final Map<String, String> TYPE_PREFIX = new ConcurrentHashMap<>();
+    static {
+        for (MessageType t : MessageType.values()) ACK_PREFIX[t.ordinal()] = "{\"type\":\"ACK\",\"for\":\"" + t.name() + "\"";
+    }
+
+    // escapes for top-level fields (what MessageRouter.esc() did) and for Gson-compatible trees
+    private static final String[] FIELD_ESCAPES = new String[128];
+    private static final String[] TREE_ESCAPES = new String[128];
+    static {
+        for (int c = 0; c < 0x20; c++) FIELD_ESCAPES[c] = String.format("\\u%04x", c);
+        FIELD_ESCAPES['\t'] = "\\t";
+        FIELD_ESCAPES['\b'] = "\\b";
+        FIELD_ESCAPES['\n'] = "\\n";
+        FIELD_ESCAPES['\r'] = "\\r";
+        FIELD_ESCAPES['\f'] = "\\f";
+        FIELD_ESCAPES['"'] = "\\\"";
+        FIELD_ESCAPES['\\'] = "\\\\";
+        System.arraycopy(FIELD_ESCAPES, 0, TREE_ESCAPES, 0, 128);
+        TREE_ESCAPES['<'] = "\\u003c";
+        TREE_ESCAPES['>'] = "\\u003e";
+        TREE_ESCAPES['&'] = "\\u0026";
+        TREE_ESCAPES['='] = "\\u003d";
+        TREE_ESCAPES['\''] = "\\u0027";
+    }
+
+    private StringBuilder sb = new StringBuilder(INITIAL_CAPACITY);
+    private boolean busy;
+
+    private EventWriter() { }
+
+    private static EventWriter open(String prefix) {
+        EventWriter w = LOCAL.get();
+        if (w.busy) {
+            // nested use (the outer message keeps its own writer) or one abandoned by an exception
+            // halfway through a message; either way this thread writes into a fresh one from now on
+            w = new EventWriter();
+            LOCAL.set(w);
+        }
+        w.busy = true;
+        w.sb.setLength(0);
+        w.sb.append(prefix);
+        return w;
+    }
+
+    /** {"type":"ACK","for":"<type>" */
+    public static EventWriter ack(MessageType forType) {
+        return open(ACK_PREFIX[forType.ordinal()]);
+    }
+
+    /** As {@link #ack(MessageType)}, echoing the request's correlationId when it had one. */
+    public static EventWriter ack(MessageType forType, String correlationId) {
+        EventWriter w = ack(forType);
+        return correlationId != null ? w.str("correlationId", correlationId) : w;
+    }
+
+    /** {"type":"EVENT","event":"<name>" */
+    public static EventWriter event(String name) {
+        return open(EVENT_PREFIX.computeIfAbsent(name, n -> "{\"type\":\"EVENT\",\"event\":\"" + n + "\""));
+    }
+
+    /** {"type":"<type>" for the odd ones out (PONG, DISPROVE_REQUEST). */
+    public static EventWriter message(String type) {
+        return open(TYPE_PREFIX.computeIfAbsent(type, t -> "{\"type\":\"" + t + "\""));
+    }
+
+    /** Continues a head() produced earlier. */
+    public static EventWriter extend(String head) {
+        return open(head);
+    }
+
+    public static String error(String message) {
+        return error(message, null);
+    }
+
+    /** An ERROR answering the request with {@code correlationId}; null leaves the field out. */
+    public static String error(String message, String correlationId) {
+        EventWriter w = message("ERROR");
+        if (correlationId != null) w.str("correlationId", correlationId);
+        return w.str("message", message).end();
+    }
+
+    /** A Map/List/String/Number/Boolean tree exactly as JsonUtil.toJson (or toJsonWithNulls) would write it. */
+    public static String toJson(Object tree, boolean serializeNulls) {
+        EventWriter w = open("");
+        try {
+            w.tree(tree, serializeNulls);
+        } catch (RuntimeException e) {
+            w.finish(); // nobody else can finish it
+            throw e;
+        }
+        return w.finish();
+    }
+
+    /** ,"key":"value" with null written as "" (the router's historical behaviour). */
+    public EventWriter str(String key, String value) {
+        sb.append(",\"").append(key).append("\":\"");
+        if (value != null) escape(value, FIELD_ESCAPES);
+        sb.append('"');
+        return this;
+    }
+
+    public EventWriter bool(String key, boolean value) {
+        sb.append(",\"").append(key).append("\":").append(value);
+        return this;
+    }
+
+    public EventWriter num(String key, long value) {
+        sb.append(",\"").append(key).append("\":").append(value);
+        return this;
+    }
+
+    /** ,"key":json where json is already encoded (a cached state or lobby tree). */
+    public EventWriter raw(String key, String json) {
+        sb.append(",\"").append(key).append("\":").append(json);
+        return this;
+    }
+
+    public EventWriter tree(String key, Object tree, boolean serializeNulls) {
+        sb.append(",\"").append(key).append("\":");
+        tree(tree, serializeNulls);
+        return this;
+    }
+
+    /** The message without its closing brace. */
+    public String head() {
+        return finish();
+    }
+
+    public String end() {
+        sb.append('}');
+        return finish();
+    }
+
+    private String finish() {
+        String s = sb.toString();
+        if (sb.capacity() > MAX_RETAINED) sb = new StringBuilder(INITIAL_CAPACITY);
+        busy = false;
+        return s;
+    }
+
+    private void tree(Object v, boolean nulls) {
+        if (v == null) {
+            sb.append("null");
+        } else if (v instanceof String s) {
+            sb.append('"');
+            escape(s, TREE_ESCAPES);
+            sb.append('"');
+        } else if (v instanceof Boolean b) {
+            sb.append(b.booleanValue());
+        } else if (v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte) {
+            sb.append(((Number) v).longValue());
+        } else if (v instanceof Number n) {
+            sb.append(n.toString());
+        } else if (v instanceof Map<?, ?> m) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> e : m.entrySet()) {
+                if (e.getValue() == null && !nulls) continue; // Gson drops null members by default
+                if (!first) sb.append(',');
+                first = false;
+                sb.append('"');
+                escape(String.valueOf(e.getKey()), TREE_ESCAPES);
+                sb.append("\":");
+                tree(e.getValue(), nulls);
+            }
+            sb.append('}');
+        } else if (v instanceof Collection<?> c) {
+            sb.append('[');
+            boolean first = true;
+            for (Object o : c) {
+                if (!first) sb.append(',');
+                first = false;
+                tree(o, nulls);
+            }
+            sb.append(']');
+        } else {
+            // nothing the router builds today; keep the output right if that changes
+            sb.append(nulls ? JsonUtil.toJsonWithNulls(v) : JsonUtil.toJson(v));
+        }
+    }
+
+    private void escape(String s, String[] table) {
+        int n = s.length(), last = 0;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            String rep;
+            if (c < 128) {
+                rep = table[c];
+                if (rep == null) continue;
+            } else if (c == '\u2028' && table == TREE_ESCAPES) {
+                rep = "\\u2028";
+            } else if (c == '\u2029' && table == TREE_ESCAPES) {
+                rep = "\\u2029";
+            } else {
+                continue;
+            }
+            if (last < i) sb.append(s, last, i);
+            sb.append(rep);
+            last = i + 1;
+        }
+        if (last < n) sb.append(s, last, n);
+    }
+}
@@ -0,0 +1,255 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandEncoder;
+import edu.jhu.clueless.util.LoggerUtil;
+import edu.jhu.clueless.util.Metrics;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The sending half of inter-process links: hands this process's clients' commands to other
+ * processes that hold their games, and delivers what comes back to the right client.
+ * Used by a {@link Cluster} node for games other nodes own and by a {@link Gateway} for
+ * every game. The far end runs {@link LinkServer}.
+ *
+ * Each target has a queue and a writer thread that connects on first use, writes whatever
+ * has queued up as one batch and flushes once. Callers only enqueue, so a transport thread
+ * never blocks on another process. If a target can't be reached, queued requests are
+ * answered with an ERROR and it isn't retried for {@code retryMs}.
+ *
+ * The far end reports each game a client has subscribed to there. When a link drops, those
+ * clients lose their subscriptions with it; the writer reconnects straight away (every
+ * {@code retryMs} until it succeeds) and the new link starts by subscribing them again.
+ * Broadcasts sent while the link was down are lost, which the client sees as a gap in the
+ * events' seq and can RESUME to fill.
+ */
+final class Forwarder {
+    private static final LoggerUtil LOG = LoggerUtil.get("FORWARD");
+
+    /** An open connection to another process. */
+    record Link(DataInputStream in, DataOutputStream out, Closeable closer) {
+        static Link of(Socket s) throws IOException {
+            return new Link(new DataInputStream(new BufferedInputStream(s.getInputStream())),
+                    new DataOutputStream(new BufferedOutputStream(s.getOutputStream())), s);
+        }
+        static Link of(SocketChannel ch) {
+            return new Link(new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch))),
+                    new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch))), ch);
+        }
+        void close() { closeQuietly(closer); }
+    }
+
+    interface Connector {
+        Link open() throws IOException;
+    }
+
+    private final String selfId;
+    private final long retryMs;
+    private final LongAdder forwarded, failed;
+    private final Map<String, Target> targets = new LinkedHashMap<>(); // fixed before start()
+    private final Map<ClientConnection, Long> clientNumbers = new ConcurrentHashMap<>();
+    private final Map<Long, ClientConnection> clients = new ConcurrentHashMap<>();
+    private final AtomicLong nextClient = new AtomicLong();
+    private volatile boolean closed;
+
+    /** {@code metricPrefix} names the counters, e.g. "cluster" gives cluster.forwarded. */
+    Forwarder(String selfId, long retryMs, String metricPrefix) {
+        this.selfId = selfId;
+        this.retryMs = retryMs;
+        this.forwarded = Metrics.counter(metricPrefix + ".forwarded");
+        this.failed = Metrics.counter(metricPrefix + ".forwardFailed");
+    }
+
+    void addTarget(String id, Connector connector) {
+        targets.put(id, new Target(id, connector));
+    }
+
+    Set<String> targetIds() { return Collections.unmodifiableSet(targets.keySet()); }
+
+    void start() {
+        for (Target t : targets.values()) t.start();
+    }
+
+    void stop() {
+        closed = true;
+        for (Target t : targets.values()) t.stop();
+    }
+
+    /** Queues {@code cmd} for {@code target}; replies come back to {@code from}. */
+    void forward(String target, ClientConnection from, Command cmd) {
+        long client = clientNumber(from);
+        targets.get(target).send(new Queued(LinkProtocol.FORWARD, client, CommandEncoder.toJson(cmd), cmd.header().correlationId()));
+        forwarded.increment();
+    }
+
+    private long clientNumber(ClientConnection c) {
+        Long n = clientNumbers.get(c);
+        if (n != null) return n;
+        long fresh = nextClient.incrementAndGet();
+        n = clientNumbers.putIfAbsent(c, fresh);
+        if (n != null) return n;
+        clients.put(fresh, c);
+        c.addCloseListener(() -> {
+            clientNumbers.remove(c);
+            clients.remove(fresh);
+            for (Target t : targets.values()) t.clientGone(fresh);
+        });
+        return fresh;
+    }
+
+    private record Queued(byte op, long client, String body, String correlationId) { }
+    // wakes a writer to reconnect; never written
+    private static final Queued RECONNECT = new Queued((byte) 0, 0, "", null);
+
+    private final class Target implements Runnable {
+        final String id;
+        final Connector connector;
+        final BlockingQueue<Queued> queue = new LinkedBlockingQueue<>();
+        // client -> games it is subscribed to on this target, as the target reported them
+        final Map<Long, Set<String>> subscriptions = new ConcurrentHashMap<>();
+        private volatile boolean connected;
+        private volatile Link link; // set and cleared by the writer thread
+        private Thread thread;
+        private long downUntil;
+
+        Target(String id, Connector connector) {
+            this.id = id;
+            this.connector = connector;
+        }
+
+        void start() {
+            thread = Thread.ofPlatform().daemon().name("forward-" + id).start(this);
+        }
+
+        void send(Queued q) { queue.offer(q); }
+
+        // only worth telling a target we're connected to (and so may hold a RemoteClient)
+        void clientGone(long client) {
+            subscriptions.remove(client);
+            if (connected) queue.offer(new Queued(LinkProtocol.CLOSED, client, "", null));
+        }
+
+        @Override
+        public void run() {
+            List<Queued> batch = new ArrayList<>();
+            while (!closed) {
+                try {
+                    // while down with subscriptions to restore, retry without waiting for a request
+                    boolean restore = link == null && !subscriptions.isEmpty();
+                    Queued first = restore ? queue.poll(retryMs, TimeUnit.MILLISECONDS) : queue.take();
+                    if (first == null && !restore) continue;
+                    if (first != null && first != RECONNECT) batch.add(first);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                queue.drainTo(batch, 1023);
+                batch.removeIf(q -> q == RECONNECT);
+                Link l = link;
+                try {
+                    if (l == null) l = connect();
+                    for (Queued q : batch) LinkProtocol.write(l.out(), q.op(), q.client(), q.body());
+                    l.out().flush();
+                } catch (IOException e) {
+                    if (!closed && !batch.isEmpty()) LOG.warn("Link to {} failed: {}", id, e.getMessage());
+                    disconnect(l);
+                    for (Queued q : batch) bounce(q);
+                }
+                batch.clear();
+            }
+            disconnect(link);
+        }
+
+        private Link connect() throws IOException {
+            if (System.currentTimeMillis() < downUntil) throw new IOException(id + " unreachable");
+            Link l;
+            try {
+                l = connector.open();
+            } catch (IOException e) {
+                downUntil = System.currentTimeMillis() + retryMs;
+                throw e;
+            }
+            int resubscribed = 0;
+            try {
+                LinkProtocol.write(l.out(), LinkProtocol.HELLO, 0, selfId);
+                // clients subscribed over an earlier link get their games back before anything else
+                for (Map.Entry<Long, Set<String>> e : subscriptions.entrySet()) {
+                    for (String gameId : e.getValue()) {
+                        LinkProtocol.write(l.out(), LinkProtocol.SUBSCRIBED, e.getKey(), gameId);
+                        resubscribed++;
+                    }
+                }
+            } catch (IOException e) {
+                l.close();
+                downUntil = System.currentTimeMillis() + retryMs;
+                throw e;
+            }
+            synchronized (this) {
+                link = l;
+                connected = true;
+            }
+            Thread.ofPlatform().daemon().name("replies-" + id).start(() -> readReplies(l));
+            LOG.info("Linked to {}; {} subscriptions restored", id, resubscribed);
+            return l;
+        }
+
+        // either thread may notice a dead link; only the current one is cleared
+        private void disconnect(Link l) {
+            if (l == null) return;
+            l.close();
+            synchronized (this) {
+                if (link != l) return;
+                link = null;
+                connected = false;
+            }
+        }
+
+        private void readReplies(Link l) {
+            try {
+                LinkProtocol.Frame f;
+                while ((f = LinkProtocol.read(l.in())) != null) {
+                    if (f.op() == LinkProtocol.SUBSCRIBED) {
+                        long client = f.client();
+                        if (clients.containsKey(client)) subscriptions.computeIfAbsent(client, k -> ConcurrentHashMap.newKeySet()).add(f.body());
+                        continue;
+                    }
+                    if (f.op() != LinkProtocol.REPLY) { LOG.warn("Unexpected frame {} from {}", (char) f.op(), id); continue; }
+                    ClientConnection c = clients.get(f.client());
+                    if (c != null) c.send(f.body());
+                }
+            } catch (IOException e) {
+                if (!closed) LOG.warn("Replies from {} ended: {}", id, e.getMessage());
+            } finally {
+                // mark the link down now, so the next batch reconnects instead of going into a dead socket
+                disconnect(l);
+                if (!closed && !subscriptions.isEmpty()) queue.offer(RECONNECT);
+            }
+        }
+
+        private void bounce(Queued q) {
+            if (q.op() != LinkProtocol.FORWARD) return;
+            failed.increment();
+            ClientConnection c = clients.get(q.client());
+            if (c != null) c.send(EventWriter.error("Game server " + id + " unavailable", q.correlationId()));
+        }
+
+        void stop() {
+            if (thread != null) thread.interrupt();
+            disconnect(link);
+        }
+    }
+
+    static void closeQuietly(Closeable c) {
+        try { c.close(); } catch (IOException ignored) { }
+    }
+}
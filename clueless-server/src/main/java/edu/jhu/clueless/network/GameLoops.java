@@ -0,0 +1,199 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.util.ConfigLoader;
+import edu.jhu.clueless.util.LoggerUtil;
+import edu.jhu.clueless.util.Metrics;
+
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed set of single-threaded game loops. Every game is pinned to one loop when its
+ * session is created, so its engine, state and lobby are only ever touched by that loop's
+ * thread and stay in that core's cache; the only cross-thread handoff is the I/O thread
+ * putting a command in the game's mailbox.
+ *
+ * Placement is clueless.game.placement: "leastLoaded" (default; the loop with the fewest
+ * games) or "hash" (gameId hash, stable across restarts). clueless.game.loops sets the number
+ * of loops (default one per core).
+ *
+ * {@link #rebalance} is the hook for moving games off a hot loop: it takes games whose mailbox
+ * is empty from the loop that has been busiest since the last call and moves them to the one
+ * that has been idlest. A move is itself a mailbox command, so it is ordered with the game's
+ * other commands. clueless.game.rebalanceMs runs it periodically (default 0, off).
+ *
+ * Per loop, gauges game.loop.N.queueDepth (drains waiting), game.loop.N.games and
+ * game.loop.N.utilization (percent of wall time spent running commands since the previous
+ * sample); moves are counted in game.loop.migrations.
+ */
+public final class GameLoops {
+    private static final LoggerUtil LOG = LoggerUtil.get("LOOPS");
+    private static final LongAdder MIGRATIONS = Metrics.counter("game.loop.migrations");
+
+    public enum Placement { LEAST_LOADED, HASH }
+
+    private static volatile GameLoops shared;
+
+    /** The process-wide loops, configured from clueless.game.*. */
+    public static GameLoops shared() {
+        GameLoops g = shared;
+        if (g == null) {
+            synchronized (GameLoops.class) {
+                g = shared;
+                if (g == null) {
+                    Placement p = "hash".equalsIgnoreCase(ConfigLoader.getString("clueless.game.placement", "leastLoaded"))
+                            ? Placement.HASH : Placement.LEAST_LOADED;
+                    g = new GameLoops(ConfigLoader.getInt("clueless.game.loops", Runtime.getRuntime().availableProcessors()), p);
+                    g.registerGauges();
+                    long every = ConfigLoader.getLong("clueless.game.rebalanceMs", 0);
+                    if (every > 0) g.startRebalancing(every);
+                    shared = g;
+                }
+            }
+        }
+        return g;
+    }
+
+    final class Loop implements Executor, Runnable {
+        final int index;
+        final Set<GameSession> games = ConcurrentHashMap.newKeySet();
+        private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+        private final Thread thread;
+        private volatile long busyNanos; // written by this loop's thread only
+        private long sampledBusy, sampledAt = System.nanoTime(); // guarded by this
+        private long rebalanceBusy; // rebalance() caller only
+
+        Loop(int index) {
+            this.index = index;
+            this.thread = new Thread(this, "game-loop-" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override public void execute(Runnable r) { queue.add(r); }
+
+        @Override public void run() {
+            try {
+                while (true) {
+                    Runnable r = queue.take();
+                    long start = System.nanoTime();
+                    try {
+                        r.run();
+                    } catch (RuntimeException e) {
+                        LOG.error("task failed on loop " + index, e);
+                    }
+                    busyNanos += System.nanoTime() - start;
+                }
+            } catch (InterruptedException stop) {
+                // shutdown
+            }
+        }
+
+        int queueDepth() { return queue.size(); }
+
+        synchronized long utilizationPercent() {
+            long now = System.nanoTime(), busy = busyNanos;
+            long wall = now - sampledAt;
+            long pct = wall <= 0 ? 0 : Math.min(100, (busy - sampledBusy) * 100 / wall);
+            sampledBusy = busy;
+            sampledAt = now;
+            return pct;
+        }
+    }
+
+    private final Loop[] loops;
+    private final Placement placement;
+    private Thread rebalancer;
+
+    public GameLoops(int count, Placement placement) {
+        this.placement = placement;
+        this.loops = new Loop[Math.max(1, count)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new Loop(i);
+            loops[i].thread.start();
+        }
+    }
+
+    public int size() { return loops.length; }
+
+    /** Games currently pinned to each loop. */
+    public int[] gamesPerLoop() {
+        int[] out = new int[loops.length];
+        for (int i = 0; i < loops.length; i++) out[i] = loops[i].games.size();
+        return out;
+    }
+
+    /** Picks the loop for a new game; the session adds itself to the loop's games. */
+    Loop place(String gameId) {
+        if (placement == Placement.HASH) return loops[Math.floorMod(gameId.hashCode(), loops.length)];
+        Loop best = loops[0];
+        for (Loop l : loops) {
+            if (l.games.size() < best.games.size()) best = l;
+        }
+        return best;
+    }
+
+    /**
+     * Moves up to {@code maxMoves} games with empty mailboxes from the busiest loop since the
+     * last call to the idlest, stopping once the busiest no longer has more games. Returns the
+     * number of moves started.
+     */
+    public synchronized int rebalance(int maxMoves) {
+        if (loops.length < 2) return 0;
+        Loop hot = null, cold = null;
+        long hotBusy = -1, coldBusy = Long.MAX_VALUE;
+        for (Loop l : loops) {
+            long busy = l.busyNanos, recent = busy - l.rebalanceBusy;
+            l.rebalanceBusy = busy;
+            // ties go to game count, so an unused pool still evens out
+            if (recent > hotBusy || (recent == hotBusy && l.games.size() > hot.games.size())) { hot = l; hotBusy = recent; }
+            if (recent < coldBusy || (recent == coldBusy && l.games.size() < cold.games.size())) { cold = l; coldBusy = recent; }
+        }
+        int moved = 0, hotGames = hot.games.size(), coldGames = cold.games.size();
+        for (GameSession s : hot.games) {
+            if (moved >= maxMoves || hotGames - coldGames <= 1) break;
+            if (s.pending() != 0) continue; // busy right now; its state is warm where it is
+            s.migrateTo(cold);
+            hotGames--;
+            coldGames++;
+            moved++;
+        }
+        if (moved > 0) LOG.info("rebalance moved {} games from loop {} to loop {}", moved, hot.index, cold.index);
+        return moved;
+    }
+
+    void migrated() { MIGRATIONS.increment(); }
+
+    public void shutdown() {
+        if (rebalancer != null) rebalancer.interrupt();
+        for (Loop l : loops) l.thread.interrupt();
+    }
+
+    private void registerGauges() {
+        for (Loop l : loops) {
+            String p = "game.loop." + l.index + ".";
+            Metrics.gauge(p + "queueDepth", l::queueDepth);
+            Metrics.gauge(p + "games", () -> l.games.size());
+            Metrics.gauge(p + "utilization", l::utilizationPercent);
+        }
+    }
+
+    private void startRebalancing(long everyMs) {
+        rebalancer = new Thread(() -> {
+            try {
+                while (true) {
+                    TimeUnit.MILLISECONDS.sleep(everyMs);
+                    rebalance(Math.max(1, loops.length));
+                }
+            } catch (InterruptedException stop) {
+                // shutdown
+            }
+        }, "game-rebalancer");
+        rebalancer.setDaemon(true);
+        rebalancer.start();
+    }
+}
@@ -0,0 +1,249 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.engine.GameEngine;
+import edu.jhu.clueless.engine.GameState;
+import edu.jhu.clueless.engine.Lobby;
+import edu.jhu.clueless.util.ConfigLoader;
+import edu.jhu.clueless.util.Histogram;
+import edu.jhu.clueless.util.LoggerUtil;
+import edu.jhu.clueless.util.Metrics;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Everything the router keeps for one gameId: lobby, engine, the players who have joined
+ * the engine, the connections that receive its broadcasts, and the delta tracker. Resolved
+ * with a single lookup in {@link GameSessionRegistry}.
+ *
+ * The lobby, membership, subscribers and tracker live as long as the session; the engine is
+ * created on first use and replaced on START_GAME / NEW_GAME. The players' session tokens,
+ * the {@link EventLog} of recent broadcasts that a client presenting its token after a
+ * reconnect is caught up from, and the {@link ReplyCache} that answers retried commands
+ * also live as long as the session.
+ *
+ * A session is also the game's actor. Transports {@link #enqueue} commands onto its mailbox;
+ * the first enqueue onto an empty mailbox schedules a drain on the game's {@link GameLoops}
+ * loop, and the drain runs commands one at a time until the mailbox is empty. So a game's
+ * engine and lobby only ever see its loop's thread, while games on different loops run in
+ * parallel.
+ *
+ * Scheduling is fair across the games on a loop: a drain runs at most
+ * clueless.game.sliceBudget commands (default 16) and then goes to the back of the loop's
+ * queue, so the loop serves its busy games round-robin and a flood on one gameId delays a
+ * quiet game by at most one slice per busy game. The time each command waits between
+ * enqueue and start is recorded in the game's {@link #waits} histogram and in the
+ * process-wide one behind the game.wait.p50Us / p99Us / p999Us gauges.
+ */
+final class GameSession {
+    private static final LoggerUtil LOG = LoggerUtil.get("SESSIONS");
+    private static final int SLICE_BUDGET = Math.max(1, ConfigLoader.getInt("clueless.game.sliceBudget", 16));
+    private static final Histogram ALL_WAITS = new Histogram();
+    static {
+        Metrics.gauge("game.wait.p50Us", () -> ALL_WAITS.percentile(50));
+        Metrics.gauge("game.wait.p99Us", () -> ALL_WAITS.percentile(99));
+        Metrics.gauge("game.wait.p999Us", () -> ALL_WAITS.percentile(99.9));
+    }
+
+    private static final int REPLAY_EVENTS = ConfigLoader.getInt("clueless.session.replayEvents", 64);
+    private static final SecureRandom TOKENS = new SecureRandom();
+    private static final int REPLY_ENTRIES = ConfigLoader.getInt("clueless.idempotency.maxEntries", 256);
+    private static final long REPLY_CHARS = ConfigLoader.getLong("clueless.idempotency.maxChars", 256 * 1024);
+    private static final long REPLY_TTL_MS = ConfigLoader.getLong("clueless.idempotency.ttlMs", 60_000);
+
+    private record Queued(Runnable command, long enqueuedNanos) { }
+
+    final String gameId;
+    final Lobby lobby;
+    final StateDeltaTracker tracker = new StateDeltaTracker();
+    private final Set<String> joined = ConcurrentHashMap.newKeySet();
+    private final Set<ClientConnection> subscribers = ConcurrentHashMap.newKeySet();
+    private final GameSessionRegistry registry;
+    private GameEngine engine; // mailbox only
+    private Long pinnedSeed, usedSeed; // mailbox only
+    private String pinnedToken, issuedToken; // mailbox only
+    /** Numbered recent broadcasts. Mailbox only. */
+    final EventLog events = new EventLog(REPLAY_EVENTS);
+    /** Answers to recent commands by (playerId, correlationId). Mailbox only. */
+    final ReplyCache replies = new ReplyCache(REPLY_ENTRIES, REPLY_CHARS, REPLY_TTL_MS);
+    final AtomicLongArray rateBuckets = RateLimiter.newBuckets(); // this game's share of the RateLimiter
+    private final Map<String, String> tokenPlayers = new HashMap<>(); // token -> playerId, mailbox only
+    private final Map<String, String> playerTokens = new HashMap<>(); // playerId -> token, mailbox only
+    private String lobbyJson; // mailbox only, valid at lobbyJsonVersion
+    private long lobbyJsonVersion = -1;
+    private volatile long lastUsedNanos = System.nanoTime();
+    private final Queue<Queued> mailbox = new ConcurrentLinkedQueue<>();
+    /** Enqueue-to-start wait of this game's commands. */
+    final Histogram waits = new Histogram();
+    private final AtomicInteger pending = new AtomicInteger(); // queued + running
+    private final GameLoops loops;
+    private volatile GameLoops.Loop loop; // changed only from the mailbox
+
+    GameSession(String gameId, GameSessionRegistry registry, GameLoops loops) {
+        this.gameId = gameId;
+        this.lobby = new Lobby(gameId);
+        this.registry = registry;
+        this.loops = loops;
+        this.loop = loops.place(gameId);
+        loop.games.add(this);
+    }
+
+    void enqueue(Runnable command) {
+        mailbox.add(new Queued(command, System.nanoTime()));
+        // added before counted, so a drain that sees pending > 0 also sees the command
+        if (pending.getAndIncrement() == 0) loop.execute(this::drain);
+    }
+
+    /** Moves this game to {@code target} once the commands already queued have run. */
+    void migrateTo(GameLoops.Loop target) {
+        enqueue(() -> {
+            if (loop == target) return;
+            loop.games.remove(this);
+            target.games.add(this);
+            loop = target;
+            loops.migrated();
+        });
+    }
+
+    /** Called once the registry has dropped this session. */
+    void detach() {
+        loop.games.remove(this);
+    }
+
+    /** Commands queued or running. */
+    int pending() { return pending.get(); }
+
+    private void drain() {
+        GameLoops.Loop here = loop;
+        for (int n = 0; n < SLICE_BUDGET; n++) {
+            Queued q = mailbox.poll();
+            long waited = System.nanoTime() - q.enqueuedNanos();
+            waits.recordNanos(waited);
+            ALL_WAITS.recordNanos(waited);
+            try {
+                q.command().run();
+            } catch (Throwable e) {
+                // Errors too (StackOverflowError, an assert): otherwise pending never drops and the game stalls
+                LOG.error("command failed in game " + gameId, e);
+            }
+            if (pending.decrementAndGet() == 0) return;
+            if (loop != here) break; // migrated: carry on from the new loop
+        }
+        loop.execute(this::drain);
+    }
+
+    GameEngine engine() {
+        if (engine == null) engine = new GameEngine(new GameState());
+        return engine;
+    }
+
+    /** The current engine, or null if nobody has joined or started this game yet. */
+    GameEngine engineIfPresent() { return engine; }
+
+    /**
+     * Seed for a deal made by the command being applied: fresh on a primary, the primary's own
+     * on a standby replaying it (see {@link #pinDealSeed}). Mailbox only.
+     */
+    long dealSeed() {
+        long s = pinnedSeed != null ? pinnedSeed : ThreadLocalRandom.current().nextLong();
+        usedSeed = s;
+        return s;
+    }
+
+    void pinDealSeed(Long seed) { pinnedSeed = seed; }
+
+    /** The seed the command just applied dealt with, or null if it didn't deal; clears both. */
+    Long takeDealSeed() {
+        Long s = usedSeed;
+        usedSeed = null;
+        pinnedSeed = null;
+        return s;
+    }
+
+    /** Drops the old engine (if any) and returns a fresh one. */
+    GameEngine resetEngine() {
+        engine = new GameEngine(new GameState());
+        return engine;
+    }
+
+    /** The lobby snapshot JSON, rebuilt only when the lobby's version has moved. */
+    String lobbyJson(Supplier<String> build) {
+        long v = lobby.getVersion();
+        if (lobbyJson == null || v != lobbyJsonVersion) {
+            lobbyJson = build.get();
+            lobbyJsonVersion = v;
+        }
+        return lobbyJson;
+    }
+
+    /**
+     * The player's session token for this game, issued on first call: fresh on a primary, the
+     * primary's own on a standby replaying the join (see {@link #pinToken}), so it still works
+     * after a failover. Mailbox only.
+     */
+    String sessionToken(String playerId) {
+        return playerTokens.computeIfAbsent(playerId, p -> {
+            String token = pinnedToken;
+            if (token == null) {
+                byte[] b = new byte[16];
+                TOKENS.nextBytes(b);
+                token = Base64.getUrlEncoder().withoutPadding().encodeToString(b);
+            }
+            tokenPlayers.put(token, p);
+            issuedToken = token;
+            return token;
+        });
+    }
+
+    void pinToken(String token) { pinnedToken = token; }
+
+    /** The token the command just applied issued, or null if it issued none; clears both. */
+    String takeToken() {
+        String t = issuedToken;
+        issuedToken = null;
+        pinnedToken = null;
+        return t;
+    }
+
+    /** Who {@code token} was issued to, or null if it wasn't issued for this game. */
+    String playerForToken(String token) { return token != null ? tokenPlayers.get(token) : null; }
+
+    boolean isJoined(String playerId) { return playerId != null && joined.contains(playerId); }
+    void join(String playerId) { joined.add(playerId); }
+    Set<String> joined() { return joined; }
+
+    Set<ClientConnection> subscribers() { return Collections.unmodifiableSet(subscribers); }
+
+    void subscribe(ClientConnection c) {
+        if (!subscribers.add(c)) return;
+        registry.subscriptionAdded();
+        // a reaped or disconnected client must not linger as a broadcast target
+        c.addCloseListener(() -> unsubscribe(c));
+        // so the sending process can put it back if the link drops
+        if (c instanceof LinkServer.RemoteClient rc) rc.subscribed(gameId);
+    }
+
+    void unsubscribe(ClientConnection c) {
+        if (!subscribers.remove(c)) return;
+        registry.subscriptionRemoved();
+        touch();
+    }
+
+    void touch() { lastUsedNanos = System.nanoTime(); }
+
+    /** No subscribers, nothing in the mailbox, and untouched for at least {@code idleNanos}. */
+    boolean isIdle(long now, long idleNanos) {
+        return subscribers.isEmpty() && pending.get() == 0 && now - lastUsedNanos >= idleNanos;
+    }
+}
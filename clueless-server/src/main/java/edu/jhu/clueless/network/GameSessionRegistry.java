@@ -0,0 +1,89 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.util.ConfigLoader;
+import edu.jhu.clueless.util.LoggerUtil;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * gameId -> {@link GameSession}, with a bound on how many games can be held at once.
+ *
+ * A session with no subscribers that has not been used for clueless.session.idleMs (default
+ * 10 minutes) is evicted. There is no sweeper thread: creating a session sweeps at most once
+ * per idle period, which is the only time the map can grow. Once clueless.session.max
+ * (default 10000) games are live, creating another fails with "Too many games".
+ *
+ * Each new session is pinned to one of the router's {@link GameLoops}.
+ */
+final class GameSessionRegistry {
+    private static final LoggerUtil LOG = LoggerUtil.get("SESSIONS");
+
+    private final Map<String, GameSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriptions = new AtomicInteger();
+    private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+    private final long idleNanos;
+    private final int maxSessions;
+    private final GameLoops loops;
+
+    GameSessionRegistry(GameLoops loops) {
+        this(loops, ConfigLoader.getLong("clueless.session.idleMs", 600_000), ConfigLoader.getInt("clueless.session.max", 10_000));
+    }
+
+    GameSessionRegistry(GameLoops loops, long idleMs, int maxSessions) {
+        this.loops = loops;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, idleMs));
+        this.maxSessions = maxSessions;
+    }
+
+    static String normalize(String gameId) {
+        return (gameId == null || gameId.isBlank()) ? "default" : gameId;
+    }
+
+    /** The session for {@code gameId}, or null if there is none. */
+    GameSession get(String gameId) {
+        GameSession s = sessions.get(normalize(gameId));
+        if (s != null) s.touch();
+        return s;
+    }
+
+    GameSession getOrCreate(String gameId) {
+        String id = normalize(gameId);
+        GameSession s = sessions.get(id);
+        if (s == null) {
+            sweepIfDue();
+            if (sessions.size() >= maxSessions) throw new IllegalStateException("Too many games");
+            s = sessions.computeIfAbsent(id, k -> new GameSession(k, this, loops));
+        }
+        s.touch();
+        return s;
+    }
+
+    int size() { return sessions.size(); }
+    int subscriptions() { return subscriptions.get(); }
+
+    void subscriptionAdded() { subscriptions.incrementAndGet(); }
+    void subscriptionRemoved() { subscriptions.decrementAndGet(); }
+
+    private void sweepIfDue() {
+        long now = System.nanoTime(), last = lastSweepNanos.get();
+        if (now - last < idleNanos || !lastSweepNanos.compareAndSet(last, now)) return;
+        sweep(now);
+    }
+
+    /** Evicts idle sessions; returns how many went. */
+    int sweep(long now) {
+        int evicted = 0;
+        for (GameSession s : sessions.values()) {
+            if (s.isIdle(now, idleNanos) && sessions.remove(s.gameId, s)) {
+                s.detach();
+                evicted++;
+            }
+        }
+        if (evicted > 0) LOG.info("evicted {} idle game sessions, {} left", evicted, sessions.size());
+        return evicted;
+    }
+}
@@ -0,0 +1,99 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.util.ConfigLoader;
+import edu.jhu.clueless.util.LoggerUtil;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Front tier of a split deployment: this process keeps the client connections (TCP, WS,
+ * framing, outbound queues) and holds no games. Every command except PING/PONG goes to an
+ * {@link EngineServer} process over a Unix domain socket, and what the engine sends back,
+ * replies and broadcasts alike, is delivered to the client from here. With several engines
+ * each game is pinned to one by a {@link HashRing}, so any number of gateways agree on where
+ * a game lives.
+ */
+public final class Gateway implements MessageRouter.Remote, AutoCloseable {
+    private static final LoggerUtil LOG = LoggerUtil.get("GATEWAY");
+
+    /** An engine process: its id on the ring and the socket file it listens on. */
+    public record Engine(String id, Path socket) {
+        /** {@code id=/path/to/socket} */
+        public static Engine parse(String spec) {
+            String s = spec.trim();
+            int eq = s.indexOf('=');
+            if (eq <= 0 || eq == s.length() - 1) throw new IllegalArgumentException("Bad engine '" + s + "', expected id=/path/to/socket");
+            return new Engine(s.substring(0, eq).trim(), Path.of(s.substring(eq + 1).trim()));
+        }
+    }
+
+    private final MessageRouter router;
+    private final HashRing ring;
+    private final Forwarder forwarder;
+
+    public Gateway(String id, List<Engine> engines, MessageRouter router) {
+        this.router = router;
+        this.forwarder = new Forwarder(id, ConfigLoader.getLong("clueless.gateway.retryMs", 1000), "gateway");
+        List<String> ids = new ArrayList<>();
+        for (Engine e : engines) {
+            if (ids.contains(e.id())) throw new IllegalArgumentException("Duplicate engine " + e.id());
+            ids.add(e.id());
+            forwarder.addTarget(e.id(), () -> connect(e.socket()));
+        }
+        this.ring = new HashRing(ids, ConfigLoader.getInt("clueless.cluster.vnodes", 128));
+    }
+
+    /**
+     * A gateway for the engines in {@code clueless.gateway.engines} ("e1=/run/e1.sock,...");
+     * {@code clueless.gateway.id} names it in the engines' logs.
+     */
+    public static Gateway fromConfig(MessageRouter router) {
+        List<Engine> engines = new ArrayList<>();
+        String spec = ConfigLoader.getString("clueless.gateway.engines", "");
+        for (String e : spec.split(",")) if (!e.isBlank()) engines.add(Engine.parse(e));
+        if (engines.isEmpty()) throw new IllegalArgumentException("clueless.gateway.engines lists no engines");
+        String id = ConfigLoader.getString("clueless.gateway.id", "gateway-" + ProcessHandle.current().pid());
+        return new Gateway(id, engines, router);
+    }
+
+    /** From here on {@code router} sends every game to the engines. */
+    public void start() {
+        forwarder.start();
+        router.setRemote(this);
+        LOG.info("Gateway forwarding to engines {}", forwarder.targetIds());
+    }
+
+    public String engineFor(String gameId) { return ring.ownerOf(gameId); }
+
+    @Override
+    public boolean isLocal(String gameId) { return false; }
+
+    @Override
+    public void forward(ClientConnection from, Command cmd) {
+        forwarder.forward(ring.ownerOf(cmd.gameId()), from, cmd);
+    }
+
+    @Override
+    public void close() {
+        router.setRemote(null);
+        forwarder.stop();
+    }
+
+    private static Forwarder.Link connect(Path socket) throws IOException {
+        SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            ch.connect(UnixDomainSocketAddress.of(socket));
+            return Forwarder.Link.of(ch);
+        } catch (IOException e) {
+            Forwarder.closeQuietly(ch);
+            throw e;
+        }
+    }
+}
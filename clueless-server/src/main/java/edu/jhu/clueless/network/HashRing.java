@@ -0,0 +1,48 @@
+package edu.jhu.clueless.network;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Consistent-hash ring mapping keys (gameIds) to node ids. Each node is placed at
+ * {@code virtualNodes} points on a 64-bit ring and owns the arc up to each point, so keys
+ * spread evenly and adding or removing a node only moves the keys on that node's arcs.
+ * Every node builds the same ring from the same membership list, so they all agree on
+ * owners without talking to each other. Immutable once built.
+ */
+public final class HashRing {
+    private final TreeMap<Long, String> points = new TreeMap<>();
+    private final Set<String> nodes;
+
+    public HashRing(Collection<String> nodeIds, int virtualNodes) {
+        if (nodeIds.isEmpty()) throw new IllegalArgumentException("A ring needs at least one node");
+        int vnodes = Math.max(1, virtualNodes);
+        for (String node : nodeIds) {
+            for (int i = 0; i < vnodes; i++) points.put(hash(node + "#" + i), node);
+        }
+        this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodeIds));
+    }
+
+    /** The node owning {@code key}: the first point at or after its hash, wrapping around. */
+    public String ownerOf(String key) {
+        Map.Entry<Long, String> e = points.ceilingEntry(hash(key));
+        return e != null ? e.getValue() : points.firstEntry().getValue();
+    }
+
+    public Set<String> nodes() { return nodes; }
+
+    // FNV-1a over the UTF-8 bytes, then murmur3's finalizer so nearby ids land far apart
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,165 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.util.ConfigLoader;
+import edu.jhu.clueless.util.LoggerUtil;
+import edu.jhu.clueless.util.Metrics;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Liveness for every TCP and WebSocket connection, on one hashed timing wheel.
+ *
+ * Transports call {@link ClientConnection#touch()} on every read; that is a single volatile
+ * write, and the wheel is never touched on the request path. Each watched connection sits in
+ * exactly one wheel bucket, keyed by when it could next be idle. When its bucket comes round
+ * the wheel looks at the last activity: recent traffic just moves it to a later bucket;
+ * idleMs of silence sends {"type":"PING"} (clients answer PONG, though any message will
+ * do); and absentMs more with no reply closes it. Closing runs the connection's close
+ * listeners, which is how the router drops it from game subscriptions. The cost is O(1)
+ * per connection per idle period, however chatty the connection is.
+ *
+ * Settings: clueless.heartbeat.idleMs (default 30000, 0 disables), clueless.heartbeat.absentMs
+ * (default 15000), clueless.heartbeat.tickMs (default 1000).
+ */
+public final class Heartbeat {
+    private static final LoggerUtil LOG = LoggerUtil.get("HEARTBEAT");
+    private static final LongAdder PINGS = Metrics.counter("heartbeat.pings");
+    private static final LongAdder REAPED = Metrics.counter("heartbeat.reaped");
+    private static final OutboundMessage PING = new OutboundMessage("{\"type\":\"PING\"}");
+    private static final int WHEEL_SLOTS = 512; // power of two; longer delays just go round again
+
+    public record Config(long idleMs, long absentMs, long tickMs) {
+        public static Config fromConfig() {
+            return new Config(ConfigLoader.getLong("clueless.heartbeat.idleMs", 30_000),
+                    ConfigLoader.getLong("clueless.heartbeat.absentMs", 15_000),
+                    ConfigLoader.getLong("clueless.heartbeat.tickMs", 1_000));
+        }
+
+        public boolean enabled() { return idleMs > 0; }
+    }
+
+    private static volatile Heartbeat shared;
+
+    /** The process-wide wheel, started on first use; null when heartbeats are disabled. */
+    public static Heartbeat shared() {
+        Heartbeat h = shared;
+        if (h == null) {
+            synchronized (Heartbeat.class) {
+                h = shared;
+                if (h == null) {
+                    Config c = Config.fromConfig();
+                    if (!c.enabled()) return null;
+                    h = new Heartbeat(c);
+                    h.start();
+                    Metrics.gauge("heartbeat.watched", h::watched);
+                    shared = h;
+                }
+            }
+        }
+        return h;
+    }
+
+    /** Puts a new connection under the shared wheel (no-op when disabled). */
+    public static void watch(ClientConnection c) {
+        Heartbeat h = shared();
+        if (h != null) h.register(c);
+    }
+
+    private final long idleNanos, absentNanos, tickNanos;
+    private final long tickMs;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<ClientConnection>[] wheel = new ArrayDeque[WHEEL_SLOTS];
+    private final Queue<ClientConnection> incoming = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService timer;
+    private long tick; // wheel thread only
+    private volatile int watched;
+
+    public Heartbeat(Config config) {
+        this.tickMs = Math.max(1, config.tickMs());
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(config.idleMs());
+        this.absentNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(tickMs, config.absentMs()));
+        for (int i = 0; i < WHEEL_SLOTS; i++) wheel[i] = new ArrayDeque<>();
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "heartbeat-wheel");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() {
+        timer.scheduleAtFixedRate(this::advance, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        timer.shutdownNow();
+    }
+
+    public void register(ClientConnection c) {
+        incoming.add(c);
+    }
+
+    /** Connections currently on the wheel. */
+    public int watched() { return watched; }
+
+    private void advance() {
+        try {
+            long now = System.nanoTime();
+            int count = watched;
+            ClientConnection c;
+            while ((c = incoming.poll()) != null) {
+                c.wheelDeadlineNanos = c.lastActivityNanos() + idleNanos;
+                c.pingedAtNanos = 0;
+                place(c, now);
+                count++;
+            }
+
+            tick++;
+            ArrayDeque<ClientConnection> bucket = wheel[(int) (tick & (WHEEL_SLOTS - 1))];
+            for (int n = bucket.size(); n > 0; n--) {
+                c = bucket.poll();
+                if (!c.isOpen()) { count--; continue; } // closed elsewhere; just forget it
+                if (c.wheelDeadlineNanos - now > tickNanos / 2) { place(c, now); continue; } // a later lap
+                if (!check(c, now)) count--;
+            }
+            watched = count;
+        } catch (RuntimeException e) {
+            LOG.error("wheel tick failed", e);
+        }
+    }
+
+    // false if the connection was reaped
+    private boolean check(ClientConnection c, long now) {
+        long last = c.lastActivityNanos();
+        if (c.pingedAtNanos != 0 && last - c.pingedAtNanos <= 0) {
+            // pinged and nothing since: this is the absent deadline
+            REAPED.increment();
+            LOG.info("{} silent for {} ms after PING, closing", c.getId(), TimeUnit.NANOSECONDS.toMillis(now - c.pingedAtNanos));
+            c.close();
+            return false;
+        }
+        c.pingedAtNanos = 0;
+        if (now - last < idleNanos) {
+            c.wheelDeadlineNanos = last + idleNanos;
+        } else {
+            c.pingedAtNanos = now;
+            c.wheelDeadlineNanos = now + absentNanos;
+            c.send(PING);
+            PINGS.increment();
+        }
+        place(c, now);
+        return true;
+    }
+
+    private void place(ClientConnection c, long now) {
+        long ticks = Math.max(1, (c.wheelDeadlineNanos - now + tickNanos - 1) / tickNanos);
+        // past one lap it lands early and gets re-placed then
+        wheel[(int) ((tick + Math.min(ticks, WHEEL_SLOTS - 1)) & (WHEEL_SLOTS - 1))].add(c);
+    }
+}
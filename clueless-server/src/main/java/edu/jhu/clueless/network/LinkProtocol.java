@@ -0,0 +1,69 @@
+package edu.jhu.clueless.network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Framing for links between server processes: cluster peers ({@link Cluster}), gateways
+ * talking to engines ({@link Gateway}) and a primary shipping to its standby
+ * ({@link Replicator}). Many clients share one link; each frame is
+ * <pre>
+ *   op (1 byte) | client (8 bytes) | body length (4 bytes) | body (UTF-8)
+ * </pre>
+ * where {@code client} is the number the sending side gave the connection a request came
+ * from (or a reply is for). Ops:
+ * <pre>
+ *   HELLO   body = sender's node id; first frame on a link, client 0
+ *   FORWARD body = the client's request, as written by CommandEncoder
+ *   CLOSED  that client disconnected; empty body
+ *   REPLY   body = one message for the client, exactly as it would be sent to it
+ *   SUBSCRIBED body = a gameId. Receiver to sender: the client now gets that game's
+ *           broadcasts. Sender to receiver, after a reconnect: subscribe it again.
+ * </pre>
+ * On a replication link the long is a sequence number instead:
+ * <pre>
+ *   EVENT   body = a command the primary applied, as written by CommandEncoder
+ *   DEAL    body = deal seed, a space, then the command (one that dealt cards)
+ *   JOINED  body = session token, a space, then the command (one that issued the token)
+ *   ACK     standby to primary: everything up to this sequence number is applied
+ * </pre>
+ */
+final class LinkProtocol {
+    static final byte HELLO = 'H';
+    static final byte FORWARD = 'F';
+    static final byte CLOSED = 'C';
+    static final byte REPLY = 'R';
+    static final byte SUBSCRIBED = 'S';
+    static final byte EVENT = 'E';
+    static final byte DEAL = 'D';
+    static final byte JOINED = 'J';
+    static final byte ACK = 'A';
+
+    static final int MAX_BODY_BYTES = 16 << 20;
+
+    record Frame(byte op, long client, String body) { }
+
+    private LinkProtocol() { }
+
+    static void write(DataOutputStream out, byte op, long client, String body) throws IOException {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(op);
+        out.writeLong(client);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /** The next frame, or null once the link is closed cleanly between frames. */
+    static Frame read(DataInputStream in) throws IOException {
+        int op = in.read();
+        if (op < 0) return null;
+        long client = in.readLong();
+        int len = in.readInt();
+        if (len < 0 || len > MAX_BODY_BYTES) throw new IOException("bad frame length " + len);
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new Frame((byte) op, client, new String(b, StandardCharsets.UTF_8));
+    }
+}
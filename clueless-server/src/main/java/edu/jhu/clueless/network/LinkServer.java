@@ -0,0 +1,130 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.util.LoggerUtil;
+import edu.jhu.clueless.util.Metrics;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The receiving half of inter-process links (see {@link Forwarder}): applies forwarded
+ * requests through the local router. Each client of the sending process becomes a
+ * {@link RemoteClient}, an ordinary ClientConnection whose transport is the link back, so
+ * it subscribes to games, gets deltas and is rate limited like a local one. Its outbound
+ * queue batches replies, and every RemoteClient on a link shares the link's one writer.
+ *
+ * A RemoteClient only lives as long as its link. Each game it subscribes to is reported back
+ * to the sending process, which replays those subscriptions on a new link after a reconnect,
+ * so a client that just keeps playing still gets its games' broadcasts.
+ */
+final class LinkServer {
+    private static final LoggerUtil LOG = LoggerUtil.get("LINK");
+    private static final LongAdder RECEIVED = Metrics.counter("link.received");
+
+    private LinkServer() { }
+
+    /** Serves one link until it closes; all its RemoteClients are closed on the way out. */
+    static void serve(Forwarder.Link link, MessageRouter router) {
+        Map<Long, RemoteClient> remotes = new HashMap<>(); // this thread only
+        Writer writer = new Writer(link);
+        String from = "?";
+        try {
+            LinkProtocol.Frame f;
+            while ((f = LinkProtocol.read(link.in())) != null) {
+                switch (f.op()) {
+                    case LinkProtocol.HELLO -> from = f.body();
+                    case LinkProtocol.FORWARD -> {
+                        RemoteClient rc = remote(remotes, writer, from, f.client());
+                        Command cmd;
+                        try {
+                            cmd = CommandDecoder.decode(f.body());
+                        } catch (IllegalArgumentException e) {
+                            rc.send(EventWriter.error(e.getMessage()));
+                            continue;
+                        }
+                        RECEIVED.increment();
+                        router.route(rc, cmd);
+                    }
+                    case LinkProtocol.SUBSCRIBED -> router.resubscribe(remote(remotes, writer, from, f.client()), f.body());
+                    case LinkProtocol.CLOSED -> {
+                        RemoteClient rc = remotes.remove(f.client());
+                        if (rc != null) rc.close();
+                    }
+                    default -> LOG.warn("Unexpected frame {} from {}", (char) f.op(), from);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Link from {} ended: {}", from, e.getMessage());
+        } finally {
+            for (RemoteClient rc : remotes.values()) rc.close();
+            link.close();
+        }
+    }
+
+    private static RemoteClient remote(Map<Long, RemoteClient> remotes, Writer writer, String from, long client) {
+        RemoteClient rc = remotes.get(client);
+        if (rc == null || !rc.isOpen()) remotes.put(client, rc = new RemoteClient(writer, from, client));
+        return rc;
+    }
+
+    /** The write half of a link, shared by every RemoteClient on it. */
+    private static final class Writer {
+        final Forwarder.Link link;
+        final ReentrantLock lock = new ReentrantLock();
+
+        Writer(Forwarder.Link link) { this.link = link; }
+    }
+
+    /** A client of another process, as seen by this process's router. */
+    static final class RemoteClient extends ClientConnection {
+        private final Writer writer;
+        private final long client;
+
+        RemoteClient(Writer writer, String from, long client) {
+            super(from + ":" + client, OutboundQueue.Config.fromConfig());
+            this.writer = writer;
+            this.client = client;
+        }
+
+        /** Tells the sending process; called on the game's loop. */
+        void subscribed(String gameId) {
+            writer.lock.lock();
+            try {
+                LinkProtocol.write(writer.link.out(), LinkProtocol.SUBSCRIBED, client, gameId);
+                writer.link.out().flush();
+            } catch (IOException e) {
+                // the link is going down; serve() closes this client
+            } finally {
+                writer.lock.unlock();
+            }
+        }
+
+        @Override
+        protected void writeToTransport(OutboundMessage m) throws IOException {
+            writer.lock.lock();
+            try {
+                LinkProtocol.write(writer.link.out(), LinkProtocol.REPLY, client, m.getText());
+            } finally {
+                writer.lock.unlock();
+            }
+        }
+
+        @Override
+        protected void flushTransport() throws IOException {
+            writer.lock.lock();
+            try {
+                writer.link.out().flush();
+            } finally {
+                writer.lock.unlock();
+            }
+        }
+
+        // the link outlives any one client on it
+        @Override protected void closeTransport() { }
+    }
+}
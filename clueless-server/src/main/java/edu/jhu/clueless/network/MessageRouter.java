@@ -1,417 +1,709 @@
 package edu.jhu.clueless.network;
 
 import edu.jhu.clueless.engine.*;
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandDecoder;
 import edu.jhu.clueless.network.dto.ClientMessage;
-import edu.jhu.clueless.util.JsonUtil;
+import edu.jhu.clueless.util.Histogram;
+import edu.jhu.clueless.util.LoggerUtil;
+import edu.jhu.clueless.util.Metrics;
 
-import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dispatches ClientMessages to the per-game engine/lobby and writes replies and broadcasts.
+ * Each game's lobby, engine, membership and subscribers are one {@link GameSession},
+ * found with a single registry lookup.
+ *
+ * route() is called concurrently from every transport thread, including virtual threads
+ * in ClueServer's VIRTUAL mode. Nothing here holds a monitor across blocking I/O: the
+ * registry is a ConcurrentHashMap whose computeIfAbsent callback only constructs objects, and
+ * ClientConnection.send only enqueues onto the connection's bounded outbound queue.
+ */
 public class MessageRouter {
-    private final Map<String, GameEngine> games = new ConcurrentHashMap<>();
-    private final Map<String, Set<String>> joined = new ConcurrentHashMap<>();
-    private final Map<String, Set<PrintWriter>> subscribers = new ConcurrentHashMap<>(); // gameId -> client writers
-    private final Map<String, Lobby> lobbies = new ConcurrentHashMap<>();
+    private static final LoggerUtil LOG = LoggerUtil.get("ROUTER");
+    private final GameSessionRegistry sessions;
+
+    private static final LongAdder DELTAS_SENT = Metrics.counter("state.deltasSent");
+    private static final LongAdder FULL_SNAPSHOTS_SENT = Metrics.counter("state.fullSnapshotsSent");
+    private static final LongAdder RESUMED = Metrics.counter("session.resumed");
+    private static final LongAdder RESUME_REPLAYED = Metrics.counter("session.replayedEvents");
+    private static final LongAdder RESUME_SNAPSHOTS = Metrics.counter("session.resumeSnapshots");
+
+    private final RateLimiter rateLimiter;
+    private volatile Remote remote; // null when every game is held here
+    private volatile Replicator replicator; // null unless this is a primary with a standby
+
+    public MessageRouter() {
+        this(RateLimiter.fromConfig());
+    }
+
+    public MessageRouter(RateLimiter rateLimiter) {
+        this(rateLimiter, GameLoops.shared());
+    }
+
+    public MessageRouter(RateLimiter rateLimiter, GameLoops loops) {
+        this.rateLimiter = rateLimiter;
+        this.sessions = new GameSessionRegistry(loops);
+    }
+
+    /** Publishes sessions.active and sessions.subscriptions for this router; once, for the process's own. */
+    public void registerGauges() {
+        Metrics.gauge("sessions.active", sessions::size);
+        Metrics.gauge("sessions.subscriptions", sessions::subscriptions);
+    }
+
+    /**
+     * Holds the games this process doesn't: a {@link Cluster} (other nodes' share of the ring)
+     * or a {@link Gateway} (every game lives in an engine process).
+     */
+    public interface Remote {
+        boolean isLocal(String gameId);
+        /** Hands {@code cmd} on; anything sent back is delivered to {@code from}. */
+        void forward(ClientConnection from, Command cmd);
+    }
+
+    /** Set when a Cluster or Gateway starts; null to hold every game here again. */
+    public void setRemote(Remote remote) { this.remote = remote; }
+
+    /** Set when a {@link Replicator} starts: every applied command is shipped to the standby. */
+    public void setReplicator(Replicator replicator) { this.replicator = replicator; }
+
+    /** Number of games this router currently holds a session for. */
+    public int activeGames() { return sessions.size(); }
+
+    /** Enqueue-to-start wait times of {@code gameId}'s commands, or null if there is no such game. */
+    public Histogram waitTimes(String gameId) {
+        GameSession s = sessions.get(gameId);
+        return s != null ? s.waits : null;
+    }
+
+    private void send(ClientConnection out, String json) {
+        out.send(json);
+        LOG.payload("OUT", json);
+    }
+
+    // an answer to the command being applied; kept in case the client retries it
+    private void reply(GameSession session, ClientConnection out, String json) {
+        send(out, json);
+        if (session != null) session.replies.record(json);
+    }
+
+    // Every broadcast carries the game's next event "seq" and goes into its EventLog for RESUME.
+    private void broadcast(GameSession session, String json, ClientConnection exclude) {
+        json = session.events.stamp(json);
+        OutboundMessage m = new OutboundMessage(json);
+        fanOut(session, m, exclude);
+        session.events.append(m);
+        LOG.payload("BROADCAST", json);
+    }
+    // For events whose last field is a full "state"/"lobby" snapshot: a slow subscriber that
+    // still has an older one queued for this game only needs the newest snapshot.
+    private void broadcastSnapshot(GameSession session, String json, String field, ClientConnection exclude) {
+        json = session.events.stamp(json);
+        OutboundMessage m = OutboundMessage.snapshot(json, field, field + ":" + session.gameId);
+        fanOut(session, m, exclude);
+        session.events.append(m);
+        LOG.payload("BROADCAST", json);
+    }
+    private void fanOut(GameSession session, OutboundMessage m, ClientConnection exclude) {
+        for (ClientConnection c : session.subscribers()) {
+            if (c == null || c == exclude) continue;
+            c.send(m);
+        }
+    }
+
+    private StateChange stateChange(GameSession session, GameEngine engine, boolean fullSnapshot) {
+        return new StateChange(session, engine.publishSnapshot().toMap(), fullSnapshot);
+    }
+
+    /**
+     * One published change of a game's state. Legacy clients get the message with the full
+     * "state" appended, exactly as before. Clients that opted into deltas get
+     * "version"/"baseVersion"/"delta" when they hold the previous version, or "version" plus a
+     * full "state" after a join, deal or gap. The tracker lock is held until close() so every
+     * queue sees this game's versions in order; each rendering is built at most once.
+     */
+    private final class StateChange implements AutoCloseable {
+        private final GameSession session;
+        private final String gameId;
+        private final Map<String, Object> snapshot;
+        private final StateDeltaTracker tracker;
+        private final StateDeltaTracker.Update update;
+        private String stateJson, deltaJson;
+
+        StateChange(GameSession session, Map<String, Object> snapshot, boolean fullSnapshot) {
+            this.session = session;
+            this.gameId = session.gameId;
+            this.snapshot = snapshot;
+            this.tracker = session.tracker;
+            tracker.lock().lock();
+            this.update = tracker.advance(snapshot, fullSnapshot);
+        }
+
+        /** {@code head} is the message without its closing brace. */
+        void reply(ClientConnection out, String head) {
+            Renderings r = new Renderings(head, false);
+            deliver(out, r);
+            // cached as the legacy message: a retry may come from a connection holding another version, or none
+            session.replies.record(r.legacy().getText());
+            if (LOG.isDebugEnabled()) LOG.payload("OUT v" + update.version, head);
+        }
+
+        void broadcast(String head, ClientConnection exclude) {
+            Renderings r = new Renderings(session.events.stamp(head), true);
+            for (ClientConnection c : session.subscribers()) {
+                if (c == null || c == exclude) continue;
+                deliver(c, r);
+            }
+            // replayed on RESUME as the legacy message: the resumed connection holds no version yet
+            session.events.append(r.legacy());
+            if (LOG.isDebugEnabled()) LOG.payload("BROADCAST v" + update.version, head);
+        }
+
+        private void deliver(ClientConnection c, Renderings r) {
+            if (!c.wantsDeltaUpdates()) {
+                c.send(r.legacy());
+                return;
+            }
+            boolean asDelta = update.delta != null && c.getStateVersion(gameId) == update.baseVersion;
+            // recorded before the send so anything reacting to the message sees the new version
+            c.setStateVersion(gameId, update.version);
+            OutboundMessage m = asDelta ? r.delta() : r.full();
+            c.send(m);
+            (asDelta ? DELTAS_SENT : FULL_SNAPSHOTS_SENT).increment();
+        }
+
+        private String stateJson() {
+            if (stateJson == null) stateJson = EventWriter.toJson(snapshot, false);
+            return stateJson;
+        }
+
+        private String deltaJson() {
+            if (deltaJson == null) deltaJson = EventWriter.toJson(update.delta, true);
+            return deltaJson;
+        }
+
+        @Override public void close() { tracker.lock().unlock(); }
+
+        private final class Renderings {
+            private final String head;
+            private final boolean conflatable;
+            private OutboundMessage legacy, full, delta;
+
+            Renderings(String head, boolean conflatable) {
+                this.head = head;
+                this.conflatable = conflatable;
+            }
+
+            OutboundMessage legacy() {
+                if (legacy == null) {
+                    String state = stateJson(); // before extend(): building it needs a writer of its own
+                    String json = EventWriter.extend(head).raw("state", state).end();
+                    legacy = conflatable ? OutboundMessage.snapshot(json, "state", "state:" + gameId) : new OutboundMessage(json);
+                }
+                return legacy;
+            }
+
+            // versioned messages are never conflated: a delta client needs every one of them
+            OutboundMessage full() {
+                if (full == null) {
+                    String state = stateJson();
+                    full = new OutboundMessage(EventWriter.extend(head).num("version", update.version).raw("state", state).end());
+                }
+                return full;
+            }
 
-    public MessageRouter() { }
+            OutboundMessage delta() {
+                if (delta == null) {
+                    String changes = deltaJson();
+                    delta = new OutboundMessage(EventWriter.extend(head).num("version", update.version)
+                            .num("baseVersion", update.baseVersion).raw("delta", changes).end());
+                }
+                return delta;
+            }
+        }
+    }
 
-    private GameEngine getOrCreateEngine(String gameId) {
-        String id = (gameId == null || gameId.isBlank()) ? "default" : gameId;
-        return games.computeIfAbsent(id, k -> new GameEngine(new GameState()));
+    /** Untyped entry point; the transports decode straight to {@link Command} instead. */
+    public void route(ClientConnection out, ClientMessage msg) {
+        Command cmd;
+        try {
+            cmd = CommandDecoder.fromMessage(msg);
+        } catch (IllegalArgumentException e) {
+            send(out, EventWriter.error(e.getMessage(), msg.getCorrelationId()));
+            return;
+        }
+        route(out, cmd);
     }
-    private Lobby getOrCreateLobby(String gameId) {
-        String id = (gameId == null || gameId.isBlank()) ? "default" : gameId;
-        return lobbies.computeIfAbsent(id, k -> new Lobby(id));
+
+    /**
+     * Hands {@code cmd} to its game's mailbox and returns; the calling I/O thread never touches
+     * engine or lobby state. PING/PONG belong to the connection, not a game, and are answered
+     * here. Commands for a game held by another process (see {@link Remote}) are forwarded there instead.
+     *
+     * A client needn't wait for one answer before sending the next request. Each game runs its
+     * commands in arrival order, but different games run independently, so answers to requests
+     * for several games can arrive in any order; every ACK and ERROR echoes the request's
+     * correlationId to pair them up.
+     */
+    public void route(ClientConnection out, Command cmd) {
+        // over-limit traffic is answered from a pre-encoded ERROR and never reaches the engine
+        if (!rateLimiter.admit(out, cmd)) return;
+        // any message may carry payload.deltas to opt in to (or out of) change sets
+        if (cmd.header().deltas() != null) out.setDeltaUpdates(cmd.header().deltas());
+        if (cmd instanceof Command.Ping || cmd instanceof Command.Pong) {
+            apply(out, cmd, null);
+            return;
+        }
+        Remote r = remote;
+        if (r != null && !r.isLocal(cmd.gameId())) {
+            r.forward(out, cmd);
+            return;
+        }
+        GameSession session;
+        try {
+            session = sessions.getOrCreate(cmd.gameId());
+        } catch (IllegalStateException full) {
+            send(out, EventWriter.error(full.getMessage(), cmd.header().correlationId()));
+            return;
+        }
+        if (!rateLimiter.admitToGame(out, cmd, session.rateBuckets)) return;
+        session.enqueue(() -> {
+            if (!applyOnce(out, cmd, session)) return; // a retry, answered from the reply cache
+            Long seed = session.takeDealSeed();
+            String token = session.takeToken();
+            Replicator rep = replicator;
+            if (rep != null && !(cmd instanceof Command.Resync || cmd instanceof Command.Resume)) rep.ship(cmd, seed, token);
+        });
     }
 
-    private void send(PrintWriter out, String json) {
-        out.println(json);
-        System.out.println("[ROUTER OUT] " + json);
+    /**
+     * A standby re-applying a command its primary shipped: no rate limit or forwarding, a
+     * deal uses the primary's seed and a join the session token the primary issued, so the
+     * game ends up exactly where the primary's did and its players can RESUME here.
+     * {@code out} collects what clients would have been sent.
+     */
+    void replay(ClientConnection out, Command cmd, Long dealSeed, String token) {
+        GameSession session = sessions.getOrCreate(cmd.gameId());
+        session.enqueue(() -> {
+            session.pinDealSeed(dealSeed);
+            session.pinToken(token);
+            applyOnce(out, cmd, session);
+            session.takeDealSeed();
+            session.takeToken();
+        });
     }
 
-    private void subscribe(String gameId, PrintWriter out) {
-        subscribers.computeIfAbsent(gameId, k -> Collections.newSetFromMap(new ConcurrentHashMap<>())).add(out);
+    /** Puts {@code c} back on {@code gameId}'s broadcasts, for a client whose link was re-established. */
+    void resubscribe(ClientConnection c, String gameId) {
+        GameSession session = sessions.get(gameId);
+        if (session != null) session.enqueue(() -> session.subscribe(c));
     }
-    private void broadcast(String gameId, String json, PrintWriter exclude) {
-        var set = subscribers.getOrDefault(gameId, Collections.emptySet());
-        for (PrintWriter w : set) {
-            if (w == null || w == exclude) continue;
-            try { w.println(json); } catch (Exception ignored) {}
+
+    /**
+     * Applies {@code cmd} unless the same player already sent a command with its correlationId,
+     * in which case the answers that one got are sent again and the engine is left alone.
+     * Returns false for such a retry. RESYNC and RESUME always run: they answer with current state.
+     */
+    private boolean applyOnce(ClientConnection out, Command cmd, GameSession session) {
+        String key = cmd instanceof Command.Resync || cmd instanceof Command.Resume
+                ? null : ReplyCache.key(cmd.playerId(), cmd.header().correlationId());
+        if (key == null) {
+            apply(out, cmd, session);
+            return true;
         }
-        System.out.println("[BROADCAST] " + json);
+        List<String> earlier = session.replies.get(key);
+        if (earlier != null) {
+            for (String json : earlier) send(out, json);
+            return false;
+        }
+        session.replies.begin(key);
+        try {
+            apply(out, cmd, session);
+        } finally {
+            session.replies.commit();
+        }
+        return true;
     }
 
-    public void route(String clientId, ClientMessage msg, PrintWriter out) {
+    // runs on the game's mailbox, one command at a time per game
+    private void apply(ClientConnection out, Command cmd, GameSession session) {
+        String clientId = out.getId();
+        String cid = cmd.header().correlationId(); // echoed on every ACK and ERROR this command gets
         try {
-            if (msg == null || msg.getType() == null) { send(out, "{\"type\":\"ERROR\",\"message\":\"Invalid or missing type\"}"); return; }
-            switch (msg.getType()) {
-                case JOIN_LOBBY: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId","name"));
-                    Lobby lobby = getOrCreateLobby(gameId);
-                    lobby.join(playerId);
-                    subscribe(gameId, out);
-
-                    String lobbyJson = JsonUtil.toJson(buildLobbySnapshot(lobby));
-                    send(out, "{\"type\":\"ACK\",\"for\":\"JOIN_LOBBY\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"lobby\":" + lobbyJson + "}");
-                    broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"LOBBY_JOIN\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"lobby\":" + lobbyJson + "}", out);
+            switch (cmd) {
+                case Command.JoinLobby command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    Lobby lobby = session.lobby;
+                    if (!lobby.join(playerId)) { reply(session, out, EventWriter.error("Lobby full", cid)); break; }
+                    session.subscribe(out);
+
+                    String lobbyJson = session.lobbyJson(() -> EventWriter.toJson(buildLobbySnapshot(lobby), false));
+                    reply(session, out, EventWriter.ack(MessageType.JOIN_LOBBY, cid).str("gameId", gameId).str("playerId", playerId)
+                            .str("sessionToken", session.sessionToken(playerId)).num("seq", session.events.lastSeq()).raw("lobby", lobbyJson).end());
+                    broadcastSnapshot(session, EventWriter.event("LOBBY_JOIN").str("gameId", gameId).str("playerId", playerId).raw("lobby", lobbyJson).end(), "lobby", out);
                     break;
                 }
-                case SELECT_CHARACTER: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId","name"));
-                    String character = firstString(msg.getPayload(), "character");
-                    Lobby lobby = getOrCreateLobby(gameId);
-                    if (!lobby.getPlayers().contains(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Join lobby first\"}"); break; }
-                    if (!lobby.selectCharacter(playerId, character)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Character unavailable\"}"); break; }
-
-                    String lobbyJson = JsonUtil.toJson(buildLobbySnapshot(lobby));
-                    send(out, "{\"type\":\"ACK\",\"for\":\"SELECT_CHARACTER\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"lobby\":" + lobbyJson + "}");
-                    broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"CHARACTER_SELECTED\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"lobby\":" + lobbyJson + "}", out);
+                case Command.SelectCharacter command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    String character = command.character();
+                    Lobby lobby = session.lobby;
+                    if (!lobby.hasPlayer(playerId)) { reply(session, out, EventWriter.error("Join lobby first", cid)); break; }
+                    if (!lobby.selectCharacter(playerId, character)) { reply(session, out, EventWriter.error("Character unavailable", cid)); break; }
+
+                    String lobbyJson = session.lobbyJson(() -> EventWriter.toJson(buildLobbySnapshot(lobby), false));
+                    reply(session, out, EventWriter.ack(MessageType.SELECT_CHARACTER, cid).str("gameId", gameId).str("playerId", playerId).raw("lobby", lobbyJson).end());
+                    broadcastSnapshot(session, EventWriter.event("CHARACTER_SELECTED").str("gameId", gameId).str("playerId", playerId).raw("lobby", lobbyJson).end(), "lobby", out);
                     break;
                 }
-                case UNSELECT_CHARACTER: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId","name"));
-                    Lobby lobby = getOrCreateLobby(gameId);
-                    if (!lobby.getPlayers().contains(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Join lobby first\"}"); break; }
+                case Command.UnselectCharacter command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    Lobby lobby = session.lobby;
+                    if (!lobby.hasPlayer(playerId)) { reply(session, out, EventWriter.error("Join lobby first", cid)); break; }
                     boolean ok = lobby.unselectCharacter(playerId);
-                    if (!ok) { send(out, "{\"type\":\"ERROR\",\"message\":\"No selection to remove\"}"); break; }
-                    String lobbyJson = JsonUtil.toJson(buildLobbySnapshot(lobby));
-                    send(out, "{\"type\":\"ACK\",\"for\":\"UNSELECT_CHARACTER\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"lobby\":" + lobbyJson + "}");
-                    broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"CHARACTER_UNSELECTED\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"lobby\":" + lobbyJson + "}", out);
+                    if (!ok) { reply(session, out, EventWriter.error("No selection to remove", cid)); break; }
+                    String lobbyJson = session.lobbyJson(() -> EventWriter.toJson(buildLobbySnapshot(lobby), false));
+                    reply(session, out, EventWriter.ack(MessageType.UNSELECT_CHARACTER, cid).str("gameId", gameId).str("playerId", playerId).raw("lobby", lobbyJson).end());
+                    broadcastSnapshot(session, EventWriter.event("CHARACTER_UNSELECTED").str("gameId", gameId).str("playerId", playerId).raw("lobby", lobbyJson).end(), "lobby", out);
                     break;
                 }
-                case SET_READY: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId","name"));
-                    boolean ready = Boolean.parseBoolean(String.valueOf(msg.getPayload().get("ready")));
-                    Lobby lobby = getOrCreateLobby(gameId);
-                    if (!lobby.getPlayers().contains(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Join lobby first\"}"); break; }
+                case Command.SetReady command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    boolean ready = command.ready();
+                    Lobby lobby = session.lobby;
+                    if (!lobby.hasPlayer(playerId)) { reply(session, out, EventWriter.error("Join lobby first", cid)); break; }
                     lobby.setReady(playerId, ready);
-                    String lobbyJson = JsonUtil.toJson(buildLobbySnapshot(lobby));
-                    send(out, "{\"type\":\"ACK\",\"for\":\"SET_READY\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"lobby\":" + lobbyJson + "}");
-                    broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"READY_CHANGED\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"lobby\":" + lobbyJson + "}", out);
+                    String lobbyJson = session.lobbyJson(() -> EventWriter.toJson(buildLobbySnapshot(lobby), false));
+                    reply(session, out, EventWriter.ack(MessageType.SET_READY, cid).str("gameId", gameId).str("playerId", playerId).raw("lobby", lobbyJson).end());
+                    broadcastSnapshot(session, EventWriter.event("READY_CHANGED").str("gameId", gameId).str("playerId", playerId).raw("lobby", lobbyJson).end(), "lobby", out);
                     break;
                 }
-                case START_GAME: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId","name"));
-                    Lobby lobby = getOrCreateLobby(gameId);
+                case Command.StartGame command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    Lobby lobby = session.lobby;
                     // checks: at least 2 players, all have selected characters, all ready
-                    if (lobby.getPlayers().size() < 2) { send(out, "{\"type\":\"ERROR\",\"message\":\"Need at least 2 players\"}"); break; }
-                    if (!lobby.allSelectedCharacters()) { send(out, "{\"type\":\"ERROR\",\"message\":\"All players must select a character\"}"); break; }
-                    if (!lobby.allReady()) { send(out, "{\"type\":\"ERROR\",\"message\":\"All players must be ready\"}"); break; }
+                    if (lobby.getPlayerCount() < 2) { reply(session, out, EventWriter.error("Need at least 2 players", cid)); break; }
+                    if (!lobby.allSelectedCharacters()) { reply(session, out, EventWriter.error("All players must select a character", cid)); break; }
+                    if (!lobby.allReady()) { reply(session, out, EventWriter.error("All players must be ready", cid)); break; }
                     // Recreate engine and join players with selected characters
-                    games.remove(gameId);
-                    GameEngine engine = getOrCreateEngine(gameId);
+                    GameEngine engine = session.resetEngine();
                     for (String pn : lobby.getPlayers()) {
                         String ch = lobby.getSelections().getOrDefault(pn, pn);
                         engine.joinPlayer(pn, ch);
-                        joined.computeIfAbsent(gameId, k -> ConcurrentHashMap.newKeySet()).add(pn);
+                        session.join(pn);
                     }
-                    engine.startGame();
+                    engine.startGame(session.dealSeed());
                     lobby.setStarted(true);
 
-                    String stateJson = JsonUtil.toJson(buildSnapshot(engine.getGameState(), engine.getBoard()));
-                    send(out, "{\"type\":\"ACK\",\"for\":\"START_GAME\",\"gameId\":\"" + esc(gameId) + "\",\"state\":" + stateJson + "}");
-                    broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"START_GAME\",\"gameId\":\"" + esc(gameId) + "\",\"state\":" + stateJson + "}", out);
+                    try (StateChange sc = stateChange(session, engine, true)) {
+                        sc.reply(out, EventWriter.ack(MessageType.START_GAME, cid).str("gameId", gameId).head());
+                        sc.broadcast(EventWriter.event("START_GAME").str("gameId", gameId).head(), out);
+                    }
+                    break;
+                }
+                case Command.Pong command: {
+                    // answer to a heartbeat PING; the transport already recorded the activity
                     break;
                 }
-                case PING: {
-                    send(out, "{\"type\":\"PONG\",\"payload\":\"" + esc(clientId) + "\"}");
+                case Command.Ping command: {
+                    reply(session, out, EventWriter.message("PONG").str("payload", clientId).end());
                     break;
                 }
-                case JOIN: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId","name"));
-                    GameEngine engine = getOrCreateEngine(gameId);
-                    Player p = engine.joinPlayer(playerId, firstString(msg.getPayload(), "character","characterName"));
-                    joined.computeIfAbsent(gameId, k -> ConcurrentHashMap.newKeySet()).add(playerId);
-                    subscribe(gameId, out);
-
-                    String stateJson = JsonUtil.toJson(buildSnapshot(engine.getGameState(), engine.getBoard()));
-                    send(out, "{\"type\":\"ACK\",\"for\":\"JOIN\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(p.getName()) + "\",\"state\":" + stateJson + "}");
-                    broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"JOIN\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"state\":" + stateJson + "}", out);
+                case Command.Join command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    GameEngine engine = session.engine();
+                    Player p = engine.joinPlayer(playerId, command.character());
+                    session.join(playerId);
+                    session.subscribe(out);
+
+                    try (StateChange sc = stateChange(session, engine, true)) {
+                        sc.reply(out, EventWriter.ack(MessageType.JOIN, cid).str("gameId", gameId).str("playerId", p.getName())
+                                .str("sessionToken", session.sessionToken(playerId)).num("seq", session.events.lastSeq()).head());
+                        sc.broadcast(EventWriter.event("JOIN").str("gameId", gameId).str("playerId", playerId).head(), out);
+                    }
                     break;
                 }
-                case MOVE: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId"));
-                    String room = firstString(msg.getPayload(), "to","room");
-                    if (playerId == null || room == null) { send(out, "{\"type\":\"ERROR\",\"message\":\"Missing playerId or room\"}"); break; }
-                    if (!joined.getOrDefault(gameId, ConcurrentHashMap.newKeySet()).contains(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Join first\"}"); break; }
-
-                    GameEngine engine = getOrCreateEngine(gameId);
+                case Command.Move command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    String room = command.room();
+                    if (playerId == null || room == null) { reply(session, out, EventWriter.error("Missing playerId or room", cid)); break; }
+                    if (!session.isJoined(playerId)) { reply(session, out, EventWriter.error("Join first", cid)); break; }
+
+                    GameEngine engine = session.engine();
                     var gs = engine.getGameState();
-                    if (gs.isGameOver()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Game over\"}"); break; }
+                    if (gs.isGameOver()) { reply(session, out, EventWriter.error("Game over", cid)); break; }
 
                     Player p = gs.getPlayer(playerId);
                     Room target = gs.getRoom(room);
-                    if (p == null || target == null) { send(out, "{\"type\":\"ERROR\",\"message\":\"Unknown player or room\"}"); break; }
-                    if (!p.isActive()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Player eliminated\"}"); break; }
-                    if (!engine.isPlayersTurn(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Not your turn\"}"); break; }
+                    if (p == null || target == null) { reply(session, out, EventWriter.error("Unknown player or room", cid)); break; }
+                    if (!p.isActive()) { reply(session, out, EventWriter.error("Player eliminated", cid)); break; }
+                    if (!engine.isPlayersTurn(playerId)) { reply(session, out, EventWriter.error("Not your turn", cid)); break; }
                     // If in a room entered by self, enforce moving to a hallway or different room (adjacent move)
                     if (p.getCurrentRoom() != null && p.getRoomEntryType() == Player.RoomEntryType.SELF && p.hasMovedThisTurn()) {
-                        send(out, "{\"type\":\"ERROR\",\"message\":\"Must exit room before other actions\"}");
+                        reply(session, out, EventWriter.error("Must exit room before other actions", cid));
                         break;
                     }
-                    if (p.hasMovedThisTurn() && p.getCurrentRoom() != null) { send(out, "{\"type\":\"ERROR\",\"message\":\"Already moved this turn\"}"); break; }
-                    if (p.getCurrentRoom() != null && !engine.getBoard().areAdjacent(p.getCurrentRoom(), target)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Not adjacent\"}"); break; }
+                    if (p.hasMovedThisTurn() && p.getCurrentRoom() != null) { reply(session, out, EventWriter.error("Already moved this turn", cid)); break; }
+                    if (p.getCurrentRoom() != null && !engine.getBoard().areAdjacent(p.getCurrentRoom(), target)) { reply(session, out, EventWriter.error("Not adjacent", cid)); break; }
 
                     boolean ok = engine.handleMove(playerId, room);
                     if (ok) {
-                        String stateJson = JsonUtil.toJson(buildSnapshot(engine.getGameState(), engine.getBoard()));
-                        String ack = "{\"type\":\"ACK\",\"for\":\"MOVE\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"room\":\"" + esc(room) + "\",\"state\":" + stateJson + "}";
-                        send(out, ack);
-                        broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"MOVE\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"room\":\"" + esc(room) + "\",\"state\":" + stateJson + "}", out);
+                        try (StateChange sc = stateChange(session, engine, false)) {
+                            sc.reply(out, EventWriter.ack(MessageType.MOVE, cid).str("gameId", gameId).str("playerId", playerId).str("room", room).head());
+                            sc.broadcast(EventWriter.event("MOVE").str("gameId", gameId).str("playerId", playerId).str("room", room).head(), out);
+                        }
                     } else {
-                        send(out, "{\"type\":\"ERROR\",\"message\":\"Illegal move\"}");
+                        reply(session, out, EventWriter.error("Illegal move", cid));
                     }
                     break;
                 }
-                case MOVE_TO_HALLWAY: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId"));
-                    String hallwayId = firstString(msg.getPayload(), "hallway","id","hallwayId");
-                    if (playerId == null || hallwayId == null) { send(out, "{\"type\":\"ERROR\",\"message\":\"Missing playerId or hallwayId\"}"); break; }
-                    if (!joined.getOrDefault(gameId, ConcurrentHashMap.newKeySet()).contains(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Join first\"}"); break; }
-
-                    GameEngine engine = getOrCreateEngine(gameId);
+                case Command.MoveToHallway command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    String hallwayId = command.hallway();
+                    if (playerId == null || hallwayId == null) { reply(session, out, EventWriter.error("Missing playerId or hallwayId", cid)); break; }
+                    if (!session.isJoined(playerId)) { reply(session, out, EventWriter.error("Join first", cid)); break; }
+
+                    GameEngine engine = session.engine();
                     var gs = engine.getGameState();
-                    if (gs.isGameOver()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Game over\"}"); break; }
+                    if (gs.isGameOver()) { reply(session, out, EventWriter.error("Game over", cid)); break; }
 
                     Player p = gs.getPlayer(playerId);
-                    if (p == null) { send(out, "{\"type\":\"ERROR\",\"message\":\"Unknown player\"}"); break; }
-                    if (!p.isActive()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Player eliminated\"}"); break; }
-                    if (!engine.isPlayersTurn(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Not your turn\"}"); break; }
-                    if (p.hasMovedThisTurn() && p.getCurrentRoom() != null) { send(out, "{\"type\":\"ERROR\",\"message\":\"Already moved this turn\"}"); break; }
+                    if (p == null) { reply(session, out, EventWriter.error("Unknown player", cid)); break; }
+                    if (!p.isActive()) { reply(session, out, EventWriter.error("Player eliminated", cid)); break; }
+                    if (!engine.isPlayersTurn(playerId)) { reply(session, out, EventWriter.error("Not your turn", cid)); break; }
+                    if (p.hasMovedThisTurn() && p.getCurrentRoom() != null) { reply(session, out, EventWriter.error("Already moved this turn", cid)); break; }
 
                     boolean ok = engine.handleMoveToHallway(playerId, hallwayId);
                     if (ok) {
-                        String stateJson = JsonUtil.toJson(buildSnapshot(engine.getGameState(), engine.getBoard()));
-                        String ack = "{\"type\":\"ACK\",\"for\":\"MOVE_TO_HALLWAY\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"hallway\":\"" + esc(hallwayId) + "\",\"state\":" + stateJson + "}";
-                        send(out, ack);
-                        broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"MOVE_TO_HALLWAY\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"hallway\":\"" + esc(hallwayId) + "\",\"state\":" + stateJson + "}", out);
+                        try (StateChange sc = stateChange(session, engine, false)) {
+                            sc.reply(out, EventWriter.ack(MessageType.MOVE_TO_HALLWAY, cid).str("gameId", gameId).str("playerId", playerId).str("hallway", hallwayId).head());
+                            sc.broadcast(EventWriter.event("MOVE_TO_HALLWAY").str("gameId", gameId).str("playerId", playerId).str("hallway", hallwayId).head(), out);
+                        }
                     } else {
-                        send(out, "{\"type\":\"ERROR\",\"message\":\"Illegal hallway move\"}");
+                        reply(session, out, EventWriter.error("Illegal hallway move", cid));
                     }
                     break;
                 }
-                case MOVE_FROM_HALLWAY: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId"));
-                    String room = firstString(msg.getPayload(), "to","room");
-                    if (playerId == null || room == null) { send(out, "{\"type\":\"ERROR\",\"message\":\"Missing playerId or room\"}"); break; }
-                    if (!joined.getOrDefault(gameId, ConcurrentHashMap.newKeySet()).contains(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Join first\"}"); break; }
-
-                    GameEngine engine = getOrCreateEngine(gameId);
+                case Command.MoveFromHallway command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    String room = command.room();
+                    if (playerId == null || room == null) { reply(session, out, EventWriter.error("Missing playerId or room", cid)); break; }
+                    if (!session.isJoined(playerId)) { reply(session, out, EventWriter.error("Join first", cid)); break; }
+
+                    GameEngine engine = session.engine();
                     var gs = engine.getGameState();
-                    if (gs.isGameOver()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Game over\"}"); break; }
+                    if (gs.isGameOver()) { reply(session, out, EventWriter.error("Game over", cid)); break; }
 
                     Player p = gs.getPlayer(playerId);
                     Room target = gs.getRoom(room);
-                    if (p == null || target == null) { send(out, "{\"type\":\"ERROR\",\"message\":\"Unknown player or room\"}"); break; }
-                    if (!p.isActive()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Player eliminated\"}"); break; }
-                    if (!engine.isPlayersTurn(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Not your turn\"}"); break; }
-                    if (!(p.getLocation() instanceof Board.Hallway)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Not in a hallway\"}"); break; }
-                    if (p.hasMovedThisTurn()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Already moved this turn\"}"); break; }
+                    if (p == null || target == null) { reply(session, out, EventWriter.error("Unknown player or room", cid)); break; }
+                    if (!p.isActive()) { reply(session, out, EventWriter.error("Player eliminated", cid)); break; }
+                    if (!engine.isPlayersTurn(playerId)) { reply(session, out, EventWriter.error("Not your turn", cid)); break; }
+                    if (!(p.getLocation() instanceof Board.Hallway)) { reply(session, out, EventWriter.error("Not in a hallway", cid)); break; }
+                    if (p.hasMovedThisTurn()) { reply(session, out, EventWriter.error("Already moved this turn", cid)); break; }
 
                     boolean ok = engine.handleMoveFromHallwayToRoom(playerId, room);
                     if (ok) {
-                        String stateJson = JsonUtil.toJson(buildSnapshot(engine.getGameState(), engine.getBoard()));
-                        String ack = "{\"type\":\"ACK\",\"for\":\"MOVE_FROM_HALLWAY\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"room\":\"" + esc(room) + "\",\"state\":" + stateJson + "}";
-                        send(out, ack);
-                        broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"MOVE_FROM_HALLWAY\",\"gameId\":\"" + esc(gameId) + "\",\"playerId\":\"" + esc(playerId) + "\",\"room\":\"" + esc(room) + "\",\"state\":" + stateJson + "}", out);
+                        try (StateChange sc = stateChange(session, engine, false)) {
+                            sc.reply(out, EventWriter.ack(MessageType.MOVE_FROM_HALLWAY, cid).str("gameId", gameId).str("playerId", playerId).str("room", room).head());
+                            sc.broadcast(EventWriter.event("MOVE_FROM_HALLWAY").str("gameId", gameId).str("playerId", playerId).str("room", room).head(), out);
+                        }
                     } else {
-                        send(out, "{\"type\":\"ERROR\",\"message\":\"Illegal hallway exit\"}");
+                        reply(session, out, EventWriter.error("Illegal hallway exit", cid));
                     }
                     break;
                 }
-                case SUGGEST: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId"));
-                    String suspect = firstString(msg.getPayload(), "suspect");
-                    String weapon = firstString(msg.getPayload(), "weapon");
-                    String room = firstString(msg.getPayload(), "room");
-                    if (!joined.getOrDefault(gameId, ConcurrentHashMap.newKeySet()).contains(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Join first\"}"); break; }
-
-                    GameEngine engine = getOrCreateEngine(gameId);
+                case Command.Suggest command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    String suspect = command.suspect();
+                    String weapon = command.weapon();
+                    String room = command.room();
+                    if (!session.isJoined(playerId)) { reply(session, out, EventWriter.error("Join first", cid)); break; }
+
+                    GameEngine engine = session.engine();
                     var gs = engine.getGameState();
-                    if (gs.isGameOver()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Game over\"}"); break; }
+                    if (gs.isGameOver()) { reply(session, out, EventWriter.error("Game over", cid)); break; }
 
                     Player p = gs.getPlayer(playerId);
-                    if (p == null) { send(out, "{\"type\":\"ERROR\",\"message\":\"Unknown player\"}"); break; }
-                    if (!p.isActive()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Player eliminated\"}"); break; }
-                    if (!engine.isPlayersTurn(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Not your turn\"}"); break; }
-                    if (p.hasSuggestedThisTurn()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Already suggested this turn\"}"); break; }
-                    if (!RuleValidator.canSuggest(p)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Must be in a room\"}"); break; }
+                    if (p == null) { reply(session, out, EventWriter.error("Unknown player", cid)); break; }
+                    if (!p.isActive()) { reply(session, out, EventWriter.error("Player eliminated", cid)); break; }
+                    if (!engine.isPlayersTurn(playerId)) { reply(session, out, EventWriter.error("Not your turn", cid)); break; }
+                    if (p.hasSuggestedThisTurn()) { reply(session, out, EventWriter.error("Already suggested this turn", cid)); break; }
+                    if (!RuleValidator.canSuggest(p)) { reply(session, out, EventWriter.error("Must be in a room", cid)); break; }
                     // Enforce must-exit rule: if player entered room by self, they must move out before suggesting
-                    if (p.mustExitRoomBeforeActions()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Must exit room before suggesting\"}"); break; }
+                    if (p.mustExitRoomBeforeActions()) { reply(session, out, EventWriter.error("Must exit room before suggesting", cid)); break; }
                     if (room == null || p.getCurrentRoom() == null || !p.getCurrentRoom().getName().equalsIgnoreCase(room)) {
-                        send(out, "{\"type\":\"ERROR\",\"message\":\"Suggestion must be for your current room\"}");
+                        reply(session, out, EventWriter.error("Suggestion must be for your current room", cid));
                         break;
                     }
 
                     SuggestionResult res = engine.handleSuggestionDetailed(playerId, suspect, weapon, room);
                     if (res.isAccepted()) {
-                        String stateJson = JsonUtil.toJson(buildSnapshot(engine.getGameState(), engine.getBoard()));
-
-                        // If there is a disprover with candidate cards, send DISPROVE_REQUEST to that player and ACK suggester that request was sent
-                        String disprover = res.getDisprover();
-                        String candidatesCsv = res.getRevealedCard(); // temporarily encoded list
-                        if (disprover != null && candidatesCsv != null && !candidatesCsv.isBlank()) {
-                            // ACK to suggester that a disprove request was sent
-                            String ack = "{\"type\":\"ACK\",\"for\":\"SUGGEST\",\"gameId\":\"" + esc(gameId) +
-                                    "\",\"playerId\":\"" + esc(playerId) + "\",\"suspect\":\"" + esc(suspect) +
-                                    "\",\"weapon\":\"" + esc(weapon) + "\",\"room\":\"" + esc(room) +
-                                    "\",\"disprover\":\"" + esc(disprover) +
-                                    "\",\"state\":" + stateJson + "}";
-                            send(out, ack);
-
-                            // Send DISPROVE_REQUEST as broadcast (clients filter by disprover field)
-                            String req = "{\"type\":\"DISPROVE_REQUEST\",\"gameId\":\"" + esc(gameId) +
-                                    "\",\"disprover\":\"" + esc(disprover) +
-                                    "\",\"suggester\":\"" + esc(playerId) + "\",\"suspect\":\"" + esc(suspect) +
-                                    "\",\"weapon\":\"" + esc(weapon) + "\",\"room\":\"" + esc(room) +
-                                    "\",\"candidateCards\":\"" + esc(candidatesCsv) + "\"}";
-                            // Broadcast to all (client will filter based on disprover field)
-                            broadcast(gameId, req, null);
-
-                            // Broadcast suggest event (without revealed card)
-                            String pub = "{\"type\":\"EVENT\",\"event\":\"SUGGEST\",\"gameId\":\"" + esc(gameId) +
-                                    "\",\"playerId\":\"" + esc(playerId) + "\",\"suspect\":\"" + esc(suspect) +
-                                    "\",\"weapon\":\"" + esc(weapon) + "\",\"room\":\"" + esc(room) +
-                                    "\",\"disprover\":\"" + esc(disprover) +
-                                    "\",\"state\":" + stateJson + "}";
-                            broadcast(gameId, pub, out);
-                        } else {
-                            // No disprover found -> broadcast as before with no revealed card
-                            String ack = "{\"type\":\"ACK\",\"for\":\"SUGGEST\",\"gameId\":\"" + esc(gameId) +
-                                    "\",\"playerId\":\"" + esc(playerId) + "\",\"suspect\":\"" + esc(suspect) +
-                                    "\",\"weapon\":\"" + esc(weapon) + "\",\"room\":\"" + esc(room) +
-                                    "\",\"state\":" + stateJson + "}";
-                            send(out, ack);
-                            String pub = "{\"type\":\"EVENT\",\"event\":\"SUGGEST\",\"gameId\":\"" + esc(gameId) +
-                                    "\",\"playerId\":\"" + esc(playerId) + "\",\"suspect\":\"" + esc(suspect) +
-                                    "\",\"weapon\":\"" + esc(weapon) + "\",\"room\":\"" + esc(room) +
-                                    "\",\"state\":" + stateJson + "}";
-                            broadcast(gameId, pub, out);
+                        // the suggested suspect may have been moved into the room
+                        try (StateChange sc = stateChange(session, engine, false)) {
+                            // If there is a disprover with candidate cards, send DISPROVE_REQUEST to that player and ACK suggester that request was sent
+                            String disprover = res.getDisprover();
+                            String candidatesCsv = res.getRevealedCard(); // temporarily encoded list
+                            if (disprover != null && candidatesCsv != null && !candidatesCsv.isBlank()) {
+                                // ACK to suggester that a disprove request was sent
+                                String ack = EventWriter.ack(MessageType.SUGGEST, cid).str("gameId", gameId)
+                                        .str("playerId", playerId).str("suspect", suspect)
+                                        .str("weapon", weapon).str("room", room)
+                                        .str("disprover", disprover).head();
+                                sc.reply(out, ack);
+
+                                // Send DISPROVE_REQUEST as broadcast (clients filter by disprover field)
+                                String req = EventWriter.message("DISPROVE_REQUEST").str("gameId", gameId)
+                                        .str("disprover", disprover)
+                                        .str("suggester", playerId).str("suspect", suspect)
+                                        .str("weapon", weapon).str("room", room)
+                                        .str("candidateCards", candidatesCsv).end();
+                                // Broadcast to all (client will filter based on disprover field)
+                                broadcast(session, req, null);
+
+                                // Broadcast suggest event (without revealed card)
+                                String pub = EventWriter.event("SUGGEST").str("gameId", gameId)
+                                        .str("playerId", playerId).str("suspect", suspect)
+                                        .str("weapon", weapon).str("room", room)
+                                        .str("disprover", disprover).head();
+                                sc.broadcast(pub, out);
+                            } else {
+                                // No disprover found -> broadcast as before with no revealed card
+                                String ack = EventWriter.ack(MessageType.SUGGEST, cid).str("gameId", gameId)
+                                        .str("playerId", playerId).str("suspect", suspect)
+                                        .str("weapon", weapon).str("room", room).head();
+                                sc.reply(out, ack);
+                                String pub = EventWriter.event("SUGGEST").str("gameId", gameId)
+                                        .str("playerId", playerId).str("suspect", suspect)
+                                        .str("weapon", weapon).str("room", room).head();
+                                sc.broadcast(pub, out);
+                            }
                         }
                     } else {
-                        send(out, "{\"type\":\"ERROR\",\"message\":\"Cannot suggest now\"}");
+                        reply(session, out, EventWriter.error("Cannot suggest now", cid));
                     }
                     break;
                 }
-                case DISPROVE_RESPONSE: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId")); // the disprover
-                    String chosenCard = firstString(msg.getPayload(), "card","chosen","chosenCard");
-                    String suggester = firstString(msg.getPayload(), "suggester","suggestedBy");
-
-                    GameEngine engine = getOrCreateEngine(gameId);
+                case Command.DisproveResponse command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId(); // the disprover
+                    String chosenCard = command.card();
+                    String suggester = command.suggester();
+
+                    GameEngine engine = session.engineIfPresent();
+                    if (engine == null) { reply(session, out, EventWriter.error("No such game", cid)); break; }
                     var gs = engine.getGameState();
-                    if (gs.isGameOver()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Game over\"}"); break; }
+                    if (gs.isGameOver()) { reply(session, out, EventWriter.error("Game over", cid)); break; }
 
                     if (playerId == null || chosenCard == null || suggester == null) {
-                        send(out, "{\"type\":\"ERROR\",\"message\":\"Missing fields for DISPROVE_RESPONSE\"}");
+                        reply(session, out, EventWriter.error("Missing fields for DISPROVE_RESPONSE", cid));
                         break;
                     }
 
                     // Private reveal to suggester
-                    String stateJson = JsonUtil.toJson(buildSnapshot(engine.getGameState(), engine.getBoard()));
-                    String ackToSuggester = "{\"type\":\"EVENT\",\"event\":\"DISPROVE_REVEAL\",\"gameId\":\"" + esc(gameId) +
-                            "\",\"suggester\":\"" + esc(suggester) + "\",\"disprover\":\"" + esc(playerId) +
-                            "\",\"card\":\"" + esc(chosenCard) + "\",\"state\":" + stateJson + "}";
+                    String ackToSuggester = EventWriter.event("DISPROVE_REVEAL").str("gameId", gameId)
+                            .str("suggester", suggester).str("disprover", playerId)
+                            .str("card", chosenCard).tree("state", engine.getSnapshot().toMap(), false).end();
                     // Send only to suggester (best-effort: all subscribers receive, client filters)
-                    var subs = subscribers.getOrDefault(gameId, Collections.emptySet());
-                    for (PrintWriter w : subs) {
-                        try { w.println(ackToSuggester); } catch (Exception ignored) {}
+                    for (ClientConnection c : session.subscribers()) {
+                        c.send(ackToSuggester);
                     }
 
                     // Broadcast that disprove happened (no card shown)
-                    String pub = "{\"type\":\"EVENT\",\"event\":\"DISPROVE_DONE\",\"gameId\":\"" + esc(gameId) +
-                            "\",\"disprover\":\"" + esc(playerId) + "\",\"suggester\":\"" + esc(suggester) + "\"}";
-                    broadcast(gameId, pub, null);
+                    String pub = EventWriter.event("DISPROVE_DONE").str("gameId", gameId)
+                            .str("disprover", playerId).str("suggester", suggester).end();
+                    broadcast(session, pub, null);
                     break;
                 }
-                case ACCUSE: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId"));
-                    String suspect = firstString(msg.getPayload(), "suspect");
-                    String weapon = firstString(msg.getPayload(), "weapon");
-                    String room = firstString(msg.getPayload(), "room");
-                    if (!joined.getOrDefault(gameId, ConcurrentHashMap.newKeySet()).contains(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Join first\"}"); break; }
-
-                    GameEngine engine = getOrCreateEngine(gameId);
+                case Command.Accuse command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    String suspect = command.suspect();
+                    String weapon = command.weapon();
+                    String room = command.room();
+                    if (!session.isJoined(playerId)) { reply(session, out, EventWriter.error("Join first", cid)); break; }
+
+                    GameEngine engine = session.engine();
                     var gs = engine.getGameState();
-                    if (gs.isGameOver()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Game over\"}"); break; }
+                    if (gs.isGameOver()) { reply(session, out, EventWriter.error("Game over", cid)); break; }
 
                     Player p = gs.getPlayer(playerId);
-                    if (p == null) { send(out, "{\"type\":\"ERROR\",\"message\":\"Unknown player\"}"); break; }
-                    if (!p.isActive()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Player eliminated\"}"); break; }
-                    if (!engine.isPlayersTurn(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Not your turn\"}"); break; }
-                    if (!RuleValidator.isValidAccusation(suspect, weapon, room)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Invalid accusation\"}"); break; }
+                    if (p == null) { reply(session, out, EventWriter.error("Unknown player", cid)); break; }
+                    if (!p.isActive()) { reply(session, out, EventWriter.error("Player eliminated", cid)); break; }
+                    if (!engine.isPlayersTurn(playerId)) { reply(session, out, EventWriter.error("Not your turn", cid)); break; }
+                    if (!RuleValidator.isValidAccusation(suspect, weapon, room)) { reply(session, out, EventWriter.error("Invalid accusation", cid)); break; }
 
                     AccusationResult res = engine.handleAccusation(playerId, suspect, weapon, room);
-                    String stateJson = JsonUtil.toJson(buildSnapshot(engine.getGameState(), engine.getBoard()));
-                    if (res.isCorrect()) {
-                        String ack = "{\"type\":\"ACK\",\"for\":\"ACCUSE\",\"result\":\"WIN\",\"gameOver\":true,\"winner\":\"" + esc(res.getWinner()) + "\",\"state\":" + stateJson + "}";
-                        send(out, ack);
-                        broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"ACCUSE\",\"result\":\"WIN\",\"gameOver\":true,\"winner\":\"" + esc(res.getWinner()) + "\",\"gameId\":\"" + esc(gameId) + "\",\"by\":\"" + esc(playerId) + "\",\"state\":" + stateJson + "}", out);
-                    } else {
-                        String ack = "{\"type\":\"ACK\",\"for\":\"ACCUSE\",\"result\":\"LOSE\",\"eliminated\":" + res.isEliminated() + ",\"gameOver\":" + res.isGameOver() + (res.isGameOver() && res.getWinner()!=null ? ",\"winner\":\"" + esc(res.getWinner()) + "\"" : "") + ",\"state\":" + stateJson + "}";
-                        send(out, ack);
-                        broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"ACCUSE\",\"result\":\"LOSE\",\"gameOver\":" + res.isGameOver() + (res.isGameOver() && res.getWinner()!=null ? ",\"winner\":\"" + esc(res.getWinner()) + "\"" : "") + ",\"gameId\":\"" + esc(gameId) + "\",\"by\":\"" + esc(playerId) + "\",\"state\":" + stateJson + "}", out);
+                    try (StateChange sc = stateChange(session, engine, false)) {
+                        if (res.isCorrect()) {
+                            sc.reply(out, EventWriter.ack(MessageType.ACCUSE, cid).str("result", "WIN").bool("gameOver", true).str("winner", res.getWinner()).head());
+                            sc.broadcast(EventWriter.event("ACCUSE").str("result", "WIN").bool("gameOver", true).str("winner", res.getWinner())
+                                    .str("gameId", gameId).str("by", playerId).head(), out);
+                        } else {
+                            boolean named = res.isGameOver() && res.getWinner() != null;
+                            EventWriter ack = EventWriter.ack(MessageType.ACCUSE, cid).str("result", "LOSE").bool("eliminated", res.isEliminated()).bool("gameOver", res.isGameOver());
+                            sc.reply(out, (named ? ack.str("winner", res.getWinner()) : ack).head());
+                            EventWriter pub = EventWriter.event("ACCUSE").str("result", "LOSE").bool("gameOver", res.isGameOver());
+                            sc.broadcast((named ? pub.str("winner", res.getWinner()) : pub).str("gameId", gameId).str("by", playerId).head(), out);
+                        }
                     }
                     break;
                 }
-                case END_TURN: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId"));
-                    if (!joined.getOrDefault(gameId, ConcurrentHashMap.newKeySet()).contains(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Join first\"}"); break; }
-                    GameEngine engine = getOrCreateEngine(gameId);
+                case Command.EndTurn command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    if (!session.isJoined(playerId)) { reply(session, out, EventWriter.error("Join first", cid)); break; }
+                    GameEngine engine = session.engine();
                     var gs = engine.getGameState();
-                    if (gs.isGameOver()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Game over\"}"); break; }
+                    if (gs.isGameOver()) { reply(session, out, EventWriter.error("Game over", cid)); break; }
 
                     Player p = gs.getPlayer(playerId);
-                    if (p == null) { send(out, "{\"type\":\"ERROR\",\"message\":\"Unknown player\"}"); break; }
-                    if (!p.isActive()) { send(out, "{\"type\":\"ERROR\",\"message\":\"Player eliminated\"}"); break; }
-                    if (!engine.isPlayersTurn(playerId)) { send(out, "{\"type\":\"ERROR\",\"message\":\"Not your turn\"}"); break; }
+                    if (p == null) { reply(session, out, EventWriter.error("Unknown player", cid)); break; }
+                    if (!p.isActive()) { reply(session, out, EventWriter.error("Player eliminated", cid)); break; }
+                    if (!engine.isPlayersTurn(playerId)) { reply(session, out, EventWriter.error("Not your turn", cid)); break; }
                     // Prevent ending turn without exiting if entered by self; players shouldn't camp in rooms
                     Player cp = gs.getCurrentPlayer();
                     if (cp != null && cp.mustExitRoomBeforeActions()) {
-                        send(out, "{\"type\":\"ERROR\",\"message\":\"Must exit room before ending turn\"}");
+                        reply(session, out, EventWriter.error("Must exit room before ending turn", cid));
                         break;
                     }
 
                     engine.advanceTurn();
-                    String stateJson = JsonUtil.toJson(buildSnapshot(engine.getGameState(), engine.getBoard()));
-                    String ack = "{\"type\":\"ACK\",\"for\":\"END_TURN\",\"gameId\":\"" + esc(gameId) + "\",\"state\":" + stateJson + "}";
-                    send(out, ack);
-                    broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"TURN\",\"gameId\":\"" + esc(gameId) + "\",\"state\":" + stateJson + "}", out);
+                    try (StateChange sc = stateChange(session, engine, false)) {
+                        sc.reply(out, EventWriter.ack(MessageType.END_TURN, cid).str("gameId", gameId).head());
+                        sc.broadcast(EventWriter.event("TURN").str("gameId", gameId).head(), out);
+                    }
                     break;
                 }
-                case NEW_GAME: {
-                    String gameId = nz(msg.getGameId(), "default");
-                    String playerId = nz(msg.getPlayerId(), firstString(msg.getPayload(), "player","playerId"));
-                    boolean keepPlayers = firstBool(msg.getPayload(), "keepPlayers", true);
+                case Command.NewGame command: {
+                    String gameId = command.gameId();
+                    String playerId = command.playerId();
+                    boolean keepPlayers = command.keepPlayers();
 
-                    if (!joined.getOrDefault(gameId, ConcurrentHashMap.newKeySet()).contains(playerId)) {
-                        send(out, "{\"type\":\"ERROR\",\"message\":\"Join first\"}");
+                    if (!session.isJoined(playerId)) {
+                        reply(session, out, EventWriter.error("Join first", cid));
                         break;
                     }
 
                     ArrayList<String> playersToKeep = new ArrayList<>();
                     if (keepPlayers) {
-                        var set = joined.getOrDefault(gameId, ConcurrentHashMap.newKeySet());
-                        var existing = games.get(gameId);
+                        var set = session.joined();
+                        var existing = session.engineIfPresent();
                         if (existing != null && existing.getGameState() != null) {
                             existing.getGameState().getPlayers().values().forEach(p -> {
                                 if (set.contains(p.getName())) playersToKeep.add(p.getName());
@@ -421,117 +713,88 @@ public class MessageRouter {
                             set.forEach(playersToKeep::add);
                         }
                     } else {
-                        joined.computeIfAbsent(gameId, k -> ConcurrentHashMap.newKeySet()).clear();
-                        joined.get(gameId).add(playerId);
+                        session.joined().clear();
+                        session.join(playerId);
                     }
 
-                    // Recreate engine via the same path used elsewhere
-                    games.remove(gameId);
-                    GameEngine engine = getOrCreateEngine(gameId);
+                    GameEngine engine = session.resetEngine();
 
                     for (String pn : playersToKeep) {
                         engine.joinPlayer(pn, pn);
-                        joined.computeIfAbsent(gameId, k -> ConcurrentHashMap.newKeySet()).add(pn);
+                        session.join(pn);
                     }
 
                     // Deal cards and set hidden solution
-                    engine.startGame();
+                    engine.startGame(session.dealSeed());
 
-                    String stateJson = JsonUtil.toJson(buildSnapshot(engine.getGameState(), engine.getBoard()));
-                    String ack = "{\"type\":\"ACK\",\"for\":\"NEW_GAME\",\"gameId\":\"" + esc(gameId) + "\",\"keepPlayers\":" + keepPlayers + ",\"state\":" + stateJson + "}";
-                    send(out, ack);
-                    broadcast(gameId, "{\"type\":\"EVENT\",\"event\":\"NEW_GAME\",\"gameId\":\"" + esc(gameId) + "\",\"keepPlayers\":" + keepPlayers + ",\"state\":" + stateJson + "}", out);
+                    try (StateChange sc = stateChange(session, engine, true)) {
+                        sc.reply(out, EventWriter.ack(MessageType.NEW_GAME, cid).str("gameId", gameId).bool("keepPlayers", keepPlayers).head());
+                        sc.broadcast(EventWriter.event("NEW_GAME").str("gameId", gameId).bool("keepPlayers", keepPlayers).head(), out);
+                    }
+                    break;
+                }
+                case Command.Resync command: {
+                    // full snapshot at the current version; the client then applies deltas from there
+                    String gameId = command.gameId();
+                    GameEngine engine = session.engineIfPresent();
+                    if (engine == null) { reply(session, out, EventWriter.error("No such game", cid)); break; }
+                    StateDeltaTracker tracker = session.tracker;
+                    tracker.lock().lock();
+                    try {
+                        long version = tracker.version();
+                        reply(session, out, EventWriter.ack(MessageType.RESYNC, cid).str("gameId", gameId).num("version", version)
+                                .tree("state", engine.getSnapshot().toMap(), false).end());
+                        out.setStateVersion(gameId, version);
+                        FULL_SNAPSHOTS_SENT.increment();
+                    } finally {
+                        tracker.lock().unlock();
+                    }
+                    break;
+                }
+                case Command.Resume command: {
+                    // a reconnecting client: the events it missed if the log still has them all, else a snapshot
+                    String gameId = command.gameId();
+                    String playerId = session.playerForToken(command.token());
+                    if (playerId == null) { reply(session, out, EventWriter.error("Unknown or expired session", cid)); break; }
+                    session.subscribe(out);
+                    RESUMED.increment();
+
+                    List<OutboundMessage> missed = session.events.since(command.lastSeq());
+                    if (missed != null) {
+                        reply(session, out, EventWriter.ack(MessageType.RESUME, cid).str("gameId", gameId).str("playerId", playerId)
+                                .num("seq", session.events.lastSeq()).num("replayed", missed.size()).end());
+                        for (OutboundMessage m : missed) out.send(m);
+                        RESUME_REPLAYED.add(missed.size());
+                        break;
+                    }
+                    RESUME_SNAPSHOTS.increment();
+                    String lobbyJson = session.lobbyJson(() -> EventWriter.toJson(buildLobbySnapshot(session.lobby), false));
+                    GameEngine engine = session.engineIfPresent();
+                    if (engine == null) {
+                        reply(session, out, EventWriter.ack(MessageType.RESUME, cid).str("gameId", gameId).str("playerId", playerId)
+                                .num("seq", session.events.lastSeq()).bool("snapshot", true).raw("lobby", lobbyJson).end());
+                        break;
+                    }
+                    StateDeltaTracker tracker = session.tracker;
+                    tracker.lock().lock();
+                    try {
+                        long version = tracker.version();
+                        reply(session, out, EventWriter.ack(MessageType.RESUME, cid).str("gameId", gameId).str("playerId", playerId)
+                                .num("seq", session.events.lastSeq()).bool("snapshot", true).raw("lobby", lobbyJson)
+                                .num("version", version).tree("state", engine.getSnapshot().toMap(), false).end());
+                        out.setStateVersion(gameId, version);
+                        FULL_SNAPSHOTS_SENT.increment();
+                    } finally {
+                        tracker.lock().unlock();
+                    }
                     break;
                 }
-                // ...existing cases...
-                default: send(out, "{\"type\":\"ERROR\",\"message\":\"Unknown type\"}");
             }
         } catch (Exception e) {
-            e.printStackTrace(); // Print stack trace to console for debugging
+            LOG.warn("route failed for " + cmd.type(), e);
             String errorMsg = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
-            send(out, "{\"type\":\"ERROR\",\"message\":\"" + esc(errorMsg) + "\"}");
-        }
-    }
-
-    private static Map<String, Object> buildSnapshot(GameState gs) {
-        return buildSnapshot(gs, null);
-    }
-
-    private static Map<String, Object> buildSnapshot(GameState gs, Board board) {
-        Map<String, Object> root = new LinkedHashMap<>();
-        List<Map<String, Object>> players = new ArrayList<>();
-        for (Player p : gs.getPlayers().values()) {
-            Map<String, Object> pm = new LinkedHashMap<>();
-            pm.put("name", p.getName());
-            pm.put("character", p.getCharacterName());
-            pm.put("room", p.getCurrentRoom() != null ? p.getCurrentRoom().getName() : null);
-            if (p.getLocation() instanceof Board.Hallway) {
-                Board.Hallway h = (Board.Hallway) p.getLocation();
-                Map<String, Object> loc = new LinkedHashMap<>();
-                loc.put("type", "HALLWAY");
-                loc.put("name", h.getId());
-                pm.put("location", loc);
-            } else if (p.getCurrentRoom() != null) {
-                Map<String, Object> loc = new LinkedHashMap<>();
-                loc.put("type", "ROOM");
-                loc.put("name", p.getCurrentRoom().getName());
-                pm.put("location", loc);
-            } else {
-                pm.put("location", null);
-            }
-            pm.put("active", p.isActive());
-            pm.put("roomEntryType", p.getRoomEntryType().name());
-            pm.put("mustExit", p.mustExitRoomBeforeActions());
-            
-            // Include player's hand (cards)
-            List<Map<String, Object>> hand = new ArrayList<>();
-            for (Card card : p.getHand()) {
-                Map<String, Object> cardMap = new LinkedHashMap<>();
-                cardMap.put("name", card.getName());
-                cardMap.put("type", card.getType().toString());
-                hand.add(cardMap);
-            }
-            pm.put("hand", hand);
-            
-            players.add(pm);
-        }
-        root.put("players", players);
-
-        List<Map<String, Object>> rooms = new ArrayList<>();
-        for (Room r : gs.getRooms().values()) {
-            Map<String, Object> rm = new LinkedHashMap<>();
-            rm.put("name", r.getName());
-            List<String> occ = new ArrayList<>();
-            for (Player p : r.getOccupants()) occ.add(p.getName());
-            rm.put("occupants", occ);
-            rooms.add(rm);
-        }
-        root.put("rooms", rooms);
-
-        if (board != null) {
-            List<Map<String, Object>> hallways = new ArrayList<>();
-            for (Board.Hallway h : new LinkedHashMap<>(board.getHallways()).values()) {
-                // de-duplicate: only include canonical ids where id equals getName()
-                if (!h.getName().contains("_")) continue; // defensive; all ids contain _
-                // only include once by requiring a.getName() < b.getName()
-                String[] parts = h.getName().split("_");
-                if (parts.length == 2) {
-                    String a = parts[0], b = parts[1];
-                    if (a.compareTo(b) > 0) continue; // skip reverse
-                }
-                Map<String, Object> hm = new LinkedHashMap<>();
-                hm.put("id", h.getName());
-                hm.put("a", h.getA().getName());
-                hm.put("b", h.getB().getName());
-                hm.put("occupant", h.getOccupant() != null ? h.getOccupant().getName() : null);
-                hallways.add(hm);
-            }
-            root.put("hallways", hallways);
+            reply(session, out, EventWriter.error(errorMsg, cid));
         }
-        root.put("currentPlayer", gs.getCurrentPlayer() != null ? gs.getCurrentPlayer().getName() : null);
-        root.put("gameOver", gs.isGameOver());
-        root.put("winner", gs.getWinner());
-        return root;
     }
 
     private static Map<String, Object> buildLobbySnapshot(Lobby lobby) {
@@ -549,26 +812,4 @@ public class MessageRouter {
         root.put("ready", new LinkedHashMap<>(lobby.getReadyMap()));
         return root;
     }
-
-    private static String firstString(Map<String, Object> payload, String... keys) {
-        if (payload == null) return null;
-        for (String k : keys) {
-            Object v = payload.get(k);
-            if (v != null) return String.valueOf(v);
-        }
-        return null;
-    }
-    private static String nz(String v, String def) { return (v == null || v.isBlank()) ? def : v; }
-    private static String esc(String s) { return s == null ? "" : s.replace("\\","\\\\").replace("\"","\\\""); }
-    private static boolean firstBool(Map<String, Object> payload, String key, boolean def) {
-        if (payload == null) return def;
-        Object v = payload.get(key);
-        if (v instanceof Boolean) return (Boolean) v;
-        if (v instanceof String) {
-            String s = ((String) v).trim().toLowerCase();
-            if (s.equals("true") || s.equals("1") || s.equals("yes") || s.equals("y")) return true;
-            if (s.equals("false") || s.equals("0") || s.equals("no") || s.equals("n")) return false;
-        }
-        return def;
-    }
 }
\ No newline at end of file
@@ -8,5 +8,11 @@ public enum MessageType {
     SUGGEST, DISPROVE_REQUEST, DISPROVE_RESPONSE, ACCUSE, END_TURN,
     NEW_GAME,
     // Lobby flow
-    JOIN_LOBBY, SELECT_CHARACTER, UNSELECT_CHARACTER, SET_READY, START_GAME
+    JOIN_LOBBY, SELECT_CHARACTER, UNSELECT_CHARACTER, SET_READY, START_GAME,
+    // State sync: full versioned snapshot on request
+    RESYNC,
+    // Heartbeat reply to a server-initiated PING
+    PONG,
+    // Reconnect with a session token: replay missed events, or a snapshot if too far behind
+    RESUME
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.util.LoggerUtil;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selector-based TCP front end. A single acceptor hands new channels round-robin to a
+ * small, fixed set of {@link NioEventLoop}s, so the number of connections is bounded by
+ * file descriptors rather than by threads. Same wire format as {@link ClueServer}:
+ * one JSON message per line in each direction.
+ */
+public class NioClueServer implements Runnable {
+    private static final LoggerUtil LOG = LoggerUtil.get("NIO");
+    private static final long ACCEPT_BACKOFF_MS = 50;
+    private final int port;
+    private final MessageRouter router;
+    private final NioEventLoop[] loops;
+    private final CountDownLatch bound = new CountDownLatch(1);
+    private volatile ServerSocketChannel server;
+    private volatile boolean running = true;
+    private int next;
+
+    public NioClueServer(int port, MessageRouter router) {
+        this(port, router, Runtime.getRuntime().availableProcessors());
+    }
+
+    public NioClueServer(int port, MessageRouter router, int loopCount) {
+        this.port = port;
+        this.router = router;
+        this.loops = new NioEventLoop[Math.max(1, loopCount)];
+    }
+
+    public void start() {
+        try {
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new NioEventLoop("clue-nio-" + i, router);
+                loops[i].start();
+            }
+            server = ServerSocketChannel.open();
+            server.setOption(java.net.StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(new InetSocketAddress(port), 1024);
+            bound.countDown();
+            LOG.info("NIO server listening on {} ({} loops)", getLocalPort(), loops.length);
+            while (running) {
+                SocketChannel ch;
+                try {
+                    ch = server.accept();
+                } catch (IOException e) {
+                    if (!running || !server.isOpen()) break;
+                    // typically EMFILE under a connection flood; the listener itself is still fine
+                    LOG.error("accept failed", e);
+                    backOff();
+                    continue;
+                }
+                loops[next].register(ch);
+                next = (next + 1) % loops.length;
+            }
+        } catch (IOException e) {
+            if (running) {
+                LOG.error("NIO server failed to start", e);
+            }
+        } finally {
+            bound.countDown();
+            stop();
+        }
+    }
+
+    private static void backOff() {
+        try {
+            Thread.sleep(ACCEPT_BACKOFF_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        if (server != null) {
+            try { server.close(); } catch (IOException ignored) {}
+        }
+        for (NioEventLoop l : loops) if (l != null) l.shutdown();
+    }
+
+    /** Blocks until the listening socket is bound; useful when started with port 0. */
+    public int awaitBound(long timeout, TimeUnit unit) throws InterruptedException {
+        bound.await(timeout, unit);
+        return getLocalPort();
+    }
+
+    public int getLocalPort() {
+        ServerSocketChannel s = server;
+        if (s == null) return -1;
+        try {
+            return ((InetSocketAddress) s.getLocalAddress()).getPort();
+        } catch (IOException | NullPointerException e) {
+            return -1;
+        }
+    }
+
+    public int getConnectionCount() {
+        int n = 0;
+        for (NioEventLoop l : loops) if (l != null) n += l.getConnectionCount();
+        return n;
+    }
+
+    @Override
+    public void run() {
+        start();
+    }
+}
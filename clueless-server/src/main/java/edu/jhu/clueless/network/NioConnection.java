@@ -0,0 +1,218 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.util.LoggerUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-channel state for the NIO transport: newline framing of inbound bytes (or varint
+ * framing once the peer opened with {@link BinaryCodec#MAGIC}) and a queue of
+ * already-encoded outbound buffers. The outbound queue's writer queues read-only views of
+ * each message's shared UTF-8 bytes; only the owning loop thread touches the channel.
+ */
+final class NioConnection extends ClientConnection {
+    private static final LoggerUtil LOG = LoggerUtil.get("NIO");
+    static final int MAX_LINE_BYTES = 64 * 1024;
+    /** Encoded-but-unsent bytes above which the outbound queue stops draining into us. */
+    static final int HIGH_WATER_BYTES = 256 * 1024;
+    private static final ByteBuffer NEWLINE = ByteBuffer.wrap(new byte[] {'\n'}).asReadOnlyBuffer();
+
+    private final NioEventLoop loop;
+    private final SocketChannel ch;
+    private final SelectionKey key;
+
+    // inbound: bytes of the current, not yet terminated line (or binary frame body)
+    private byte[] line = new byte[256];
+    private int lineLen;
+    private boolean negotiated;    // first byte seen
+    private int frameLen = -1;     // binary: body length once the varint header is complete
+    private int headerValue, headerShift;
+
+    // outbound: filled by the queue writer, drained only on the loop thread
+    private final Queue<ByteBuffer> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    NioConnection(NioEventLoop loop, SocketChannel ch, SelectionKey key) {
+        this.loop = loop;
+        this.ch = ch;
+        this.key = key;
+        Heartbeat.watch(this);
+    }
+
+    void onReadable(ByteBuffer buf) throws IOException {
+        buf.clear();
+        int n = ch.read(buf);
+        if (n < 0) { close(); return; }
+        if (n > 0) touch();
+        buf.flip();
+        if (!negotiated && buf.hasRemaining()) {
+            negotiated = true;
+            if ((buf.get(buf.position()) & 0xFF) == BinaryCodec.MAGIC) {
+                buf.get();
+                setBinaryProtocol(true);
+            }
+        }
+        if (usesBinaryProtocol()) readFrames(buf);
+        else readLines(buf);
+    }
+
+    private void readLines(ByteBuffer buf) {
+        while (buf.hasRemaining() && isOpen()) {
+            byte b = buf.get();
+            if (b == '\n') {
+                dispatchLine();
+            } else {
+                if (lineLen == MAX_LINE_BYTES) {
+                    LOG.warn("{} line exceeds {} bytes, closing", getId(), MAX_LINE_BYTES);
+                    close();
+                    return;
+                }
+                if (lineLen == line.length) line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_BYTES));
+                line[lineLen++] = b;
+            }
+        }
+    }
+
+    // varint length, then that many body bytes; bodies are copied in bulk
+    private void readFrames(ByteBuffer buf) {
+        while (buf.hasRemaining() && isOpen()) {
+            if (frameLen < 0) {
+                int b = buf.get() & 0xFF;
+                headerValue |= (b & 0x7F) << headerShift;
+                headerShift += 7;
+                if ((b & 0x80) != 0 && headerShift < 35) continue;
+                if ((b & 0x80) != 0 || headerValue < 0 || headerValue > BinaryCodec.MAX_FRAME_BYTES) {
+                    LOG.warn("{} bad binary frame length, closing", getId());
+                    close();
+                    return;
+                }
+                frameLen = headerValue;
+                headerValue = 0;
+                headerShift = 0;
+                if (line.length < frameLen) line = new byte[frameLen];
+            }
+            int take = Math.min(frameLen - lineLen, buf.remaining());
+            buf.get(line, lineLen, take);
+            lineLen += take;
+            if (lineLen == frameLen) dispatchFrame();
+        }
+    }
+
+    private void dispatchFrame() {
+        ByteBuffer body = ByteBuffer.wrap(line, 0, frameLen);
+        frameLen = -1;
+        lineLen = 0;
+        try {
+            loop.router().route(this, BinaryCodec.decodeCommand(body));
+        } catch (Exception e) {
+            sendError(e);
+        }
+        if (line.length > 4096) line = new byte[256];
+    }
+
+    private void dispatchLine() {
+        int len = lineLen;
+        if (len > 0 && line[len - 1] == '\r') len--;
+        lineLen = 0;
+        if (len == 0) return;
+        String text = new String(line, 0, len, StandardCharsets.UTF_8);
+        if (line.length > 4096) line = new byte[256]; // don't keep a huge buffer around after one big message
+        if (text.isBlank()) return;
+        try {
+            loop.router().route(this, CommandDecoder.decode(text));
+        } catch (Exception e) {
+            sendError(e);
+        }
+    }
+
+    private void sendError(Exception e) {
+        String m = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        send(EventWriter.error(m));
+    }
+
+    void onWritable() {
+        flushPending();
+    }
+
+    // loop thread only
+    private void flushPending() {
+        if (!isOpen()) return;
+        try {
+            ByteBuffer b;
+            while ((b = pending.peek()) != null) {
+                int n = ch.write(b);
+                pendingBytes.addAndGet(-n);
+                if (b.hasRemaining()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                pending.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            flushScheduled.set(false);
+            // the writer may have enqueued after our last peek but before the flag was cleared
+            if (!pending.isEmpty() && flushScheduled.compareAndSet(false, true)) flushPending();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // --- ClientConnection transport hooks (called by the outbound queue writer) ---
+
+    @Override
+    protected void writeToTransport(OutboundMessage m) {
+        // the payload bytes are shared with every other subscriber of a broadcast; only the
+        // view (position/limit) is ours, so nothing is copied
+        if (usesBinaryProtocol()) {
+            byte[] body = m.binary();
+            ByteBuffer header = ByteBuffer.wrap(BinaryCodec.frameHeader(body.length));
+            pendingBytes.addAndGet(header.remaining() + body.length);
+            pending.add(header);
+            pending.add(ByteBuffer.wrap(body).asReadOnlyBuffer());
+            return;
+        }
+        ByteBuffer payload = m.utf8Buffer();
+        pendingBytes.addAndGet(payload.remaining() + 1);
+        pending.add(payload);
+        pending.add(NEWLINE.duplicate());
+    }
+
+    @Override
+    protected void flushTransport() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            if (loop.inLoop()) flushPending();
+            else loop.execute(this::flushPending);
+        }
+    }
+
+    @Override
+    protected boolean transportWritable() {
+        return pendingBytes.get() < HIGH_WATER_BYTES;
+    }
+
+    @Override
+    protected void closeTransport() {
+        if (loop.inLoop()) release();
+        else loop.execute(this::release);
+    }
+
+    private void release() {
+        key.cancel();
+        try { ch.close(); } catch (IOException ignored) {}
+        pending.clear();
+        pendingBytes.set(0);
+        loop.onClosed(this);
+        LOG.info("{} disconnected", getId());
+    }
+}
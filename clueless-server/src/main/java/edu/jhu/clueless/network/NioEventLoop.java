@@ -0,0 +1,116 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.util.LoggerUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One selector thread of the NIO transport. Owns a disjoint set of channels: all reads,
+ * channel writes and interest-op changes for those channels happen on this thread.
+ * Other threads hand work in through {@link #execute(Runnable)}.
+ */
+final class NioEventLoop implements Runnable {
+    private static final LoggerUtil LOG = LoggerUtil.get("NIO");
+    private static final int READ_BUFFER_BYTES = 16 * 1024;
+    private final String name;
+    private final Selector selector;
+    private final MessageRouter router;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile Thread thread;
+    private volatile boolean running = true;
+
+    NioEventLoop(String name, MessageRouter router) throws IOException {
+        this.name = name;
+        this.selector = Selector.open();
+        this.router = router;
+    }
+
+    void start() {
+        Thread t = new Thread(this, name);
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    int getConnectionCount() { return connections.get(); }
+
+    MessageRouter router() { return router; }
+
+    boolean inLoop() { return Thread.currentThread() == thread; }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inLoop()) selector.wakeup();
+    }
+
+    void register(SocketChannel ch) {
+        execute(() -> {
+            try {
+                ch.configureBlocking(false);
+                ch.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+                SelectionKey key = ch.register(selector, SelectionKey.OP_READ);
+                key.attach(new NioConnection(this, ch, key));
+                connections.incrementAndGet();
+            } catch (IOException e) {
+                LOG.warn("register failed: {}", e.getMessage());
+                try { ch.close(); } catch (IOException ignored) {}
+            }
+        });
+    }
+
+    void onClosed(NioConnection c) { connections.decrementAndGet(); }
+
+    @Override
+    public void run() {
+        // one for all of this loop's channels: a read is consumed before the next one starts
+        ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+        try {
+            while (running) {
+                selector.select();
+                runTasks();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    NioConnection c = (NioConnection) key.attachment();
+                    if (c == null || !key.isValid()) continue;
+                    try {
+                        if (key.isReadable()) c.onReadable(readBuffer);
+                        if (key.isValid() && key.isWritable()) c.onWritable();
+                    } catch (Exception e) {
+                        LOG.warn("{} error: {}", c.getId(), e.getMessage());
+                        c.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("{} selector failed: {}", name, e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof NioConnection c) c.close();
+            }
+            try { selector.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void runTasks() {
+        Runnable r;
+        while ((r = tasks.poll()) != null) {
+            try { r.run(); } catch (Exception e) { LOG.warn("task failed", e); }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package edu.jhu.clueless.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One server-to-client message as it sits in a connection's outbound queue.
+ * The text is the JSON document without any transport framing.
+ *
+ * Messages built with {@link #snapshot} carry a full game or lobby snapshot as their last
+ * field. When a slow peer has several of them queued for the same game, only the newest
+ * keeps its snapshot; older ones are cut down to the event notice itself.
+ *
+ * A broadcast hands the same instance to every subscriber, so the UTF-8 encoding is done
+ * once, by whichever writer gets there first, and shared read-only by the rest.
+ */
+public final class OutboundMessage {
+    private final String text;
+    private final String conflationKey;
+    private final int snapshotStart;
+    private volatile byte[] utf8; // lazily encoded; a racing second encode is harmless
+    private volatile byte[] binary; // BinaryCodec body, same rules as utf8
+
+    public OutboundMessage(String text) {
+        this(text, null, -1);
+    }
+
+    private OutboundMessage(String text, String conflationKey, int snapshotStart) {
+        this.text = text;
+        this.conflationKey = conflationKey;
+        this.snapshotStart = snapshotStart;
+    }
+
+    /**
+     * Wrap an event whose final top-level field is {@code field} (e.g. "state" or "lobby").
+     * Messages with the same key supersede each other's snapshot while queued.
+     */
+    public static OutboundMessage snapshot(String json, String field, String key) {
+        int idx = json.indexOf(",\"" + field + "\":");
+        if (idx < 0 || !json.endsWith("}")) return new OutboundMessage(json);
+        return new OutboundMessage(json, key, idx);
+    }
+
+    public String getText() { return text; }
+
+    /** UTF-8 bytes of the text, without framing. Callers must not modify the array. */
+    byte[] utf8() {
+        byte[] b = utf8;
+        if (b == null) utf8 = b = text.getBytes(StandardCharsets.UTF_8);
+        return b;
+    }
+
+    /** {@link BinaryCodec} body of the text, built once and shared like {@link #utf8()}. */
+    byte[] binary() {
+        byte[] b = binary;
+        if (b == null) binary = b = BinaryCodec.encodeJson(text);
+        return b;
+    }
+
+    /** A fresh read-only view of {@link #utf8()}; each caller gets its own position. */
+    public ByteBuffer utf8Buffer() {
+        return ByteBuffer.wrap(utf8()).asReadOnlyBuffer();
+    }
+
+    /** Non-null when a newer message with the same key makes this one's snapshot stale. */
+    public String getConflationKey() { return conflationKey; }
+
+    /** The same event with its snapshot field removed. */
+    public OutboundMessage withoutSnapshot() {
+        if (snapshotStart < 0) return this;
+        return new OutboundMessage(text.substring(0, snapshotStart) + "}");
+    }
+}
@@ -0,0 +1,290 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.util.ConfigLoader;
+import edu.jhu.clueless.util.Metrics;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded outbound queue for one client connection. Producers (router threads) only
+ * enqueue; a writer task on a shared virtual-thread executor drains the queue into the
+ * transport in batches, so a slow peer backs up its own queue instead of the thread that
+ * is processing another player's request. What happens when the queue is full is decided
+ * by the {@link OverflowPolicy}.
+ *
+ * With a flush tick configured, the writer isn't started per message but at the next tick
+ * boundary (boundaries are wall-clock aligned, so every subscriber of a game wakes on the
+ * same tick). Everything produced for the connection within the tick goes out as one
+ * batch: one transport write and one flush, traded for up to one tick of added latency.
+ *
+ * With conflation on, a queued snapshot-bearing message loses its snapshot as soon as a
+ * newer one for the same game is queued behind it (see {@link OutboundMessage#snapshot}).
+ * The event itself stays in place, so ordering of everything else is untouched.
+ */
+public final class OutboundQueue {
+
+    public enum OverflowPolicy {
+        /** Close the connection; the client has to reconnect and resync. */
+        DISCONNECT,
+        /** Discard the oldest queued message to make room. */
+        DROP_OLDEST,
+        /** Make the producer wait up to the block timeout, then disconnect. */
+        BLOCK
+    }
+
+    /** Transport side of a queue; implemented by each connection type. */
+    public interface Sink {
+        void write(OutboundMessage m) throws IOException;
+        /** One drained batch, in order; transports that can frame several messages together override this. */
+        default void writeBatch(List<OutboundMessage> batch) throws IOException {
+            for (OutboundMessage m : batch) write(m);
+        }
+        /** Called once after each drained batch. */
+        default void flush() throws IOException { }
+        /** False while the transport still has unsent data buffered; the drain retries later. */
+        default boolean isWritable() { return true; }
+        /** The queue gave up on this peer (overflow or write failure). */
+        void abort(String reason);
+    }
+
+    public static final class Config {
+        final int capacity;
+        final OverflowPolicy policy;
+        final long blockTimeoutMs;
+        final boolean conflate;
+        final long flushTickMs;
+
+        public Config(int capacity, OverflowPolicy policy, long blockTimeoutMs) {
+            this(capacity, policy, blockTimeoutMs, false, 0);
+        }
+
+        public Config(int capacity, OverflowPolicy policy, long blockTimeoutMs, boolean conflate) {
+            this(capacity, policy, blockTimeoutMs, conflate, 0);
+        }
+
+        public Config(int capacity, OverflowPolicy policy, long blockTimeoutMs, boolean conflate, long flushTickMs) {
+            this.capacity = Math.max(1, capacity);
+            this.policy = policy;
+            this.blockTimeoutMs = blockTimeoutMs;
+            this.conflate = conflate;
+            this.flushTickMs = Math.max(0, flushTickMs);
+        }
+
+        /** clueless.outbound.capacity / .policy / .blockTimeoutMs / .flushTickMs (0 = flush immediately) */
+        public static Config fromConfig() {
+            return new Config(
+                    ConfigLoader.getInt("clueless.outbound.capacity", 256),
+                    OverflowPolicy.valueOf(ConfigLoader.getString("clueless.outbound.policy", "DROP_OLDEST").toUpperCase(Locale.ROOT)),
+                    ConfigLoader.getLong("clueless.outbound.blockTimeoutMs", 100),
+                    false,
+                    ConfigLoader.getLong("clueless.outbound.flushTickMs", 0));
+        }
+
+        /** Same as {@link #fromConfig()} plus snapshot conflation (clueless.ws.conflate, default on). */
+        public static Config forWebSocket() {
+            Config c = fromConfig();
+            return new Config(c.capacity, c.policy, c.blockTimeoutMs, ConfigLoader.getBoolean("clueless.ws.conflate", true), c.flushTickMs);
+        }
+
+        public long getFlushTickMs() { return flushTickMs; }
+    }
+
+    /** Queue slot; the message is swapped for its snapshot-less form when superseded. */
+    private static final class Entry {
+        OutboundMessage msg;
+        Entry(OutboundMessage msg) { this.msg = msg; }
+    }
+
+    static final int MAX_BATCH = 64;
+    static final long RETRY_MS = 5;
+
+    private static final ExecutorService WRITERS =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("clue-writer-", 0).factory());
+    private static final ScheduledExecutorService RETRY = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "clue-writer-retry");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final LongAdder ENQUEUED = Metrics.counter("outbound.enqueued");
+    private static final LongAdder DROPPED = Metrics.counter("outbound.dropped");
+    private static final LongAdder OVERFLOW_DISCONNECTS = Metrics.counter("outbound.overflowDisconnects");
+    private static final LongAdder CONFLATED = Metrics.counter("outbound.conflated");
+    private static final LongAdder BATCHES = Metrics.counter("outbound.batches");
+    private static final AtomicLong TOTAL_DEPTH = new AtomicLong();
+    private static final AtomicLong MAX_DEPTH = new AtomicLong();
+    static {
+        Metrics.gauge("outbound.depth.total", TOTAL_DEPTH::get);
+        Metrics.gauge("outbound.depth.max", MAX_DEPTH::get);
+    }
+
+    private final Sink sink;
+    private final Config config;
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private final HashMap<String, Entry> latestSnapshot = new HashMap<>(); // conflation key -> newest queued entry
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private boolean draining;
+    private boolean closed;
+    private long dropped;
+    private int highWater;
+
+    public OutboundQueue(Sink sink, Config config) {
+        this.sink = sink;
+        this.config = config;
+    }
+
+    /**
+     * Enqueue a message. Returns false if the message was not accepted because the queue is
+     * closed or the overflow policy disconnected the peer.
+     */
+    public boolean offer(OutboundMessage m) {
+        boolean startDrain = false;
+        String abort = null;
+        lock.lock();
+        try {
+            if (closed) return false;
+            if (queue.size() >= config.capacity) {
+                switch (config.policy) {
+                    case DROP_OLDEST:
+                        forget(queue.pollFirst());
+                        TOTAL_DEPTH.decrementAndGet();
+                        dropped++;
+                        DROPPED.increment();
+                        break;
+                    case BLOCK:
+                        long nanos = TimeUnit.MILLISECONDS.toNanos(config.blockTimeoutMs);
+                        while (queue.size() >= config.capacity && !closed && nanos > 0) {
+                            nanos = notFull.awaitNanos(nanos);
+                        }
+                        if (closed) return false;
+                        if (queue.size() >= config.capacity) abort = "outbound queue full after " + config.blockTimeoutMs + "ms";
+                        break;
+                    case DISCONNECT:
+                    default:
+                        abort = "outbound queue full (" + config.capacity + ")";
+                        break;
+                }
+            }
+            if (abort == null) {
+                Entry e = new Entry(m);
+                if (config.conflate && m.getConflationKey() != null) {
+                    Entry prev = latestSnapshot.put(m.getConflationKey(), e);
+                    if (prev != null) {
+                        prev.msg = prev.msg.withoutSnapshot();
+                        CONFLATED.increment();
+                    }
+                }
+                queue.addLast(e);
+                ENQUEUED.increment();
+                if (queue.size() > highWater) highWater = queue.size();
+                MAX_DEPTH.accumulateAndGet(queue.size(), Math::max);
+                TOTAL_DEPTH.incrementAndGet();
+                if (!draining) { draining = true; startDrain = true; }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+        if (abort != null) {
+            OVERFLOW_DISCONNECTS.increment();
+            sink.abort(abort);
+            return false;
+        }
+        if (startDrain) {
+            if (config.flushTickMs > 0) {
+                long tick = config.flushTickMs;
+                RETRY.schedule(() -> WRITERS.execute(this::drain), tick - System.currentTimeMillis() % tick, TimeUnit.MILLISECONDS);
+            } else {
+                WRITERS.execute(this::drain);
+            }
+        }
+        return true;
+    }
+
+    private void drain() {
+        List<OutboundMessage> batch = new ArrayList<>();
+        while (true) {
+            if (!sink.isWritable()) {
+                // peer hasn't taken what we already handed over; look again shortly
+                RETRY.schedule(() -> WRITERS.execute(this::drain), RETRY_MS, TimeUnit.MILLISECONDS);
+                return;
+            }
+            lock.lock();
+            try {
+                if (closed || queue.isEmpty()) { draining = false; return; }
+                Entry e;
+                while (batch.size() < MAX_BATCH && (e = queue.pollFirst()) != null) {
+                    forget(e);
+                    batch.add(e.msg);
+                }
+                TOTAL_DEPTH.addAndGet(-batch.size());
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                sink.writeBatch(batch);
+                sink.flush();
+                BATCHES.increment();
+            } catch (IOException | RuntimeException e) {
+                close();
+                sink.abort("write failed: " + e.getMessage());
+                return;
+            }
+            batch.clear();
+        }
+    }
+
+    /** Discard anything still queued and refuse further messages. */
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+            TOTAL_DEPTH.addAndGet(-queue.size());
+            queue.clear();
+            latestSnapshot.clear();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // caller holds lock
+    private void forget(Entry e) {
+        if (e == null) return;
+        String key = e.msg.getConflationKey();
+        if (key != null && latestSnapshot.get(key) == e) latestSnapshot.remove(key);
+    }
+
+    public int depth() {
+        lock.lock();
+        try { return queue.size(); } finally { lock.unlock(); }
+    }
+
+    public int highWater() {
+        lock.lock();
+        try { return highWater; } finally { lock.unlock(); }
+    }
+
+    public long dropped() {
+        lock.lock();
+        try { return dropped; } finally { lock.unlock(); }
+    }
+}
@@ -0,0 +1,163 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.util.ConfigLoader;
+import edu.jhu.clueless.util.Metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets in front of MessageRouter.route: one per (connection, MessageType) and one
+ * per (gameId, MessageType), so neither a single client nor a whole game can drive more
+ * snapshot builds and broadcasts than its limit allows.
+ *
+ * The per-game buckets belong to the {@link GameSession}, so only a game that exists has
+ * them (a made-up gameId can't grow anything here) and they go when the session is swept.
+ * route() checks the connection's limit first and the game's once the session is known.
+ *
+ * Each bucket is a single long in an AtomicLongArray, updated with one CAS (GCRA, the
+ * "virtual scheduling" form of a token bucket: the long is the time the bucket will next be
+ * full). A rejected message costs that CAS plus a pre-encoded ERROR reply and never reaches
+ * the engine.
+ *
+ * Limits are "rate/burst" in messages per second, e.g. clueless.rate.conn.MOVE=5/10 or
+ * clueless.rate.game.default=60/120; "0" turns a limit off. Per-type keys fall back to the
+ * scope's default. Rejections are counted as ratelimit.rejected.conn / .game and per type.
+ */
+public final class RateLimiter {
+
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final LongAdder REJECTED_CONN = Metrics.counter("ratelimit.rejected.conn");
+    private static final LongAdder REJECTED_GAME = Metrics.counter("ratelimit.rejected.game");
+    private static final LongAdder[] REJECTED_BY_TYPE = new LongAdder[TYPES.length];
+    private static final OutboundMessage[] REJECTION = new OutboundMessage[TYPES.length];
+    static {
+        for (MessageType t : TYPES) {
+            REJECTED_BY_TYPE[t.ordinal()] = Metrics.counter("ratelimit.rejected." + t.name());
+            REJECTION[t.ordinal()] = new OutboundMessage(EventWriter.message("ERROR").str("message", "Rate limited").str("for", t.name()).end());
+        }
+    }
+
+    /** {@code ratePerSec} <= 0 means unlimited. */
+    public record Limit(double ratePerSec, int burst) {
+        public static final Limit NONE = new Limit(0, 0);
+
+        static Limit parse(String s, Limit def) {
+            if (s == null) return def;
+            try {
+                String[] parts = s.split("/");
+                double rate = Double.parseDouble(parts[0].trim());
+                int burst = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : (int) Math.max(1, Math.ceil(rate));
+                return new Limit(rate, Math.max(1, burst));
+            } catch (RuntimeException e) {
+                return def;
+            }
+        }
+    }
+
+    private final long[] connInterval = new long[TYPES.length], connTolerance = new long[TYPES.length];
+    private final long[] gameInterval = new long[TYPES.length], gameTolerance = new long[TYPES.length];
+    private final Map<ClientConnection, AtomicLongArray> connBuckets = new ConcurrentHashMap<>();
+
+    public RateLimiter(Map<MessageType, Limit> perConnection, Map<MessageType, Limit> perGame) {
+        for (MessageType t : TYPES) {
+            set(connInterval, connTolerance, t, perConnection.getOrDefault(t, Limit.NONE));
+            set(gameInterval, gameTolerance, t, perGame.getOrDefault(t, Limit.NONE));
+        }
+    }
+
+    /** Limits from clueless.rate.* with defaults that no well-behaved client comes near. */
+    public static RateLimiter fromConfig() {
+        Map<MessageType, Limit> conn = new ConcurrentHashMap<>(), game = new ConcurrentHashMap<>();
+        Limit connDefault = Limit.parse(ConfigLoader.getString("clueless.rate.conn.default", null), new Limit(20, 40));
+        Limit gameDefault = Limit.parse(ConfigLoader.getString("clueless.rate.game.default", null), new Limit(60, 120));
+        for (MessageType t : TYPES) {
+            Limit c = connDefault, g = gameDefault;
+            switch (t) {
+                case JOIN_LOBBY, JOIN, RESYNC, RESUME -> c = new Limit(2, 5);
+                case NEW_GAME, START_GAME -> c = new Limit(1, 3);
+                case PING, PONG -> { c = new Limit(5, 10); g = Limit.NONE; } // not game traffic
+                default -> { }
+            }
+            conn.put(t, Limit.parse(ConfigLoader.getString("clueless.rate.conn." + t.name(), null), c));
+            game.put(t, Limit.parse(ConfigLoader.getString("clueless.rate.game." + t.name(), null), g));
+        }
+        return new RateLimiter(conn, game);
+    }
+
+    /** A limiter that admits everything. */
+    public static RateLimiter unlimited() {
+        return new RateLimiter(Map.of(), Map.of());
+    }
+
+    private static void set(long[] interval, long[] tolerance, MessageType t, Limit l) {
+        if (l.ratePerSec() <= 0) return; // interval 0 = unlimited
+        long iv = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / l.ratePerSec()));
+        interval[t.ordinal()] = iv;
+        tolerance[t.ordinal()] = iv * (l.burst() - 1);
+    }
+
+    /**
+     * Admits or rejects {@code cmd} against its connection's limit. On rejection the client
+     * has already been sent the ERROR reply and the caller should drop the message.
+     */
+    public boolean admit(ClientConnection out, Command cmd) {
+        int t = cmd.type().ordinal();
+        if (connInterval[t] != 0 && !take(connBuckets(out), t, connInterval[t], connTolerance[t], System.nanoTime())) {
+            REJECTED_CONN.increment();
+            return reject(out, cmd);
+        }
+        return true;
+    }
+
+    /** The same against the game's limit; {@code gameBuckets} is its session's, from {@link #newBuckets()}. */
+    boolean admitToGame(ClientConnection out, Command cmd, AtomicLongArray gameBuckets) {
+        int t = cmd.type().ordinal();
+        if (gameInterval[t] != 0 && !take(gameBuckets, t, gameInterval[t], gameTolerance[t], System.nanoTime())) {
+            REJECTED_GAME.increment();
+            return reject(out, cmd);
+        }
+        return true;
+    }
+
+    private AtomicLongArray connBuckets(ClientConnection out) {
+        AtomicLongArray b = connBuckets.get(out);
+        if (b != null) return b;
+        b = newBuckets();
+        AtomicLongArray prev = connBuckets.putIfAbsent(out, b);
+        if (prev != null) return prev;
+        out.addCloseListener(() -> connBuckets.remove(out));
+        return b;
+    }
+
+    static AtomicLongArray newBuckets() {
+        // slot holds the "theoretical arrival time"; Long.MIN_VALUE reads as "full bucket"
+        AtomicLongArray a = new AtomicLongArray(TYPES.length);
+        for (int i = 0; i < TYPES.length; i++) a.set(i, Long.MIN_VALUE);
+        return a;
+    }
+
+    // GCRA: admit if the bucket's next-full time is no more than `tolerance` ahead of now
+    private static boolean take(AtomicLongArray buckets, int i, long interval, long tolerance, long now) {
+        while (true) {
+            long tat = buckets.get(i);
+            long base = (tat == Long.MIN_VALUE || tat - now < 0) ? now : tat;
+            if (base - now > tolerance) return false;
+            if (buckets.compareAndSet(i, tat, base + interval)) return true;
+        }
+    }
+
+    private static boolean reject(ClientConnection out, Command cmd) {
+        int t = cmd.type().ordinal();
+        REJECTED_BY_TYPE[t].increment();
+        String cid = cmd.header().correlationId();
+        // the pre-encoded reply can't echo a correlationId; pipelining clients get their own
+        if (cid == null) out.send(REJECTION[t]);
+        else out.send(EventWriter.message("ERROR").str("correlationId", cid).str("message", "Rate limited").str("for", TYPES[t].name()).end());
+        return false;
+    }
+}
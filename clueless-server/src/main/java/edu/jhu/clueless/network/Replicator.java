@@ -0,0 +1,224 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandEncoder;
+import edu.jhu.clueless.util.ConfigLoader;
+import edu.jhu.clueless.util.LoggerUtil;
+import edu.jhu.clueless.util.Metrics;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Primary side of hot-standby replication. Every command a game applies (joins, lobby
+ * changes, moves, suggestions, disproves, accusations, turn ends, with the seed of any deal
+ * and the session token of any join)
+ * is shipped in order to a {@link Standby} over a Unix domain socket; the standby applies
+ * the same commands to its own engines and so holds the same games.
+ *
+ * The game loop only enqueues the command it already has; numbering, encoding and I/O
+ * happen on the replicator's thread, which lingers up to {@code clueless.replication.lingerMs}
+ * after the first event so a busy primary writes one batch and one flush per linger period.
+ * Shipped events stay buffered until the standby acknowledges them, are resent after a
+ * reconnect, and are capped at {@code clueless.replication.maxBacklog}. Past that, events are
+ * dropped, but each still uses up its sequence number: the standby sees the gap, stops
+ * applying and won't promote itself, since its games are no longer the primary's. It stays
+ * that way until it is rebuilt.
+ *
+ * Metrics: replication.shipped, replication.batches, replication.dropped, and once
+ * {@link #registerGauges} is called replication.lagMs (age of the oldest event the standby
+ * hasn't acknowledged) and replication.backlog.
+ */
+public final class Replicator implements AutoCloseable {
+    private static final LoggerUtil LOG = LoggerUtil.get("REPLICATION");
+    private static final LongAdder SHIPPED = Metrics.counter("replication.shipped");
+    private static final LongAdder BATCHES = Metrics.counter("replication.batches");
+    private static final LongAdder DROPPED = Metrics.counter("replication.dropped");
+    private static final int MAX_BATCH = 512;
+
+    private record Pending(Command cmd, Long dealSeed, String token, long enqueuedNanos) { }
+    private record Event(long seq, byte op, String body, long enqueuedNanos) { }
+
+    private final Path standby;
+    private final MessageRouter router;
+    private final long lingerNanos, retryMs;
+    private final int maxBacklog;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    // shipped but not yet acknowledged, in sequence order; appended by the writer, trimmed by the ack reader
+    private final ConcurrentLinkedDeque<Event> unacked = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger unackedCount = new AtomicInteger();
+    private volatile Forwarder.Link link; // writer thread sets and clears it
+    private volatile boolean closed;
+    private Thread writer;
+    private long nextSeq; // writer thread only
+    private boolean overflowing; // writer thread only
+
+    public Replicator(Path standby, MessageRouter router) {
+        this.standby = standby;
+        this.router = router;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(ConfigLoader.getLong("clueless.replication.lingerMs", 2));
+        this.retryMs = ConfigLoader.getLong("clueless.replication.retryMs", 500);
+        this.maxBacklog = ConfigLoader.getInt("clueless.replication.maxBacklog", 100_000);
+    }
+
+    /** A replicator to {@code clueless.replication.standby} (a socket path), or null if unset. */
+    public static Replicator fromConfig(MessageRouter router) {
+        String path = ConfigLoader.getString("clueless.replication.standby", "");
+        return path.isBlank() ? null : new Replicator(Path.of(path), router);
+    }
+
+    /** Publishes replication.lagMs and replication.backlog for this replicator; once, for the process's own. */
+    public void registerGauges() {
+        Metrics.gauge("replication.lagMs", this::lagMillis);
+        Metrics.gauge("replication.backlog", this::backlog);
+    }
+
+    /** From here on every command {@code router} applies is shipped. */
+    public void start() {
+        writer = Thread.ofPlatform().daemon().name("replicator").start(this::writeLoop);
+        router.setReplicator(this);
+        LOG.info("Replicating to standby at {}", standby);
+    }
+
+    /** Called on the game's loop right after {@code cmd} was applied. */
+    void ship(Command cmd, Long dealSeed, String token) {
+        queue.offer(new Pending(cmd, dealSeed, token, System.nanoTime()));
+    }
+
+    /** Milliseconds since the oldest event the standby hasn't acknowledged was applied here; 0 when caught up. */
+    public long lagMillis() {
+        Event e = unacked.peekFirst();
+        Pending p = queue.peek();
+        long oldest = e != null ? e.enqueuedNanos() : p != null ? p.enqueuedNanos() : 0;
+        return oldest == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest);
+    }
+
+    /** Events applied here that the standby hasn't acknowledged yet. */
+    public long backlog() { return unackedCount.get() + queue.size(); }
+
+    @Override
+    public void close() {
+        closed = true;
+        router.setReplicator(null);
+        if (writer != null) writer.interrupt();
+        Forwarder.Link l = link;
+        if (l != null) l.close();
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        long downUntil = 0;
+        while (!closed) {
+            try {
+                Pending first = queue.poll(retryMs, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    long deadline = System.nanoTime() + lingerNanos;
+                    while (batch.size() < MAX_BATCH) {
+                        long left = deadline - System.nanoTime();
+                        Pending p = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (p == null) break;
+                        batch.add(p);
+                        queue.drainTo(batch, MAX_BATCH - batch.size());
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            List<Event> fresh = new ArrayList<>(batch.size());
+            for (Pending p : batch) {
+                if (unackedCount.get() >= maxBacklog) {
+                    ++nextSeq; // never reused, so the standby can tell it missed this one
+                    DROPPED.increment();
+                    if (!overflowing) LOG.error("Standby backlog over {} events, dropping from event {}; the standby is out of sync", maxBacklog, nextSeq);
+                    overflowing = true;
+                    continue;
+                }
+                if (overflowing) {
+                    LOG.warn("Standby backlog under {} events again at event {}; it stays out of sync until rebuilt", maxBacklog, nextSeq + 1);
+                    overflowing = false;
+                }
+                Event e = encode(p);
+                unacked.addLast(e);
+                unackedCount.incrementAndGet();
+                fresh.add(e);
+            }
+            batch.clear();
+            if (unacked.isEmpty() || (link == null && System.currentTimeMillis() < downUntil)) continue;
+            try {
+                Forwarder.Link l = link;
+                // a new link starts with everything the standby hasn't acknowledged
+                Iterable<Event> toSend = fresh;
+                if (l == null) {
+                    l = connect();
+                    toSend = unacked;
+                }
+                int n = 0;
+                for (Event e : toSend) {
+                    LinkProtocol.write(l.out(), e.op(), e.seq(), e.body());
+                    n++;
+                }
+                l.out().flush();
+                if (n > 0) BATCHES.increment();
+                SHIPPED.add(fresh.size());
+            } catch (IOException e) {
+                if (!closed) LOG.warn("Standby link failed: {}", e.getMessage());
+                Forwarder.Link l = link;
+                if (l != null) l.close();
+                link = null;
+                downUntil = System.currentTimeMillis() + retryMs;
+            }
+        }
+    }
+
+    private Event encode(Pending p) {
+        long seq = ++nextSeq;
+        String json = CommandEncoder.toJson(p.cmd());
+        if (p.dealSeed() != null) return new Event(seq, LinkProtocol.DEAL, p.dealSeed() + " " + json, p.enqueuedNanos());
+        if (p.token() != null) return new Event(seq, LinkProtocol.JOINED, p.token() + " " + json, p.enqueuedNanos());
+        return new Event(seq, LinkProtocol.EVENT, json, p.enqueuedNanos());
+    }
+
+    private Forwarder.Link connect() throws IOException {
+        SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            ch.connect(UnixDomainSocketAddress.of(standby));
+        } catch (IOException e) {
+            Forwarder.closeQuietly(ch);
+            throw e;
+        }
+        Forwarder.Link l = Forwarder.Link.of(ch);
+        link = l;
+        Thread.ofPlatform().daemon().name("replicator-acks").start(() -> readAcks(l));
+        LOG.info("Connected to standby; {} events to (re)send", unackedCount.get());
+        return l;
+    }
+
+    private void readAcks(Forwarder.Link l) {
+        try {
+            LinkProtocol.Frame f;
+            while ((f = LinkProtocol.read(l.in())) != null) {
+                if (f.op() != LinkProtocol.ACK) continue;
+                Event e;
+                while ((e = unacked.peekFirst()) != null && e.seq() <= f.client()) {
+                    if (unacked.pollFirst() != null) unackedCount.decrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) LOG.warn("Standby acks ended: {}", e.getMessage());
+        } finally {
+            l.close();
+        }
+    }
+}
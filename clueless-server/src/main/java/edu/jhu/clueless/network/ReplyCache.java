@@ -0,0 +1,107 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.util.Metrics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a game answered its recent commands, keyed by (playerId, correlationId), so a client
+ * that retries after a timeout or reconnect is sent the original ACK or ERROR again instead
+ * of the command running twice. Entries expire after {@code ttlMs}; past {@code maxEntries}
+ * entries or {@code maxChars} characters of stored replies the oldest are dropped.
+ *
+ * Confined to the game's mailbox, like the rest of the session.
+ */
+final class ReplyCache {
+    private static final LongAdder HITS = Metrics.counter("idempotency.hits");
+    private static final LongAdder MISSES = Metrics.counter("idempotency.misses");
+    private static final LongAdder EVICTED = Metrics.counter("idempotency.evicted");
+
+    private record Entry(List<String> replies, int chars, long storedNanos) { }
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(); // oldest first
+    private final int maxEntries;
+    private final long maxChars, ttlNanos;
+    private long chars;
+    private String pendingKey;
+    private List<String> pending;
+
+    ReplyCache(int maxEntries, long maxChars, long ttlMs) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.maxChars = maxChars;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    /** Cache key for a request, or null if it has no correlationId to recognise a retry by. */
+    static String key(String playerId, String correlationId) {
+        if (correlationId == null || correlationId.isEmpty()) return null;
+        return (playerId != null ? playerId : "") + '\n' + correlationId;
+    }
+
+    /** The replies {@code key}'s first attempt was sent, or null if it hasn't been seen (or has expired). */
+    List<String> get(String key) {
+        expire(System.nanoTime());
+        Entry e = entries.get(key);
+        if (e == null) {
+            MISSES.increment();
+            return null;
+        }
+        HITS.increment();
+        return e.replies();
+    }
+
+    /** Starts collecting the replies to the command stored under {@code key}. */
+    void begin(String key) {
+        pendingKey = maxEntries > 0 ? key : null;
+        pending = null;
+    }
+
+    /** A reply sent to the command begun last; ignored outside begin()/commit(). */
+    void record(String reply) {
+        if (pendingKey == null) return;
+        if (pending == null) pending = new ArrayList<>(1);
+        pending.add(reply);
+    }
+
+    /** Stores what was recorded since begin(). */
+    void commit() {
+        String key = pendingKey;
+        List<String> replies = pending;
+        pendingKey = null;
+        pending = null;
+        if (key == null || replies == null) return;
+        int n = 0;
+        for (String r : replies) n += r.length();
+        if (n > maxChars) return; // one huge reply would only push everything else out
+        Entry old = entries.remove(key);
+        if (old != null) chars -= old.chars();
+        entries.put(key, new Entry(replies, n, System.nanoTime()));
+        chars += n;
+        while (entries.size() > maxEntries || chars > maxChars) evictOldest();
+    }
+
+    int size() { return entries.size(); }
+
+    private void expire(long now) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next().getValue();
+            if (now - e.storedNanos() < ttlNanos) return;
+            chars -= e.chars();
+            it.remove();
+        }
+    }
+
+    private void evictOldest() {
+        Iterator<Entry> it = entries.values().iterator();
+        chars -= it.next().chars();
+        it.remove();
+        EVICTED.increment();
+    }
+}
@@ -0,0 +1,205 @@
+package edu.jhu.clueless.network;
+
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.util.ConfigLoader;
+import edu.jhu.clueless.util.LoggerUtil;
+import edu.jhu.clueless.util.Metrics;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Standby side of hot-standby replication (see {@link Replicator}). Listens on a Unix domain
+ * socket for its primary and replays each shipped command through its own router, in order,
+ * so every game here tracks the primary's. What the replayed commands would have sent to
+ * clients goes to a connection that discards it.
+ *
+ * Promotion stops replication and leaves the router holding the games, ready for clients to
+ * reconnect (delta clients can RESYNC: state versions match the primary's). It happens on
+ * {@link #promote()} or, once a primary has connected, after it has been gone for
+ * {@code clueless.replication.promoteAfterMs} (default 3000; 0 disables). A standby that saw
+ * a gap in the primary's sequence numbers is out of sync: it stops applying and never
+ * promotes itself, though {@link #promote()} still works for an operator who wants it.
+ */
+public final class Standby implements AutoCloseable {
+    private static final LoggerUtil LOG = LoggerUtil.get("STANDBY");
+    private static final long ACCEPT_BACKOFF_MS = 100;
+    private static final LongAdder APPLIED = Metrics.counter("replication.applied");
+    private static final LongAdder OUT_OF_SYNC = Metrics.counter("replication.outOfSync");
+
+    private final Path socket;
+    private final MessageRouter router;
+    private final long promoteAfterMs;
+    private final AtomicLong appliedSeq = new AtomicLong();
+    private final CountDownLatch promoted = new CountDownLatch(1);
+    private final ClientConnection sink = new ClientConnection("replay", new OutboundQueue.Config(1, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0)) {
+        @Override protected void writeToTransport(OutboundMessage m) { }
+        @Override protected void closeTransport() { }
+    };
+    private volatile ServerSocketChannel server;
+    private volatile SocketChannel primary;
+    private volatile long primaryGoneAt; // 0 while connected or before the first primary
+    private volatile boolean outOfSync; // set by the serving thread on a gap in sequence numbers
+
+    public Standby(Path socket, MessageRouter router) {
+        this(socket, router, ConfigLoader.getLong("clueless.replication.promoteAfterMs", 3000));
+    }
+
+    public Standby(Path socket, MessageRouter router, long promoteAfterMs) {
+        this.socket = socket;
+        this.router = router;
+        this.promoteAfterMs = promoteAfterMs;
+    }
+
+    /** Publishes replication.appliedSeq for this standby; once, for the process's own. */
+    public void registerGauges() {
+        Metrics.gauge("replication.appliedSeq", appliedSeq::get);
+    }
+
+    /** Binds the socket file (replacing a stale one) and starts accepting the primary. */
+    public void start() throws IOException {
+        Files.deleteIfExists(socket);
+        ServerSocketChannel ch = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        ch.bind(UnixDomainSocketAddress.of(socket));
+        server = ch;
+        Thread.ofPlatform().daemon().name("standby").start(this::acceptLoop);
+        if (promoteAfterMs > 0) Thread.ofPlatform().daemon().name("standby-watch").start(this::watch);
+        LOG.info("Standby listening on {}", socket);
+    }
+
+    /** Sequence number of the last event taken from the primary; applied unless out of sync. */
+    public long appliedSeq() { return appliedSeq.get(); }
+
+    /** False once events from the primary went missing; only a rebuild brings it back. */
+    public boolean isInSync() { return !outOfSync; }
+
+    public boolean isPromoted() { return promoted.getCount() == 0; }
+
+    /** Blocks until this standby has been promoted. */
+    public void awaitPromotion() throws InterruptedException { promoted.await(); }
+
+    /** Stops taking events from the primary; the router's games are now the live ones. */
+    public synchronized void promote() {
+        if (isPromoted()) return;
+        ServerSocketChannel ss = server;
+        if (ss != null) Forwarder.closeQuietly(ss);
+        SocketChannel p = primary;
+        if (p != null) Forwarder.closeQuietly(p);
+        sink.close(); // drops the replay connection's game subscriptions
+        try { Files.deleteIfExists(socket); } catch (IOException ignored) { }
+        LOG.warn("Promoted at event {}", appliedSeq.get());
+        promoted.countDown();
+    }
+
+    @Override
+    public void close() { promote(); }
+
+    private void acceptLoop() {
+        while (!isPromoted()) {
+            SocketChannel ch;
+            try {
+                ch = server.accept();
+            } catch (IOException e) {
+                if (isPromoted() || !server.isOpen()) return;
+                // e.g. out of file descriptors; the primary keeps retrying, so keep listening
+                LOG.error("standby accept failed", e);
+                try {
+                    Thread.sleep(ACCEPT_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                continue;
+            }
+            primary = ch;
+            primaryGoneAt = 0;
+            LOG.info("Primary connected after event {}", appliedSeq.get());
+            try {
+                serve(Forwarder.Link.of(ch));
+            } finally {
+                primary = null;
+                primaryGoneAt = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private void serve(Forwarder.Link link) {
+        try {
+            LinkProtocol.Frame f;
+            while ((f = LinkProtocol.read(link.in())) != null) {
+                // events already applied come round again after a reconnect
+                long last = appliedSeq.get();
+                if (f.client() > last) {
+                    if (f.client() != last + 1 && !outOfSync) {
+                        // the primary dropped events (its backlog overflowed): every game here may now differ
+                        outOfSync = true;
+                        OUT_OF_SYNC.increment();
+                        LOG.error("Missed events {} to {} from the primary; no longer applying, and won't promote on its own",
+                                last + 1, f.client() - 1);
+                    }
+                    if (!outOfSync) apply(f);
+                    appliedSeq.set(f.client()); // still acknowledged, so the primary's backlog drains
+                }
+                // acknowledge once the batch that came in is used up
+                if (link.in().available() == 0) {
+                    LinkProtocol.write(link.out(), LinkProtocol.ACK, appliedSeq.get(), "");
+                    link.out().flush();
+                }
+            }
+        } catch (IOException e) {
+            if (!isPromoted()) LOG.warn("Primary link ended: {}", e.getMessage());
+        } finally {
+            link.close();
+        }
+    }
+
+    private void apply(LinkProtocol.Frame f) {
+        if (f.op() != LinkProtocol.DEAL && f.op() != LinkProtocol.JOINED && f.op() != LinkProtocol.EVENT) {
+            LOG.warn("Unexpected frame {} from primary", (char) f.op());
+            return;
+        }
+        try {
+            String json = f.body();
+            Long seed = null;
+            String token = null;
+            if (f.op() != LinkProtocol.EVENT) {
+                int sp = json.indexOf(' ');
+                if (f.op() == LinkProtocol.DEAL) seed = Long.parseLong(json.substring(0, sp));
+                else token = json.substring(0, sp);
+                json = json.substring(sp + 1);
+            }
+            Command cmd = CommandDecoder.decode(json);
+            router.replay(sink, cmd, seed, token);
+            APPLIED.increment();
+        } catch (RuntimeException e) {
+            LOG.error("Could not apply event " + f.client(), e);
+        }
+    }
+
+    private void watch() {
+        while (!isPromoted()) {
+            try {
+                Thread.sleep(Math.max(10, promoteAfterMs / 10));
+            } catch (InterruptedException e) {
+                return;
+            }
+            long gone = primaryGoneAt;
+            if (gone != 0 && System.currentTimeMillis() - gone >= promoteAfterMs) {
+                if (outOfSync) {
+                    LOG.error("Primary gone for {} ms, but this standby is out of sync; not promoting", promoteAfterMs);
+                    return;
+                }
+                LOG.warn("Primary gone for {} ms, promoting", promoteAfterMs);
+                promote();
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package edu.jhu.clueless.network;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-game state version plus the last published snapshot, from which change sets for
+ * delta-capable clients are derived.
+ *
+ * A change set has the same shapes as the full snapshot but only carries what changed:
+ * {@code players} (name -> changed fields), {@code rooms} (name -> occupants),
+ * {@code hallways} (id -> occupant), and the top-level {@code currentPlayer},
+ * {@code gameOver} and {@code winner}. Anything that changes the player set or a hand
+ * (join, deal) can't be expressed as a delta and forces a full snapshot.
+ *
+ * Callers hold {@link #lock()} from {@link #advance} until every recipient has been handed
+ * its message, so each connection's queue sees versions in order.
+ */
+final class StateDeltaTracker {
+
+    static final class Update {
+        final long version;
+        final long baseVersion;
+        /** Null when only a full snapshot will do. */
+        final Map<String, Object> delta;
+
+        Update(long version, long baseVersion, Map<String, Object> delta) {
+            this.version = version;
+            this.baseVersion = baseVersion;
+            this.delta = delta;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private long version;
+    private Map<String, Object> last; // as built by GameSnapshot.toMap
+
+    ReentrantLock lock() { return lock; }
+
+    // caller holds lock
+    long version() { return version; }
+
+    /** Record a new snapshot and bump the version. Caller holds lock. */
+    Update advance(Map<String, Object> snapshot, boolean forceFull) {
+        long base = version;
+        Map<String, Object> delta = (forceFull || last == null) ? null : diff(last, snapshot);
+        last = snapshot;
+        version++;
+        return new Update(version, base, delta);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> diff(Map<String, Object> prev, Map<String, Object> next) {
+        Map<String, Object> out = new LinkedHashMap<>();
+
+        Map<String, Map<String, Object>> pa = index((List<Map<String, Object>>) prev.get("players"), "name");
+        Map<String, Map<String, Object>> pb = index((List<Map<String, Object>>) next.get("players"), "name");
+        if (!pa.keySet().equals(pb.keySet())) return null;
+        Map<String, Object> players = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Object>> e : pb.entrySet()) {
+            Map<String, Object> before = pa.get(e.getKey());
+            Map<String, Object> changed = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> f : e.getValue().entrySet()) {
+                if (Objects.equals(f.getValue(), before.get(f.getKey()))) continue;
+                if (f.getKey().equals("hand") || f.getKey().equals("name")) return null;
+                changed.put(f.getKey(), f.getValue());
+            }
+            if (!changed.isEmpty()) players.put(e.getKey(), changed);
+        }
+        if (!players.isEmpty()) out.put("players", players);
+
+        Map<String, Object> rooms = changedField((List<Map<String, Object>>) prev.get("rooms"),
+                (List<Map<String, Object>>) next.get("rooms"), "name", "occupants");
+        if (rooms == null) return null;
+        if (!rooms.isEmpty()) out.put("rooms", rooms);
+
+        Map<String, Object> hallways = changedField((List<Map<String, Object>>) prev.get("hallways"),
+                (List<Map<String, Object>>) next.get("hallways"), "id", "occupant");
+        if (hallways == null) return null;
+        if (!hallways.isEmpty()) out.put("hallways", hallways);
+
+        for (String k : new String[] {"currentPlayer", "gameOver", "winner"}) {
+            if (!Objects.equals(prev.get(k), next.get(k))) out.put(k, next.get(k));
+        }
+        return out;
+    }
+
+    // key -> value of one field, for entries whose value differs; null if the key sets differ
+    private static Map<String, Object> changedField(List<Map<String, Object>> a, List<Map<String, Object>> b,
+                                                    String key, String field) {
+        Map<String, Map<String, Object>> ia = index(a, key), ib = index(b, key);
+        if (!ia.keySet().equals(ib.keySet())) return null;
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Object>> e : ib.entrySet()) {
+            Object v = e.getValue().get(field);
+            if (!Objects.equals(v, ia.get(e.getKey()).get(field))) out.put(e.getKey(), v);
+        }
+        return out;
+    }
+
+    private static Map<String, Map<String, Object>> index(List<Map<String, Object>> list, String key) {
+        Map<String, Map<String, Object>> m = new LinkedHashMap<>();
+        if (list != null) for (Map<String, Object> e : list) m.put(String.valueOf(e.get(key)), e);
+        return m;
+    }
+}
@@ -1,22 +1,22 @@
 package edu.jhu.clueless.network;
 
-import edu.jhu.clueless.network.dto.ClientMessage;
-import edu.jhu.clueless.util.JsonUtil;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.util.LoggerUtil;
 import org.java_websocket.WebSocket;
+import org.java_websocket.framing.TextFrame;
 import org.java_websocket.handshake.ClientHandshake;
 import org.java_websocket.server.WebSocketServer;
 
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.Writer;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class WsBridgeServer extends WebSocketServer {
+    private static final LoggerUtil LOG = LoggerUtil.get("WS");
     private final MessageRouter router;
-    private final Map<WebSocket, String> ids = new ConcurrentHashMap<>();
+    private final Map<WebSocket, WsConnection> connections = new ConcurrentHashMap<>();
 
     public WsBridgeServer(int port, MessageRouter router) {
         super(new InetSocketAddress(port));
@@ -24,50 +24,113 @@ public class WsBridgeServer extends WebSocketServer {
     }
 
     @Override public void onStart() {
-        System.out.println("[WS] Listening on ws://localhost:" + getPort());
+        LOG.info("Listening on ws://localhost:{}", getPort());
     }
 
     @Override public void onOpen(WebSocket conn, ClientHandshake handshake) {
-        String id = UUID.randomUUID().toString();
-        ids.put(conn, id);
-        System.out.println("[WS] Client connected: " + conn.getRemoteSocketAddress() + " id=" + id);
+        WsConnection c = new WsConnection(conn);
+        connections.put(conn, c);
+        Heartbeat.watch(c);
+        LOG.info("Client connected: {} id={}", conn.getRemoteSocketAddress(), c.getId());
     }
 
     @Override public void onClose(WebSocket conn, int code, String reason, boolean remote) {
-        System.out.println("[WS] Client disconnected: " + reason);
-        ids.remove(conn);
+        LOG.info("Client disconnected: {}", reason);
+        WsConnection c = connections.remove(conn);
+        if (c != null) c.close();
     }
 
     @Override public void onMessage(WebSocket conn, String message) {
-        String id = ids.getOrDefault(conn, "ws-unknown");
+        WsConnection c = connections.get(conn);
+        if (c == null) return;
+        c.touch();
         try {
-            ClientMessage msg = JsonUtil.fromJson(message, ClientMessage.class);
-            PrintWriter out = new PrintWriter(new WsWriter(conn), true);
-            router.route(id, msg, out);
+            router.route(c, CommandDecoder.decode(message));
         } catch (Exception e) {
-            try { conn.send("{\"type\":\"ERROR\",\"message\":\"" + esc(e.getMessage()) + "\"}"); } catch (Exception ignore) {}
+            c.send(EventWriter.error(e.getMessage()));
         }
     }
 
-    @Override public void onError(WebSocket conn, Exception ex) {
-        System.out.println("[WS] Error: " + ex.getMessage());
+    // a client that sends binary frames gets BinaryCodec replies from then on
+    @Override public void onMessage(WebSocket conn, ByteBuffer message) {
+        WsConnection c = connections.get(conn);
+        if (c == null) return;
+        c.touch();
+        c.setBinaryProtocol(true);
+        try {
+            router.route(c, BinaryCodec.decodeCommand(message));
+        } catch (Exception e) {
+            c.send(EventWriter.error(e.getMessage()));
+        }
     }
 
-    private static String esc(String s) { return s == null ? "" : s.replace("\\","\\\\").replace("\"","\\\""); }
+    @Override public void onError(WebSocket conn, Exception ex) {
+        LOG.warn("Error: {}", ex.getMessage());
+    }
 
-    static final class WsWriter extends Writer {
+    /**
+     * Outbound side of one WebSocket. Java-WebSocket's send() only enqueues into the
+     * library's own unbounded buffer, so we hold messages back in our bounded queue while
+     * that buffer is still non-empty. Snapshot conflation is on for these connections:
+     * a browser on a bad link gets the newest board, not a backlog of stale ones.
+     * With a flush tick configured, a tick's worth of JSON messages goes out as one array frame.
+     */
+    static final class WsConnection extends ClientConnection {
         private final WebSocket conn;
-        private final StringBuilder buf = new StringBuilder();
-        WsWriter(WebSocket conn) { this.conn = conn; }
-        @Override public void write(char[] cbuf, int off, int len) { buf.append(cbuf, off, len); }
-        @Override public void flush() throws IOException {
-            if (buf.length() == 0) return;
-            String s = buf.toString();
-            buf.setLength(0);
-            if (conn != null && conn.isOpen()) {
-                try { conn.send(s); } catch (Exception e) { throw new IOException(e); }
+        private final boolean arrayFrames;
+
+        WsConnection(WebSocket conn) {
+            this(conn, OutboundQueue.Config.forWebSocket());
+        }
+
+        private WsConnection(WebSocket conn, OutboundQueue.Config config) {
+            super(java.util.UUID.randomUUID().toString(), config);
+            this.conn = conn;
+            this.arrayFrames = config.getFlushTickMs() > 0;
+        }
+
+        // conn.send(String) would UTF-8 encode the text again for every subscriber; instead
+        // frame the message's shared bytes. The frame itself is per connection because the
+        // library moves the payload buffer's position while writing it.
+        @Override protected void writeToTransport(OutboundMessage m) {
+            if (!conn.isOpen()) return;
+            if (usesBinaryProtocol()) {
+                conn.send(ByteBuffer.wrap(m.binary()));
+                return;
+            }
+            sendText(m.utf8Buffer());
+        }
+
+        @Override protected void writeBatchToTransport(List<OutboundMessage> batch) {
+            if (!arrayFrames || batch.size() == 1 || usesBinaryProtocol()) {
+                for (OutboundMessage m : batch) writeToTransport(m);
+                return;
+            }
+            if (!conn.isOpen()) return;
+            int len = batch.size() + 1;
+            for (OutboundMessage m : batch) len += m.utf8().length;
+            ByteBuffer array = ByteBuffer.allocate(len);
+            array.put((byte) '[');
+            for (int i = 0; i < batch.size(); i++) {
+                if (i > 0) array.put((byte) ',');
+                array.put(batch.get(i).utf8());
             }
+            array.put((byte) ']');
+            array.flip();
+            sendText(array);
+        }
+
+        private void sendText(ByteBuffer utf8) {
+            TextFrame frame = new TextFrame();
+            frame.setPayload(utf8);
+            frame.setFin(true);
+            conn.sendFrame(frame);
+        }
+
+        @Override protected boolean transportWritable() { return !conn.hasBufferedData(); }
+
+        @Override protected void closeTransport() {
+            if (conn.isOpen()) conn.close();
         }
-        @Override public void close() throws IOException { flush(); }
     }
-}
\ No newline at end of file
+}
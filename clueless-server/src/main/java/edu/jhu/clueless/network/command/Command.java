@@ -0,0 +1,43 @@
+package edu.jhu.clueless.network.command;
+
+import edu.jhu.clueless.network.MessageType;
+
+/**
+ * A client request, decoded straight into its typed form by {@link CommandDecoder}.
+ * Aliases ("player"/"playerId"/"name", "to"/"room", ...) are resolved at decode time, so
+ * the router only ever sees one canonical field per value.
+ */
+public sealed interface Command {
+
+    Header header();
+
+    default MessageType type() { return header().type(); }
+    default String gameId() { return header().gameId(); }
+    default String playerId() { return header().playerId(); }
+
+    /**
+     * Fields every request may carry. {@code gameId} is never blank ("default" if absent);
+     * {@code playerId} may be null. {@code deltas} is null unless the client sent it.
+     */
+    record Header(MessageType type, String correlationId, String gameId, String playerId, Boolean deltas) { }
+
+    record Ping(Header header) implements Command { }
+    record JoinLobby(Header header) implements Command { }
+    record SelectCharacter(Header header, String character) implements Command { }
+    record UnselectCharacter(Header header) implements Command { }
+    record SetReady(Header header, boolean ready) implements Command { }
+    record StartGame(Header header) implements Command { }
+    record Join(Header header, String character) implements Command { }
+    record Move(Header header, String room) implements Command { }
+    record MoveToHallway(Header header, String hallway) implements Command { }
+    record MoveFromHallway(Header header, String room) implements Command { }
+    record Suggest(Header header, String suspect, String weapon, String room) implements Command { }
+    record DisproveResponse(Header header, String card, String suggester) implements Command { }
+    record Accuse(Header header, String suspect, String weapon, String room) implements Command { }
+    record EndTurn(Header header) implements Command { }
+    record NewGame(Header header, boolean keepPlayers) implements Command { }
+    record Resync(Header header) implements Command { }
+    record Pong(Header header) implements Command { }
+    /** {@code lastSeq} is the last event seq the client saw, or -1 if it has none. */
+    record Resume(Header header, String token, long lastSeq) implements Command { }
+}
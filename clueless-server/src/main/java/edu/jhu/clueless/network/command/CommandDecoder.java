@@ -0,0 +1,214 @@
+package edu.jhu.clueless.network.command;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import edu.jhu.clueless.network.MessageType;
+import edu.jhu.clueless.network.dto.ClientMessage;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+/**
+ * Streams a JSON request straight into a {@link Command} with Gson's JsonReader: no
+ * ClientMessage, no payload map, no Double-boxed numbers. Payload keys land in fixed slots
+ * (the closed set of names any client sends), aliases are resolved once the type is known,
+ * and anything unknown or longer than {@link #MAX_VALUE_CHARS} is rejected on the spot.
+ * Errors are IllegalArgumentExceptions whose message is fit to send back to the client.
+ */
+public final class CommandDecoder {
+
+    public static final int MAX_VALUE_CHARS = 256;
+
+    /** Every payload key the server understands, across all message types. */
+    private enum Field {
+        PLAYER, PLAYER_ID, NAME, CHARACTER, CHARACTER_NAME, READY, TO, ROOM, HALLWAY, ID, HALLWAY_ID,
+        SUSPECT, WEAPON, CARD, CHOSEN, CHOSEN_CARD, SUGGESTER, SUGGESTED_BY, KEEP_PLAYERS, DELTAS, TOKEN, LAST_SEQ
+    }
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private CommandDecoder() { }
+
+    public static Command decode(String json) {
+        try (JsonReader r = new JsonReader(new StringReader(json))) {
+            Command c = decode(r);
+            if (r.peek() != JsonToken.END_DOCUMENT) throw new IllegalArgumentException("Trailing data after message");
+            return c;
+        } catch (IOException | IllegalStateException e) {
+            throw new IllegalArgumentException("Malformed JSON: " + e.getMessage());
+        }
+    }
+
+    /** Reads exactly one request object from {@code r}. */
+    public static Command decode(JsonReader r) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) throw new IllegalArgumentException("Expected a JSON object");
+        MessageType type = null;
+        String correlationId = null, gameId = null, playerId = null;
+        String[] fields = new String[Field.values().length];
+        r.beginObject();
+        while (r.hasNext()) {
+            String key = r.nextName();
+            switch (key) {
+                case "type": type = typeOf(scalar(r, key)); break;
+                case "correlationId": correlationId = scalar(r, key); break;
+                case "gameId": gameId = scalar(r, key); break;
+                case "playerId": playerId = scalar(r, key); break;
+                case "payload": readPayload(r, fields); break;
+                default: throw new IllegalArgumentException("Unknown field " + clip(key));
+            }
+        }
+        r.endObject();
+        return build(type, correlationId, gameId, playerId, fields);
+    }
+
+    /**
+     * For code that builds a ClientMessage in memory rather than reading one off the wire;
+     * every transport, binary included, goes through decode(). Payload keys and values are
+     * checked as decode() checks them, but a ClientMessage can't carry unknown top-level fields.
+     */
+    public static Command fromMessage(ClientMessage msg) {
+        if (msg == null) return build(null, null, null, null, null);
+        String[] fields = new String[Field.values().length];
+        if (msg.getPayload() != null) {
+            for (Map.Entry<String, Object> e : msg.getPayload().entrySet()) {
+                Field f = fieldOf(e.getKey());
+                Object v = e.getValue();
+                if (v instanceof Map || v instanceof Iterable || v instanceof Object[]) {
+                    throw new IllegalArgumentException("Field " + clip(e.getKey()) + " must be a string, number or boolean");
+                }
+                if (v != null) fields[f.ordinal()] = check(e.getKey(), String.valueOf(v));
+            }
+        }
+        return build(msg.getType(), msg.getCorrelationId(), msg.getGameId(), msg.getPlayerId(), fields);
+    }
+
+    private static void readPayload(JsonReader r, String[] fields) throws IOException {
+        if (r.peek() == JsonToken.NULL) { r.nextNull(); return; }
+        if (r.peek() != JsonToken.BEGIN_OBJECT) throw new IllegalArgumentException("payload must be an object");
+        r.beginObject();
+        while (r.hasNext()) {
+            String key = r.nextName();
+            fields[fieldOf(key).ordinal()] = scalar(r, key);
+        }
+        r.endObject();
+    }
+
+    private static Field fieldOf(String key) {
+        switch (key) {
+            case "player": return Field.PLAYER;
+            case "playerId": return Field.PLAYER_ID;
+            case "name": return Field.NAME;
+            case "character": return Field.CHARACTER;
+            case "characterName": return Field.CHARACTER_NAME;
+            case "ready": return Field.READY;
+            case "to": return Field.TO;
+            case "room": return Field.ROOM;
+            case "hallway": return Field.HALLWAY;
+            case "id": return Field.ID;
+            case "hallwayId": return Field.HALLWAY_ID;
+            case "suspect": return Field.SUSPECT;
+            case "weapon": return Field.WEAPON;
+            case "card": return Field.CARD;
+            case "chosen": return Field.CHOSEN;
+            case "chosenCard": return Field.CHOSEN_CARD;
+            case "suggester": return Field.SUGGESTER;
+            case "suggestedBy": return Field.SUGGESTED_BY;
+            case "keepPlayers": return Field.KEEP_PLAYERS;
+            case "deltas": return Field.DELTAS;
+            case "token": return Field.TOKEN;
+            case "lastSeq": return Field.LAST_SEQ;
+            default: throw new IllegalArgumentException("Unknown payload field " + clip(key));
+        }
+    }
+
+    // strings, numbers and booleans all come back as their text; null stays null
+    private static String scalar(JsonReader r, String key) throws IOException {
+        switch (r.peek()) {
+            case NULL: r.nextNull(); return null;
+            case BOOLEAN: return r.nextBoolean() ? "true" : "false";
+            case STRING:
+            case NUMBER: return check(key, r.nextString());
+            default: throw new IllegalArgumentException("Field " + clip(key) + " must be a string, number or boolean");
+        }
+    }
+
+    private static String check(String key, String v) {
+        if (v.length() > MAX_VALUE_CHARS) throw new IllegalArgumentException("Field " + clip(key) + " too long");
+        return v;
+    }
+
+    private static MessageType typeOf(String name) {
+        if (name == null) return null;
+        for (MessageType t : TYPES) if (t.name().equals(name)) return t;
+        return null;
+    }
+
+    private static Command build(MessageType type, String correlationId, String gameId, String playerId, String[] f) {
+        if (type == null) throw new IllegalArgumentException("Invalid or missing type");
+        boolean lobbyStyle = type == MessageType.JOIN_LOBBY || type == MessageType.SELECT_CHARACTER
+                || type == MessageType.UNSELECT_CHARACTER || type == MessageType.SET_READY
+                || type == MessageType.START_GAME || type == MessageType.JOIN;
+        String player = nz(playerId, lobbyStyle ? first(f, Field.PLAYER, Field.PLAYER_ID, Field.NAME) : first(f, Field.PLAYER, Field.PLAYER_ID));
+        String deltas = f[Field.DELTAS.ordinal()];
+        Command.Header h = new Command.Header(type, correlationId, nz(gameId, "default"), player,
+                deltas == null ? null : bool(deltas, false));
+        switch (type) {
+            case PING: return new Command.Ping(h);
+            case JOIN_LOBBY: return new Command.JoinLobby(h);
+            case SELECT_CHARACTER: return new Command.SelectCharacter(h, first(f, Field.CHARACTER));
+            case UNSELECT_CHARACTER: return new Command.UnselectCharacter(h);
+            case SET_READY: return new Command.SetReady(h, Boolean.parseBoolean(f[Field.READY.ordinal()]));
+            case START_GAME: return new Command.StartGame(h);
+            case JOIN: return new Command.Join(h, first(f, Field.CHARACTER, Field.CHARACTER_NAME));
+            case MOVE: return new Command.Move(h, first(f, Field.TO, Field.ROOM));
+            case MOVE_TO_HALLWAY: return new Command.MoveToHallway(h, first(f, Field.HALLWAY, Field.ID, Field.HALLWAY_ID));
+            case MOVE_FROM_HALLWAY: return new Command.MoveFromHallway(h, first(f, Field.TO, Field.ROOM));
+            case SUGGEST: return new Command.Suggest(h, first(f, Field.SUSPECT), first(f, Field.WEAPON), first(f, Field.ROOM));
+            case DISPROVE_RESPONSE: return new Command.DisproveResponse(h, first(f, Field.CARD, Field.CHOSEN, Field.CHOSEN_CARD),
+                    first(f, Field.SUGGESTER, Field.SUGGESTED_BY));
+            case ACCUSE: return new Command.Accuse(h, first(f, Field.SUSPECT), first(f, Field.WEAPON), first(f, Field.ROOM));
+            case END_TURN: return new Command.EndTurn(h);
+            case NEW_GAME: return new Command.NewGame(h, bool(f[Field.KEEP_PLAYERS.ordinal()], true));
+            case RESYNC: return new Command.Resync(h);
+            case PONG: return new Command.Pong(h);
+            case RESUME: return new Command.Resume(h, first(f, Field.TOKEN), seq(f[Field.LAST_SEQ.ordinal()]));
+            default: throw new IllegalArgumentException("Unknown type");
+        }
+    }
+
+    // fixed-arity so alias resolution doesn't allocate a varargs array per field
+    private static String first(String[] f, Field a) {
+        return f[a.ordinal()];
+    }
+    private static String first(String[] f, Field a, Field b) {
+        String v = f[a.ordinal()];
+        return v != null ? v : f[b.ordinal()];
+    }
+    private static String first(String[] f, Field a, Field b, Field c) {
+        String v = first(f, a, b);
+        return v != null ? v : f[c.ordinal()];
+    }
+
+    // same spellings MessageRouter has always accepted for keepPlayers
+    private static boolean bool(String v, boolean def) {
+        if (v == null) return def;
+        String s = v.trim().toLowerCase();
+        if (s.equals("true") || s.equals("1") || s.equals("yes") || s.equals("y")) return true;
+        if (s.equals("false") || s.equals("0") || s.equals("no") || s.equals("n")) return false;
+        return def;
+    }
+
+    private static long seq(String v) {
+        if (v == null) return -1;
+        try {
+            return Long.parseLong(v.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("lastSeq must be a whole number");
+        }
+    }
+
+    private static String nz(String v, String def) { return (v == null || v.isBlank()) ? def : v; }
+
+    private static String clip(String s) { return s.length() > 32 ? s.substring(0, 32) + "..." : s; }
+}
@@ -0,0 +1,79 @@
+package edu.jhu.clueless.network.command;
+
+/**
+ * The inverse of {@link CommandDecoder}: writes a {@link Command} back out as a single-line
+ * JSON request using the canonical payload keys, so {@code decode(toJson(c))} equals
+ * {@code c}. Used to hand a request to another node; null fields are left out.
+ */
+public final class CommandEncoder {
+
+    private CommandEncoder() { }
+
+    // written by hand rather than through Gson's JsonWriter: every forwarded and replicated
+    // command comes through here, and it's a handful of flat string fields
+    public static String toJson(Command cmd) {
+        Command.Header h = cmd.header();
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"type\":\"").append(h.type().name()).append('"');
+        str(sb, "correlationId", h.correlationId());
+        str(sb, "gameId", h.gameId());
+        str(sb, "playerId", h.playerId());
+        sb.append(",\"payload\":{");
+        int payload = sb.length();
+        if (h.deltas() != null) lit(sb, "deltas", h.deltas().toString());
+        switch (cmd) {
+            case Command.SelectCharacter c -> str(sb, "character", c.character());
+            case Command.SetReady c -> lit(sb, "ready", Boolean.toString(c.ready()));
+            case Command.Join c -> str(sb, "character", c.character());
+            case Command.Move c -> str(sb, "to", c.room());
+            case Command.MoveToHallway c -> str(sb, "hallway", c.hallway());
+            case Command.MoveFromHallway c -> str(sb, "to", c.room());
+            case Command.Suggest c -> {
+                str(sb, "suspect", c.suspect());
+                str(sb, "weapon", c.weapon());
+                str(sb, "room", c.room());
+            }
+            case Command.DisproveResponse c -> {
+                str(sb, "card", c.card());
+                str(sb, "suggester", c.suggester());
+            }
+            case Command.Accuse c -> {
+                str(sb, "suspect", c.suspect());
+                str(sb, "weapon", c.weapon());
+                str(sb, "room", c.room());
+            }
+            case Command.NewGame c -> lit(sb, "keepPlayers", Boolean.toString(c.keepPlayers()));
+            case Command.Resume c -> {
+                str(sb, "token", c.token());
+                if (c.lastSeq() >= 0) lit(sb, "lastSeq", Long.toString(c.lastSeq()));
+            }
+            default -> { }
+        }
+        if (sb.length() > payload) sb.deleteCharAt(payload); // every field wrote a leading comma
+        return sb.append("}}").toString();
+    }
+
+    private static void lit(StringBuilder sb, String key, String json) {
+        sb.append(",\"").append(key).append("\":").append(json);
+    }
+
+    private static void str(StringBuilder sb, String key, String value) {
+        if (value == null) return;
+        sb.append(",\"").append(key).append("\":\"");
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
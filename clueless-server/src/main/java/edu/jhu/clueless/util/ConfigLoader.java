@@ -1,5 +1,41 @@
 package edu.jhu.clueless.util;
 
+import java.util.Locale;
+
+/**
+ * Reads server settings from JVM system properties, falling back to environment
+ * variables. A key such as "clueless.tcp.mode" is looked up as the system property
+ * of the same name and then as the environment variable CLUELESS_TCP_MODE.
+ */
 public class ConfigLoader {
-    
+
+    private ConfigLoader() { }
+
+    public static String getString(String key, String def) {
+        String v = System.getProperty(key);
+        if (v == null || v.isBlank()) v = System.getenv(envName(key));
+        return (v == null || v.isBlank()) ? def : v.trim();
+    }
+
+    public static int getInt(String key, int def) {
+        String v = getString(key, null);
+        if (v == null) return def;
+        try { return Integer.parseInt(v); } catch (NumberFormatException e) { return def; }
+    }
+
+    public static long getLong(String key, long def) {
+        String v = getString(key, null);
+        if (v == null) return def;
+        try { return Long.parseLong(v); } catch (NumberFormatException e) { return def; }
+    }
+
+    public static boolean getBoolean(String key, boolean def) {
+        String v = getString(key, null);
+        if (v == null) return def;
+        return v.equalsIgnoreCase("true") || v.equals("1") || v.equalsIgnoreCase("yes");
+    }
+
+    private static String envName(String key) {
+        return key.replace('.', '_').replace('-', '_').toUpperCase(Locale.ROOT);
+    }
 }
@@ -0,0 +1,59 @@
+package edu.jhu.clueless.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram over microseconds, log-linear: each power of two is split into
+ * four buckets, so a reported percentile is within 25% of the true value. Covers 1 us to
+ * more than a day in 148 counters; anything larger lands in the last bucket. record() is a
+ * couple of shifts and one atomic add, so it is fine on a hot path.
+ */
+public final class Histogram {
+    private static final int SUB_BITS = 2;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (36 + 1) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    public void record(long micros) {
+        counts.incrementAndGet(bucket(Math.max(0, micros)));
+        total.increment();
+    }
+
+    public long count() { return total.sum(); }
+
+    /** Upper bound, in microseconds, of the bucket holding the {@code p}-th percentile (0..100). */
+    public long percentile(double p) {
+        long n = 0;
+        long[] snap = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) n += snap[i] = counts.get(i);
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(n * Math.min(100, Math.max(0, p)) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snap[i];
+            if (seen >= Math.max(1, rank)) return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    // values below SUB get a bucket each; above that, 4 buckets per power of two
+    private static int bucket(long v) {
+        if (v < SUB) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v); // >= SUB_BITS
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+        return Math.min(BUCKETS - 1, (exp - SUB_BITS + 1) * SUB + sub);
+    }
+
+    private static long upperBound(int b) {
+        if (b < SUB) return b;
+        int exp = b / SUB + SUB_BITS - 1, sub = b % SUB;
+        return ((long) (SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+}
@@ -1,16 +1,28 @@
 package edu.jhu.clueless.util;
 
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
 
 
 public class JsonUtil {
     private static final Gson gson = new Gson();
+    private static final Gson gsonWithNulls = new GsonBuilder().serializeNulls().create();
 
     public static String toJson(Object obj){
         return gson.toJson(obj);
     }
 
+    // for change sets, where a field going back to null is itself the change
+    public static String toJsonWithNulls(Object obj){
+        return gsonWithNulls.toJson(obj);
+    }
+
     public static <T> T fromJson(String json, Class<T> clazz){
         return gson.fromJson(json, clazz);
     }
-}
\ No newline at end of file
+
+    public static <T> T fromJson(JsonElement json, Class<T> clazz){
+        return gson.fromJson(json, clazz);
+    }
+}
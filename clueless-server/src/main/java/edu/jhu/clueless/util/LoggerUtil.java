@@ -1,5 +1,368 @@
 package edu.jhu.clueless.util;
 
-public class LoggerUtil {
-    
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous logger. Request threads only claim a slot in a bounded lock-free ring and
+ * store the format string and its arguments; a single daemon appender formats and writes
+ * them, so nothing on the hot path takes the console lock or builds a string for a level
+ * that is switched off. When the ring is full the record is dropped and counted
+ * ("log.dropped") rather than making the caller wait. A record whose argument throws while
+ * being formatted is skipped and counted ("log.failed").
+ *
+ * Messages use {} placeholders, filled in on the appender thread. Payload dumps (every
+ * inbound and outbound JSON line) go through payload(), which is DEBUG and additionally
+ * sampled 1-in-N.
+ *
+ * Settings (system property or environment variable, see ConfigLoader):
+ *   clueless.log.level          TRACE|DEBUG|INFO|WARN|ERROR|OFF (default INFO)
+ *   clueless.log.file           log file path; stdout if unset
+ *   clueless.log.maxBytes       rotate the file at this size (default 10 MB)
+ *   clueless.log.maxFiles       rotated files to keep, file.1 .. file.N (default 5)
+ *   clueless.log.bufferSize     ring slots, rounded up to a power of two (default 8192)
+ *   clueless.log.payloadSample  log 1 in N payloads when DEBUG is on (default 1)
+ *   clueless.log.payloadMaxChars  truncate dumped payloads (default 2048)
+ */
+public final class LoggerUtil {
+
+    public enum Level { TRACE, DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final LongAdder DROPPED = Metrics.counter("log.dropped");
+    private static final LongAdder WRITTEN = Metrics.counter("log.written");
+    private static final LongAdder FAILED = Metrics.counter("log.failed");
+
+    private static volatile int threshold = parseLevel(ConfigLoader.getString("clueless.log.level", "INFO")).ordinal();
+    private static volatile int payloadSample = Math.max(1, ConfigLoader.getInt("clueless.log.payloadSample", 1));
+    private static final String PAYLOAD = "<payload>"; // marks payload() records, compared by identity
+    private static final int PAYLOAD_MAX_CHARS = ConfigLoader.getInt("clueless.log.payloadMaxChars", 2048);
+
+    private static final Ring RING = new Ring(ConfigLoader.getInt("clueless.log.bufferSize", 8192));
+    private static final Appender APPENDER = new Appender(defaultSink());
+
+    static {
+        Thread t = new Thread(APPENDER, "log-appender");
+        t.setDaemon(true);
+        t.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(LoggerUtil::flush, "log-flush"));
+    }
+
+    private final String tag;
+
+    private LoggerUtil(String tag) { this.tag = tag; }
+
+    /** A logger whose lines are prefixed with [tag]. Cheap; keep one in a static final. */
+    public static LoggerUtil get(String tag) {
+        return new LoggerUtil(tag);
+    }
+
+    public static void setLevel(Level level) { threshold = level.ordinal(); }
+    public static Level getLevel() { return Level.values()[threshold]; }
+    public static void setPayloadSample(int oneIn) { payloadSample = Math.max(1, oneIn); }
+
+    /**
+     * Sends output to a size-capped rotating file, or back to stdout when {@code file} is
+     * null. Meant for startup and tests: records queued before the switch are written first.
+     */
+    public static void setOutput(Path file, long maxBytes, int maxFiles) throws IOException {
+        flush();
+        APPENDER.swap(file == null ? new StdoutSink() : new RollingFile(file, maxBytes, maxFiles));
+    }
+
+    /** Blocks (up to 5s) until everything logged so far has been written and flushed. */
+    public static void flush() {
+        long target = RING.tail.get();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (APPENDER.flushedTo < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(APPENDER.thread);
+            LockSupport.parkNanos(200_000);
+        }
+    }
+
+    public boolean isEnabled(Level level) { return level.ordinal() >= threshold; }
+    public boolean isDebugEnabled() { return Level.DEBUG.ordinal() >= threshold; }
+
+    public void trace(String msg) { log(Level.TRACE, msg, null, null, null, null); }
+    public void trace(String fmt, Object a, Object b) { log(Level.TRACE, fmt, a, b, null, null); }
+
+    public void debug(String msg) { log(Level.DEBUG, msg, null, null, null, null); }
+    public void debug(String fmt, Object a) { log(Level.DEBUG, fmt, a, null, null, null); }
+    public void debug(String fmt, Object a, Object b) { log(Level.DEBUG, fmt, a, b, null, null); }
+    public void debug(String fmt, Object a, Object b, Object c) { log(Level.DEBUG, fmt, a, b, c, null); }
+    /** The supplier runs on the appender thread, and only if DEBUG is enabled. */
+    public void debug(Supplier<String> msg) { if (isEnabled(Level.DEBUG)) log(Level.DEBUG, null, msg, null, null, null); }
+
+    public void info(String msg) { log(Level.INFO, msg, null, null, null, null); }
+    public void info(String fmt, Object a) { log(Level.INFO, fmt, a, null, null, null); }
+    public void info(String fmt, Object a, Object b) { log(Level.INFO, fmt, a, b, null, null); }
+    public void info(String fmt, Object a, Object b, Object c) { log(Level.INFO, fmt, a, b, c, null); }
+
+    public void warn(String msg) { log(Level.WARN, msg, null, null, null, null); }
+    public void warn(String fmt, Object a) { log(Level.WARN, fmt, a, null, null, null); }
+    public void warn(String fmt, Object a, Object b) { log(Level.WARN, fmt, a, b, null, null); }
+    public void warn(String msg, Throwable t) { log(Level.WARN, msg, null, null, null, t); }
+
+    public void error(String msg) { log(Level.ERROR, msg, null, null, null, null); }
+    public void error(String fmt, Object a) { log(Level.ERROR, fmt, a, null, null, null); }
+    public void error(String fmt, Object a, Object b) { log(Level.ERROR, fmt, a, b, null, null); }
+    public void error(String msg, Throwable t) { log(Level.ERROR, msg, null, null, null, t); }
+
+    /** A wire payload ("IN", "OUT", "BROADCAST"); DEBUG, sampled, truncated when written. */
+    public void payload(String label, String json) {
+        if (Level.DEBUG.ordinal() < threshold) return;
+        int n = payloadSample;
+        if (n > 1 && ThreadLocalRandom.current().nextInt(n) != 0) return;
+        log(Level.DEBUG, PAYLOAD, label, json, null, null);
+    }
+
+    private void log(Level level, String fmt, Object a, Object b, Object c, Throwable t) {
+        if (level.ordinal() < threshold) return;
+        if (!RING.offer(System.currentTimeMillis(), level, tag, Thread.currentThread().getName(), fmt, a, b, c, t)) {
+            DROPPED.increment();
+        }
+    }
+
+    private static Level parseLevel(String s) {
+        try { return Level.valueOf(s.trim().toUpperCase()); } catch (IllegalArgumentException e) { return Level.INFO; }
+    }
+
+    private static Sink defaultSink() {
+        String file = ConfigLoader.getString("clueless.log.file", null);
+        if (file == null) return new StdoutSink();
+        try {
+            return new RollingFile(Paths.get(file), ConfigLoader.getLong("clueless.log.maxBytes", 10L * 1024 * 1024),
+                    ConfigLoader.getInt("clueless.log.maxFiles", 5));
+        } catch (IOException e) {
+            System.err.println("[LOG] cannot open " + file + " (" + e.getMessage() + "), using stdout");
+            return new StdoutSink();
+        }
+    }
+
+    /**
+     * Bounded multi-producer, single-consumer ring. Each slot carries a sequence number:
+     * equal to the position when free for that lap, position + 1 once published. Producers
+     * claim a position with one CAS on tail and never wait for each other's writes.
+     */
+    private static final class Ring {
+        final Slot[] slots;
+        final int mask;
+        final AtomicLong tail = new AtomicLong();
+        long head; // appender thread only
+
+        Ring(int requested) {
+            int size = Integer.highestOneBit(Math.max(2, requested) - 1) << 1;
+            slots = new Slot[size];
+            mask = size - 1;
+            for (int i = 0; i < size; i++) slots[i] = new Slot(i);
+        }
+
+        boolean offer(long time, Level level, String tag, String thread, String fmt, Object a, Object b, Object c, Throwable t) {
+            long pos;
+            Slot s;
+            while (true) {
+                pos = tail.get();
+                s = slots[(int) pos & mask];
+                long seq = s.seq;
+                if (seq == pos) {
+                    if (tail.compareAndSet(pos, pos + 1)) break;
+                } else if (seq < pos) {
+                    return false; // the appender hasn't freed this slot yet: full
+                } // else another producer took pos; reread tail
+            }
+            s.time = time; s.level = level; s.tag = tag; s.thread = thread;
+            s.fmt = fmt; s.a = a; s.b = b; s.c = c; s.thrown = t;
+            s.seq = pos + 1; // publish
+            return true;
+        }
+
+        /** Next published slot, or null. Call release() when done with it. */
+        Slot peek() {
+            Slot s = slots[(int) head & mask];
+            return s.seq == head + 1 ? s : null;
+        }
+
+        void release(Slot s) {
+            s.fmt = null; s.a = null; s.b = null; s.c = null; s.thrown = null;
+            s.seq = head + slots.length;
+            head++;
+        }
+    }
+
+    private static final class Slot {
+        volatile long seq;
+        long time;
+        Level level;
+        String tag, thread, fmt;
+        Object a, b, c;
+        Throwable thrown;
+
+        Slot(long seq) { this.seq = seq; }
+    }
+
+    private static final class Appender implements Runnable {
+        private static final DateTimeFormatter TS = DateTimeFormatter.ISO_INSTANT;
+        private final StringBuilder line = new StringBuilder(256);
+        private volatile Sink sink;
+        private volatile Thread thread;
+        volatile long flushedTo;
+
+        Appender(Sink sink) { this.sink = sink; }
+
+        synchronized void swap(Sink next) {
+            Sink old = sink;
+            sink = next;
+            try { old.close(); } catch (IOException ignored) { }
+        }
+
+        @Override public void run() {
+            thread = Thread.currentThread();
+            while (true) {
+                Slot s = RING.peek();
+                if (s == null) {
+                    LockSupport.parkNanos(1_000_000);
+                    continue;
+                }
+                synchronized (this) {
+                    Sink out = sink;
+                    int n = 0;
+                    // drain what's there in one batch, then flush once
+                    for (; s != null && n < 4096; s = RING.peek(), n++) {
+                        try {
+                            format(s);
+                            out.write(line);
+                        } catch (IOException e) {
+                            DROPPED.increment();
+                        } catch (Throwable t) {
+                            // a throwing toString() or Supplier loses its own record, not the appender
+                            FAILED.increment();
+                        } finally {
+                            RING.release(s);
+                        }
+                    }
+                    try { out.flush(); } catch (IOException ignored) { }
+                    WRITTEN.add(n);
+                    flushedTo = RING.head;
+                }
+            }
+        }
+
+        private void format(Slot s) {
+            line.setLength(0);
+            TS.formatTo(Instant.ofEpochMilli(s.time), line);
+            line.append(' ').append(s.level.name());
+            if (s.level.name().length() == 4) line.append(' ');
+            line.append(" [").append(s.tag).append("] (").append(s.thread).append(") ");
+            if (s.fmt == null) {
+                line.append(((Supplier<?>) s.a).get());
+            } else if (s.fmt == PAYLOAD) {
+                // clip huge snapshots
+                line.append(s.a).append(' ');
+                String p = String.valueOf(s.b);
+                if (p.length() > PAYLOAD_MAX_CHARS) line.append(p, 0, PAYLOAD_MAX_CHARS).append("...(").append(p.length()).append(" chars)");
+                else line.append(p);
+            } else {
+                fill(s.fmt, s.a, s.b, s.c);
+            }
+            if (s.thrown != null) {
+                StringWriter w = new StringWriter();
+                s.thrown.printStackTrace(new PrintWriter(w));
+                line.append(System.lineSeparator()).append(w.toString().stripTrailing());
+            }
+            line.append(System.lineSeparator());
+        }
+
+        private void fill(String fmt, Object a, Object b, Object c) {
+            int arg = 0, from = 0;
+            for (int i = fmt.indexOf("{}"); i >= 0 && arg < 3; i = fmt.indexOf("{}", from)) {
+                line.append(fmt, from, i).append(arg == 0 ? a : arg == 1 ? b : c);
+                arg++;
+                from = i + 2;
+            }
+            line.append(fmt, from, fmt.length());
+        }
+    }
+
+    private interface Sink {
+        void write(CharSequence line) throws IOException;
+        void flush() throws IOException;
+        void close() throws IOException;
+    }
+
+    private static final class StdoutSink implements Sink {
+        private final StringBuilder batch = new StringBuilder(4096);
+        @Override public void write(CharSequence line) { batch.append(line); }
+        @Override public void flush() {
+            // one trip through System.out's lock per batch, and only on the appender thread
+            System.out.print(batch);
+            System.out.flush();
+            batch.setLength(0);
+        }
+        @Override public void close() { flush(); }
+    }
+
+    /** Appends to {@code file}; past maxBytes it becomes file.1, file.1 becomes file.2, and so on. */
+    public static final class RollingFile implements Sink {
+        private final Path file;
+        private final long maxBytes;
+        private final int maxFiles;
+        private Writer out;
+        private long size;
+
+        public RollingFile(Path file, long maxBytes, int maxFiles) throws IOException {
+            this.file = file;
+            this.maxBytes = Math.max(1024, maxBytes);
+            this.maxFiles = Math.max(1, maxFiles);
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            open();
+        }
+
+        private void open() throws IOException {
+            out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), 16 * 1024);
+            size = Files.size(file);
+        }
+
+        @Override public void write(CharSequence line) throws IOException {
+            String s = line.toString();
+            long bytes = s.length(); // close enough for the cap; log lines are nearly all ASCII
+            if (size > 0 && size + bytes > maxBytes) rotate();
+            out.write(s);
+            size += bytes;
+        }
+
+        private void rotate() throws IOException {
+            out.close();
+            Files.deleteIfExists(sibling(maxFiles));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path p = sibling(i);
+                if (Files.exists(p)) Files.move(p, sibling(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(file, sibling(1), StandardCopyOption.REPLACE_EXISTING);
+            open();
+        }
+
+        private Path sibling(int i) {
+            return file.resolveSibling(file.getFileName() + "." + i);
+        }
+
+        @Override public void flush() throws IOException { out.flush(); }
+        @Override public void close() throws IOException { out.close(); }
+    }
 }
@@ -0,0 +1,48 @@
+package edu.jhu.clueless.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide registry of named counters and gauges. Counters are LongAdders so hot paths
+ * can bump them from any thread without contention; gauges are sampled only when a
+ * snapshot is taken.
+ */
+public class Metrics {
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    private Metrics() { }
+
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    public static void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public static void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    public static long value(String name) {
+        LongAdder c = counters.get(name);
+        if (c != null) return c.sum();
+        LongSupplier g = gauges.get(name);
+        return g != null ? g.getAsLong() : 0L;
+    }
+
+    /** Current value of every counter and gauge, sorted by name. */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> out = new TreeMap<>();
+        counters.forEach((k, v) -> out.put(k, v.sum()));
+        gauges.forEach((k, v) -> {
+            try { out.put(k, v.getAsLong()); } catch (RuntimeException ignored) { }
+        });
+        return out;
+    }
+}
@@ -0,0 +1,118 @@
+package edu.jhu.clueless;
+
+import com.google.gson.JsonParser;
+import edu.jhu.clueless.network.BinaryCodec;
+import edu.jhu.clueless.network.MessageType;
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.network.dto.ClientMessage;
+import edu.jhu.clueless.util.JsonUtil;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BinaryCodecTest {
+
+    @Test
+    public void symbolIdsArePinned() {
+        List<String> symbols = BinaryCodec.symbols();
+        for (MessageType t : MessageType.values()) assertTrue(t.name(), symbols.indexOf(t.name()) < 32);
+        // ids clients were built against; these must never move
+        assertEquals("PING", symbols.get(0));
+        assertEquals("RESYNC", symbols.get(16));
+        assertEquals("PONG", symbols.get(17));
+        assertEquals("RESUME", symbols.get(18));
+        assertEquals("GREEN", symbols.get(32));
+        assertEquals("type", symbols.get(65));
+        assertEquals("suggestedBy", symbols.get(119));
+        assertEquals("PONG", symbols.get(123));
+        assertEquals("ROOM", symbols.get(124));
+        assertEquals("DISPROVE_DONE", symbols.get(139));
+        // the old value id for PONG still decodes
+        assertEquals("PONG", BinaryCodec.decode(ByteBuffer.wrap(new byte[] { (byte) (16 + 123) })).getAsString());
+    }
+
+    @Test
+    public void transcodingMatchesGsonsReadingOfTheText() {
+        StringBuilder many = new StringBuilder("[");
+        for (int i = 0; i < 300; i++) many.append(i == 0 ? "" : ",").append("{\"n\":").append(i).append('}');
+        many.append(']');
+        String[] docs = {
+                "{\"type\":\"ERROR\",\"message\":\"quote \\\" slash \\\\ tab \\t nl \\n \\u003cb\\u003e \\u2028 zoë 😀\"}",
+                " { \"a\" : [ 1 , -2 , 3.5 , 1e3 , -0 , 9223372036854775807 , 92233720368547758070 ] , \"b\" : { } , \"c\" : [ ] } ",
+                "{\"x\":null,\"t\":true,\"f\":false,\"unlisted key\":\"HALL_STUDY\"}",
+                many.toString(),
+                "\"just a string\"",
+        };
+        for (String json : docs) {
+            assertEquals(json, JsonParser.parseString(json), BinaryCodec.decode(ByteBuffer.wrap(BinaryCodec.encodeJson(json))));
+        }
+    }
+
+    @Test
+    public void malformedJsonIsRejected() {
+        for (String bad : new String[] { "{\"a\":1", "{\"a\" 1}", "[1,,2]", "{\"a\":1}x", "\"open", "nul" }) {
+            try {
+                BinaryCodec.encodeJson(bad);
+                fail(bad);
+            } catch (IllegalArgumentException expected) {
+                // ok
+            }
+        }
+    }
+
+    @Test
+    public void clientMessageDecodesToTheSameCommandAsItsJson() {
+        ClientMessage in = new ClientMessage(MessageType.MOVE_TO_HALLWAY, "c-1", "g1", "zoë",
+                Map.of("hallway", "HALL_STUDY"));
+        Command out = BinaryCodec.decodeCommand(ByteBuffer.wrap(BinaryCodec.encode(in)));
+        assertEquals(CommandDecoder.decode(JsonUtil.toJson(in)), out);
+        assertEquals(new Command.MoveToHallway(new Command.Header(MessageType.MOVE_TO_HALLWAY, "c-1", "g1", "zoë", null), "HALL_STUDY"), out);
+    }
+
+    @Test
+    public void binaryRequestsAreHeldToTheJsonRules() {
+        String[] bad = {
+                "{\"type\":\"PING\",\"extra\":1}",
+                "{\"type\":\"MOVE\",\"payload\":{\"to\":{\"room\":\"HALL\"}}}",
+                "{\"type\":\"MOVE\",\"payload\":{\"to\":[\"HALL\"]}}",
+                "{\"type\":\"MOVE\",\"payload\":{\"note\":\"x\"}}",
+        };
+        for (String json : bad) {
+            try {
+                BinaryCodec.decodeCommand(ByteBuffer.wrap(BinaryCodec.encodeJson(json)));
+                fail(json);
+            } catch (IllegalArgumentException expected) {
+                // ok
+            }
+        }
+    }
+
+    @Test
+    public void serverEventRoundTripsAndShrinks() {
+        String json = "{\"type\":\"EVENT\",\"event\":\"MOVE\",\"gameId\":\"g1\",\"playerId\":\"alice\",\"room\":\"KITCHEN\","
+                + "\"version\":42,\"state\":{\"players\":[{\"name\":\"alice\",\"character\":\"PLUM\",\"room\":\"KITCHEN\","
+                + "\"location\":{\"type\":\"ROOM\",\"name\":\"KITCHEN\"},\"active\":true,\"roomEntryType\":\"SELF\",\"mustExit\":false,"
+                + "\"hand\":[{\"name\":\"ROPE\",\"type\":\"WEAPON\"}]}],\"hallways\":[{\"id\":\"BALLROOM_KITCHEN\",\"occupant\":null}],"
+                + "\"ratio\":-1.5,\"big\":-1234567890123,\"gameOver\":false}}";
+        byte[] body = BinaryCodec.encodeJson(json);
+        assertTrue(body.length * 3 < json.getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(JsonParser.parseString(json), BinaryCodec.decode(ByteBuffer.wrap(body)));
+    }
+
+    @Test
+    public void truncatedInputIsRejected() {
+        byte[] body = BinaryCodec.encodeJson("{\"type\":\"ACK\",\"playerId\":\"someone-long\"}");
+        try {
+            BinaryCodec.decode(ByteBuffer.wrap(body, 0, body.length - 3));
+            fail("expected rejection");
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+    }
+}
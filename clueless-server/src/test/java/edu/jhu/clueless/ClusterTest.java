@@ -0,0 +1,217 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.Cluster;
+import edu.jhu.clueless.network.GameLoops;
+import edu.jhu.clueless.network.HashRing;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.RateLimiter;
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.network.command.CommandEncoder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static edu.jhu.clueless.RecordingConnection.awaitTrue;
+import static org.junit.Assert.*;
+
+public class ClusterTest {
+
+    private static final String[] IDS = {"a", "b", "c"};
+    private final List<GameLoops> loops = new ArrayList<>();
+    private final List<Cluster> nodes = new ArrayList<>();
+    private final List<MessageRouter> routers = new ArrayList<>();
+
+    @Before
+    public void startNodes() throws Exception {
+        List<Cluster.Member> members = new ArrayList<>();
+        for (String id : IDS) members.add(new Cluster.Member(id, "127.0.0.1", freePort()));
+        for (String id : IDS) {
+            GameLoops l = new GameLoops(2, GameLoops.Placement.LEAST_LOADED);
+            MessageRouter router = new MessageRouter(RateLimiter.unlimited(), l);
+            Cluster node = new Cluster(id, members, router);
+            node.start();
+            loops.add(l);
+            routers.add(router);
+            nodes.add(node);
+        }
+    }
+
+    @After
+    public void stopNodes() {
+        for (Cluster n : nodes) n.close();
+        for (GameLoops l : loops) l.shutdown();
+    }
+
+    @Test
+    public void tenThousandGamesSpreadAcrossThreeNodes() throws Exception {
+        int games = 10_000;
+        Map<String, Integer> owned = new HashMap<>();
+        for (int g = 0; g < games; g++) {
+            String owner = nodes.get(0).ownerOf("game-" + g);
+            for (Cluster n : nodes) assertEquals(owner, n.ownerOf("game-" + g));
+            owned.merge(owner, 1, Integer::sum);
+        }
+        for (String id : IDS) {
+            int share = owned.getOrDefault(id, 0);
+            assertTrue(id + " owns " + share, share > games / 5 && share < games / 2);
+        }
+
+        // every client talks to one node; two thirds of their games live elsewhere
+        List<RecordingConnection> clients = new ArrayList<>();
+        for (String id : IDS) clients.add(new RecordingConnection("client-" + id, 100_000));
+        for (int g = 0; g < games; g++) {
+            routers.get(g % 3).route(clients.get(g % 3),
+                    CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"game-" + g + "\",\"playerId\":\"p" + g + "\"}"));
+        }
+        awaitTrue(() -> clients.stream().mapToInt(c -> c.received.size()).sum() == games, 20_000);
+        for (RecordingConnection c : clients) {
+            assertTrue(c.received.stream().allMatch(m -> m.contains("\"ACK\"") && m.contains("\"JOIN_LOBBY\"")));
+        }
+        for (int i = 0; i < IDS.length; i++) {
+            assertEquals("games held by " + IDS[i], (int) owned.get(IDS[i]), routers.get(i).activeGames());
+        }
+    }
+
+    @Test
+    public void broadcastsReachPlayersOnOtherNodes() throws Exception {
+        // a game owned by "a", with one player on "b" and one on "c"
+        String game = null;
+        for (int g = 0; game == null; g++) if (nodes.get(0).owns("shared-" + g)) game = "shared-" + g;
+        RecordingConnection onB = new RecordingConnection("onB", 100_000), onC = new RecordingConnection("onC", 100_000);
+        routers.get(1).route(onB, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"" + game + "\",\"playerId\":\"bea\"}"));
+        awaitTrue(() -> onB.received.size() == 1, 20_000);
+        routers.get(2).route(onC, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"" + game + "\",\"playerId\":\"cy\"}"));
+        awaitTrue(() -> onC.received.size() == 1 && onB.received.size() == 2, 20_000);
+        assertTrue(onB.received.get(1).contains("LOBBY_JOIN") && onB.received.get(1).contains("\"cy\""));
+        assertEquals(1, routers.get(0).activeGames());
+        assertEquals(0, routers.get(1).activeGames());
+
+        // once b's player leaves, c's actions no longer reach them
+        onB.close();
+        Thread.sleep(100);
+        routers.get(2).route(onC, CommandDecoder.decode("{\"type\":\"SET_READY\",\"gameId\":\"" + game + "\",\"playerId\":\"cy\",\"payload\":{\"ready\":true}}"));
+        awaitTrue(() -> onC.received.size() == 2, 20_000);
+        assertEquals(2, onB.received.size());
+    }
+
+    @Test
+    public void playerKeepsGettingBroadcastsAfterTheLinkDrops() throws Exception {
+        // node "e" reaches node "d" through a proxy that can cut the link
+        int dPort = freePort(), ePort = freePort();
+        try (Proxy proxy = new Proxy(dPort)) {
+            List<Cluster.Member> forD = List.of(new Cluster.Member("d", "127.0.0.1", dPort), new Cluster.Member("e", "127.0.0.1", ePort));
+            List<Cluster.Member> forE = List.of(new Cluster.Member("d", "127.0.0.1", proxy.port()), new Cluster.Member("e", "127.0.0.1", ePort));
+            GameLoops l = new GameLoops(1, GameLoops.Placement.LEAST_LOADED);
+            loops.add(l);
+            MessageRouter d = new MessageRouter(RateLimiter.unlimited(), l), e = new MessageRouter(RateLimiter.unlimited(), l);
+            Cluster dn = new Cluster("d", forD, d), en = new Cluster("e", forE, e);
+            nodes.add(dn);
+            nodes.add(en);
+            dn.start();
+            en.start();
+            String game = null;
+            for (int g = 0; game == null; g++) if (dn.owns("drop-" + g)) game = "drop-" + g;
+
+            RecordingConnection local = new RecordingConnection("local", 100_000), remote = new RecordingConnection("remote", 100_000);
+            e.route(remote, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"" + game + "\",\"playerId\":\"rem\"}"));
+            awaitTrue(() -> remote.received.size() == 1, 20_000);
+            d.route(local, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"" + game + "\",\"playerId\":\"loc\"}"));
+            awaitTrue(() -> remote.received.size() == 2, 20_000);
+
+            proxy.cut();
+            Thread.sleep(100);
+            // the remote player just carries on; nothing re-joins
+            e.route(remote, CommandDecoder.decode("{\"type\":\"SET_READY\",\"gameId\":\"" + game + "\",\"playerId\":\"rem\",\"payload\":{\"ready\":true}}"));
+            awaitTrue(() -> remote.received.size() == 3, 20_000);
+            assertTrue(remote.received.get(2), remote.received.get(2).contains("\"ACK\""));
+            d.route(local, CommandDecoder.decode("{\"type\":\"SET_READY\",\"gameId\":\"" + game + "\",\"playerId\":\"loc\",\"payload\":{\"ready\":true}}"));
+            awaitTrue(() -> remote.received.size() == 4, 20_000);
+            assertTrue(remote.received.get(3).contains("READY_CHANGED") && remote.received.get(3).contains("\"loc\""));
+        }
+    }
+
+    /** Forwards TCP connections to a port until cut() closes them all. */
+    private static final class Proxy implements AutoCloseable {
+        private final ServerSocket server = new ServerSocket(0);
+        private final List<Socket> open = new CopyOnWriteArrayList<>();
+
+        Proxy(int target) throws IOException {
+            Thread.ofPlatform().daemon().start(() -> {
+                while (!server.isClosed()) {
+                    try {
+                        Socket in = server.accept(), out = new Socket("127.0.0.1", target);
+                        open.add(in);
+                        open.add(out);
+                        pump(in, out);
+                        pump(out, in);
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        int port() { return server.getLocalPort(); }
+
+        void cut() throws IOException {
+            for (Socket s : open) s.close();
+            open.clear();
+        }
+
+        @Override public void close() throws IOException {
+            server.close();
+            cut();
+        }
+
+        private static void pump(Socket from, Socket to) {
+            Thread.ofPlatform().daemon().start(() -> {
+                try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+                    in.transferTo(out);
+                } catch (IOException ignored) {
+                    // cut
+                }
+            });
+        }
+    }
+
+    @Test
+    public void encodedCommandsDecodeToThemselves() {
+        String[] requests = {
+                "{\"type\":\"SUGGEST\",\"correlationId\":\"7\",\"gameId\":\"g\",\"playerId\":\"p\",\"payload\":{\"suspect\":\"PLUM\",\"weapon\":\"ROPE\",\"room\":\"HALL\",\"deltas\":true}}",
+                "{\"type\":\"MOVE_TO_HALLWAY\",\"gameId\":\"g\",\"payload\":{\"player\":\"p\",\"hallwayId\":\"HALL_LOUNGE\"}}",
+                "{\"type\":\"NEW_GAME\",\"payload\":{\"keepPlayers\":\"no\"}}",
+                "{\"type\":\"SET_READY\",\"payload\":{\"name\":\"p\",\"ready\":true}}",
+                "{\"type\":\"RESUME\",\"gameId\":\"g\",\"payload\":{\"token\":\"t\",\"lastSeq\":12}}",
+                "{\"type\":\"END_TURN\",\"gameId\":\"g\",\"playerId\":\"p\"}",
+                "{\"type\":\"SELECT_CHARACTER\",\"playerId\":\"q\\\"uote\\\\ \\n \\u0001 \\u2028 zoë\",\"payload\":{\"character\":\"PLUM\"}}",
+        };
+        for (String json : requests) {
+            Command c = CommandDecoder.decode(json);
+            assertEquals(c, CommandDecoder.decode(CommandEncoder.toJson(c)));
+        }
+    }
+
+    @Test
+    public void ringMovesOnlyTheLeavingNodesKeys() {
+        HashRing three = new HashRing(List.of("a", "b", "c"), 128), two = new HashRing(List.of("a", "b"), 128);
+        for (int g = 0; g < 2000; g++) {
+            String before = three.ownerOf("g" + g);
+            if (!before.equals("c")) assertEquals(before, two.ownerOf("g" + g));
+        }
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.MessageType;
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CommandDecoderTest {
+
+    @Test
+    public void aliasesResolveToCanonicalFields() {
+        Command.MoveToHallway m = (Command.MoveToHallway) CommandDecoder.decode(
+                "{\"type\":\"MOVE_TO_HALLWAY\",\"payload\":{\"hallwayId\":\"STUDY_HALL\",\"player\":\"alice\"}}");
+        assertEquals("STUDY_HALL", m.hallway());
+        assertEquals("alice", m.playerId());
+        assertEquals("default", m.gameId());
+
+        Command.DisproveResponse d = (Command.DisproveResponse) CommandDecoder.decode(
+                "{\"type\":\"DISPROVE_RESPONSE\",\"gameId\":\"g\",\"playerId\":\"bob\",\"payload\":{\"chosenCard\":\"ROPE\",\"suggestedBy\":\"alice\"}}");
+        assertEquals("ROPE", d.card());
+        assertEquals("alice", d.suggester());
+        assertEquals("bob", d.playerId());
+
+        // "name" only names the player for lobby-style requests
+        assertEquals("carol", CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"payload\":{\"name\":\"carol\"}}").playerId());
+    }
+
+    @Test
+    public void payloadMayPrecedeType() {
+        Command c = CommandDecoder.decode("{\"payload\":{\"ready\":true,\"deltas\":1},\"type\":\"SET_READY\",\"playerId\":\"a\"}");
+        assertEquals(MessageType.SET_READY, c.type());
+        assertTrue(((Command.SetReady) c).ready());
+        assertEquals(Boolean.TRUE, c.header().deltas());
+    }
+
+    @Test
+    public void keepPlayersAcceptsTheUsualSpellings() {
+        assertTrue(((Command.NewGame) CommandDecoder.decode("{\"type\":\"NEW_GAME\"}")).keepPlayers());
+        assertFalse(((Command.NewGame) CommandDecoder.decode("{\"type\":\"NEW_GAME\",\"payload\":{\"keepPlayers\":\"no\"}}")).keepPlayers());
+        assertFalse(((Command.NewGame) CommandDecoder.decode("{\"type\":\"NEW_GAME\",\"payload\":{\"keepPlayers\":0}}")).keepPlayers());
+    }
+
+    @Test
+    public void badInputIsRejected() {
+        assertRejected("{\"payload\":{}}", "Invalid or missing type");
+        assertRejected("{\"type\":\"NOPE\"}", "Invalid or missing type");
+        assertRejected("{\"type\":\"PING\",\"extra\":1}", "Unknown field");
+        assertRejected("{\"type\":\"MOVE\",\"payload\":{\"where\":\"HALL\"}}", "Unknown payload field");
+        assertRejected("{\"type\":\"MOVE\",\"payload\":{\"to\":{\"nested\":1}}}", "must be a string");
+        assertRejected("{\"type\":\"MOVE\",\"payload\":{\"to\":\"" + "x".repeat(CommandDecoder.MAX_VALUE_CHARS + 1) + "\"}}", "too long");
+        assertRejected("not json", "Malformed JSON");
+    }
+
+    private static void assertRejected(String json, String reason) {
+        try {
+            CommandDecoder.decode(json);
+            fail("expected rejection of " + json);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+}
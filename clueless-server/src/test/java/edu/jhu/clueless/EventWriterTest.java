@@ -0,0 +1,73 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.EventWriter;
+import edu.jhu.clueless.network.MessageType;
+import edu.jhu.clueless.util.JsonUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class EventWriterTest {
+
+    @Test
+    public void fieldsMatchTheOldConcatenation() {
+        String gameId = "g\"1", playerId = "a\\b", room = "KITCHEN";
+        String old = "{\"type\":\"ACK\",\"for\":\"MOVE\",\"gameId\":\"g\\\"1\",\"playerId\":\"a\\\\b\",\"room\":\"KITCHEN\"}";
+        assertEquals(old, EventWriter.ack(MessageType.MOVE).str("gameId", gameId).str("playerId", playerId).str("room", room).end());
+
+        assertEquals("{\"type\":\"EVENT\",\"event\":\"NEW_GAME\",\"gameId\":\"\",\"keepPlayers\":true",
+                EventWriter.event("NEW_GAME").str("gameId", null).bool("keepPlayers", true).head());
+        assertEquals("{\"type\":\"ERROR\",\"message\":\"line\\nbreak\"}", EventWriter.error("line\nbreak"));
+    }
+
+    @Test
+    public void treesMatchGson() {
+        Map<String, Object> player = new LinkedHashMap<>();
+        player.put("name", "<zoë & 'co'>= ");
+        player.put("room", null);
+        player.put("active", true);
+        player.put("hand", new ArrayList<>(Arrays.asList("ROPE", null, "tab\there")));
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("players", List.of(player));
+        root.put("version", 7L);
+        root.put("ratio", 0.5);
+        root.put("winner", null);
+
+        assertEquals(JsonUtil.toJson(root), EventWriter.toJson(root, false));
+        assertEquals(JsonUtil.toJsonWithNulls(root), EventWriter.toJson(root, true));
+    }
+
+    @Test
+    public void nestedUseDoesNotClobberTheOuterMessage() {
+        EventWriter outer = EventWriter.event("MOVE").str("gameId", "g");
+        String inner = EventWriter.toJson(Map.of("a", 1), false);
+        assertEquals("{\"a\":1}", inner);
+        assertEquals("{\"type\":\"EVENT\",\"event\":\"MOVE\",\"gameId\":\"g\",\"state\":{\"a\":1}}", outer.raw("state", inner).end());
+    }
+
+    @Test
+    public void aMessageAbandonedByAnExceptionDoesNotPinTheWriter() {
+        try {
+            EventWriter.event("MOVE").str("gameId", failingLookup());
+            fail();
+        } catch (IllegalStateException expected) {
+            // the writer was left open
+        }
+        EventWriter a = EventWriter.event("A");
+        assertEquals("{\"type\":\"EVENT\",\"event\":\"A\"}", a.end());
+        // the thread is back to reusing one writer
+        EventWriter b = EventWriter.event("B");
+        b.end();
+        assertSame(a, b);
+    }
+
+    private static String failingLookup() {
+        throw new IllegalStateException("no such player");
+    }
+}
@@ -0,0 +1,69 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.GameLoops;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.OutboundMessage;
+import edu.jhu.clueless.network.RateLimiter;
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.util.Histogram;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static edu.jhu.clueless.RecordingConnection.awaitTrue;
+import static org.junit.Assert.*;
+
+public class FairSchedulingTest {
+
+    private GameLoops loops;
+
+    @After
+    public void stopLoops() {
+        if (loops != null) loops.shutdown();
+    }
+
+    @Test
+    public void floodedGameCannotStarveAQuietOne() throws Exception {
+        loops = new GameLoops(1, GameLoops.Placement.HASH); // both games share the one loop
+        MessageRouter router = new MessageRouter(RateLimiter.unlimited(), loops);
+        RecordingConnection noisy = new RecordingConnection("noisy", 100_000);
+        router.route(noisy, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"flood\",\"playerId\":\"n\"}"));
+        awaitTrue(() -> noisy.received.size() == 1, 10_000);
+
+        // count how many flood commands the loop has applied when the quiet game gets its turn
+        AtomicInteger noisyDoneAtQuiet = new AtomicInteger(-1);
+        Command ready = CommandDecoder.decode("{\"type\":\"SET_READY\",\"gameId\":\"flood\",\"playerId\":\"n\",\"payload\":{\"ready\":true}}");
+        int flood = 5000;
+        for (int i = 0; i < flood; i++) router.route(noisy, ready);
+        RecordingConnection probe = new RecordingConnection("probe", 100_000) {
+            @Override protected void writeToTransport(OutboundMessage m) {
+                noisyDoneAtQuiet.compareAndSet(-1, noisy.received.size());
+                super.writeToTransport(m);
+            }
+        };
+        router.route(probe, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"calm\",\"playerId\":\"q\"}"));
+
+        awaitTrue(() -> noisy.received.size() == flood + 1 && !probe.received.isEmpty(), 10_000);
+        assertTrue("quiet game waited behind " + noisyDoneAtQuiet.get() + " flood commands",
+                noisyDoneAtQuiet.get() < flood / 2);
+
+        Histogram calm = router.waitTimes("calm"), flooded = router.waitTimes("flood");
+        assertEquals(1, calm.count());
+        assertEquals(flood + 1, flooded.count());
+        assertTrue(calm.percentile(99) <= flooded.percentile(99));
+        assertNull(router.waitTimes("nope"));
+    }
+
+    @Test
+    public void histogramPercentilesAreWithinABucket() {
+        Histogram h = new Histogram();
+        for (int i = 1; i <= 1000; i++) h.record(i);
+        assertEquals(1000, h.count());
+        long p50 = h.percentile(50), p99 = h.percentile(99);
+        assertTrue("p50=" + p50, p50 >= 500 && p50 <= 625);
+        assertTrue("p99=" + p99, p99 >= 990 && p99 <= 1238);
+        assertEquals(0, new Histogram().percentile(99));
+    }
+}
@@ -0,0 +1,66 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.ClientConnection;
+import edu.jhu.clueless.network.GameLoops;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.RateLimiter;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static edu.jhu.clueless.RecordingConnection.awaitTrue;
+import static org.junit.Assert.*;
+
+public class GameLoopsTest {
+
+    private GameLoops loops;
+
+    @After
+    public void stopLoops() {
+        if (loops != null) loops.shutdown();
+    }
+
+    private static void joinLobby(MessageRouter router, ClientConnection c, String gameId) {
+        router.route(c, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"" + gameId + "\",\"playerId\":\"p\"}"));
+    }
+
+    @Test
+    public void leastLoadedPlacementSpreadsGames() throws Exception {
+        loops = new GameLoops(3, GameLoops.Placement.LEAST_LOADED);
+        MessageRouter router = new MessageRouter(RateLimiter.unlimited(), loops);
+        RecordingConnection c = new RecordingConnection("c");
+        for (int i = 0; i < 9; i++) joinLobby(router, c, "spread-" + i);
+        awaitTrue(() -> c.received.size() == 9);
+        assertArrayEquals(new int[] {3, 3, 3}, loops.gamesPerLoop());
+    }
+
+    @Test
+    public void rebalanceMovesIdleGamesOffTheHotLoop() throws Exception {
+        loops = new GameLoops(2, GameLoops.Placement.HASH);
+        MessageRouter router = new MessageRouter(RateLimiter.unlimited(), loops);
+        RecordingConnection c = new RecordingConnection("c");
+        // pick ids that all hash onto loop 0
+        List<String> ids = new CopyOnWriteArrayList<>();
+        for (int i = 0; ids.size() < 6; i++) {
+            if (Math.floorMod(("hot-" + i).hashCode(), 2) == 0) ids.add("hot-" + i);
+        }
+        for (String id : ids) joinLobby(router, c, id);
+        awaitTrue(() -> c.received.size() == 6);
+        assertArrayEquals(new int[] {6, 0}, loops.gamesPerLoop());
+
+        assertEquals(3, loops.rebalance(10));
+        awaitTrue(() -> Arrays.equals(new int[] {3, 3}, loops.gamesPerLoop()));
+
+        // moved games keep their lobby and carry on from the new loop
+        RecordingConnection d = new RecordingConnection("d");
+        for (String id : ids) {
+            router.route(d, CommandDecoder.decode("{\"type\":\"SET_READY\",\"gameId\":\"" + id + "\",\"playerId\":\"p\",\"payload\":{\"ready\":true}}"));
+        }
+        awaitTrue(() -> d.received.size() == 6);
+        assertTrue(d.received.stream().allMatch(m -> m.contains("\"ACK\"")));
+    }
+}
@@ -0,0 +1,87 @@
+package edu.jhu.clueless;
+
+import com.google.gson.JsonParser;
+import edu.jhu.clueless.network.ClientConnection;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.RateLimiter;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.util.Metrics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static edu.jhu.clueless.RecordingConnection.awaitTrue;
+import static org.junit.Assert.*;
+
+public class GameSessionTest {
+
+    @After
+    public void clearConfig() {
+        System.clearProperty("clueless.session.max");
+    }
+
+    private static void joinLobby(MessageRouter router, ClientConnection c, String gameId, String playerId) {
+        router.route(c, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"" + gameId + "\",\"playerId\":\"" + playerId + "\"}"));
+    }
+
+    @Test
+    public void closingAConnectionDropsItsSubscriptions() throws Exception {
+        MessageRouter router = new MessageRouter(RateLimiter.unlimited());
+        router.registerGauges();
+        RecordingConnection a = new RecordingConnection("a"), b = new RecordingConnection("b");
+        joinLobby(router, a, "s1", "alice");
+        joinLobby(router, a, "s2", "alice");
+        joinLobby(router, b, "s1", "bob");
+        awaitTrue(() -> Metrics.value("sessions.subscriptions") == 3);
+        assertEquals(2, Metrics.value("sessions.active"));
+        new MessageRouter(RateLimiter.unlimited()); // another router doesn't take the gauges over
+        assertEquals(2, Metrics.value("sessions.active"));
+
+        a.close();
+        assertEquals(1, Metrics.value("sessions.subscriptions"));
+        b.close();
+        assertEquals(0, Metrics.value("sessions.subscriptions"));
+    }
+
+    @Test
+    public void concurrentCommandsForOneGameAreAppliedOneAtATime() throws Exception {
+        MessageRouter router = new MessageRouter(RateLimiter.unlimited());
+        Thread[] ts = new Thread[8];
+        List<RecordingConnection> conns = new CopyOnWriteArrayList<>();
+        for (int t = 0; t < ts.length; t++) {
+            int id = t;
+            ts[t] = new Thread(() -> {
+                for (int i = 0; i < 8; i++) {
+                    RecordingConnection c = new RecordingConnection("c" + id + "-" + i);
+                    conns.add(c);
+                    joinLobby(router, c, "crowd", "p" + id + "-" + i);
+                }
+            });
+            ts[t].start();
+        }
+        for (Thread t : ts) t.join();
+
+        // the last join's ACK lists everyone; a lost update on the lobby would show here
+        awaitTrue(() -> conns.stream().allMatch(c -> !c.received.isEmpty()));
+        int most = conns.stream()
+                .mapToInt(c -> JsonParser.parseString(c.received.get(0)).getAsJsonObject().getAsJsonObject("lobby").getAsJsonArray("players").size())
+                .max().orElse(0);
+        assertEquals(64, most);
+    }
+
+    @Test
+    public void sessionCountIsBounded() throws Exception {
+        System.setProperty("clueless.session.max", "1");
+        MessageRouter router = new MessageRouter(RateLimiter.unlimited());
+        router.registerGauges();
+        RecordingConnection c = new RecordingConnection("c");
+        joinLobby(router, c, "first", "p");
+        joinLobby(router, c, "second", "p");
+
+        awaitTrue(() -> c.received.size() == 2);
+        assertTrue(c.received.contains("{\"type\":\"ERROR\",\"message\":\"Too many games\"}"));
+        assertEquals(1, Metrics.value("sessions.active"));
+    }
+}
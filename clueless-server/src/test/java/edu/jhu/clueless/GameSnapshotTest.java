@@ -0,0 +1,66 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.engine.*;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GameSnapshotTest {
+
+    private static GameEngine dealtGame() {
+        GameEngine engine = new GameEngine(new GameState());
+        engine.joinPlayer("p1", "GREEN");
+        engine.joinPlayer("p2", "SCARLET");
+        engine.joinPlayer("p3", "PLUM");
+        engine.startGame();
+        engine.publishSnapshot();
+        return engine;
+    }
+
+    @Test
+    public void unchangedPartsAreSharedWithThePreviousSnapshot() {
+        GameEngine engine = dealtGame();
+        GameSnapshot before = engine.getSnapshot();
+
+        engine.advanceTurn();
+        GameSnapshot after = engine.publishSnapshot();
+
+        assertSame(after, engine.getSnapshot());
+        assertEquals(before.getVersion() + 1, after.getVersion());
+        assertNotEquals(before.getCurrentPlayer(), after.getCurrentPlayer());
+        // nobody moved: the room and hallway lists are the very same objects
+        assertSame(before.getRooms(), after.getRooms());
+        assertSame(before.getHallways(), after.getHallways());
+        for (int i = 0; i < after.getPlayers().size(); i++) {
+            assertSame(before.getPlayers().get(i).hand(), after.getPlayers().get(i).hand());
+        }
+    }
+
+    @Test
+    public void publishedSnapshotsDoNotSeeLaterChanges() {
+        GameEngine engine = dealtGame();
+        String mover = engine.getGameState().getCurrentPlayer().getName();
+        GameSnapshot before = engine.getSnapshot();
+        Map<String, Object> beforeMap = before.toMap();
+
+        String hallway = engine.getBoard().getHallways().keySet().iterator().next();
+        engine.getGameState().getPlayer(mover).setLocation(engine.getBoard().getHallwayById(hallway));
+        engine.getBoard().getHallwayById(hallway).occupy(engine.getGameState().getPlayer(mover));
+        GameSnapshot after = engine.publishSnapshot();
+
+        assertEquals(beforeMap, before.toMap());
+        assertNotSame(before.getHallways(), after.getHallways());
+        assertSame(before.getRooms(), after.getRooms());
+        GameSnapshot.PlayerView moved = after.getPlayers().stream().filter(p -> p.name().equals(mover)).findFirst().orElseThrow();
+        assertEquals("HALLWAY", moved.locationType());
+        try {
+            after.getPlayers().add(moved);
+            fail("snapshot lists must be read-only");
+        } catch (UnsupportedOperationException expected) { }
+        List<?> players = (List<?>) after.toMap().get("players");
+        assertEquals(3, players.size());
+    }
+}
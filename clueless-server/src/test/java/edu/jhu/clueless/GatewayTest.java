@@ -0,0 +1,119 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.EngineServer;
+import edu.jhu.clueless.network.GameLoops;
+import edu.jhu.clueless.network.Gateway;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.RateLimiter;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static edu.jhu.clueless.RecordingConnection.awaitTrue;
+import static org.junit.Assert.*;
+
+public class GatewayTest {
+
+    private Path dir;
+    private final List<AutoCloseable> open = new ArrayList<>();
+    private final List<GameLoops> loops = new ArrayList<>();
+    private MessageRouter engineRouter;
+    private EngineServer engine;
+
+    @Before
+    public void startEngine() throws Exception {
+        dir = Files.createTempDirectory("clueless-gw");
+        engineRouter = router();
+        engine = new EngineServer(dir.resolve("engine.sock"), engineRouter);
+        engine.bind();
+        new Thread(engine, "test-engine").start();
+        open.add(engine);
+    }
+
+    @After
+    public void stopAll() throws Exception {
+        for (int i = open.size() - 1; i >= 0; i--) open.get(i).close();
+        for (GameLoops l : loops) l.shutdown();
+        Files.deleteIfExists(dir.resolve("engine.sock"));
+        Files.deleteIfExists(dir);
+    }
+
+    private MessageRouter router() {
+        GameLoops l = new GameLoops(1, GameLoops.Placement.LEAST_LOADED);
+        loops.add(l);
+        return new MessageRouter(RateLimiter.unlimited(), l);
+    }
+
+    private MessageRouter gateway(String id) {
+        MessageRouter r = router();
+        Gateway g = new Gateway(id, List.of(new Gateway.Engine("e1", dir.resolve("engine.sock"))), r);
+        g.start();
+        open.add(g);
+        return r;
+    }
+
+    @Test
+    public void gatewaysHoldNoGamesAndShareTheEnginesBroadcasts() throws Exception {
+        MessageRouter gw1 = gateway("gw1"), gw2 = gateway("gw2");
+        RecordingConnection alice = new RecordingConnection("alice"), bob = new RecordingConnection("bob");
+        gw1.route(alice, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"alice\"}"));
+        awaitTrue(() -> alice.received.size() == 1);
+        assertTrue(alice.received.get(0).contains("\"ACK\""));
+
+        gw2.route(bob, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"bob\"}"));
+        awaitTrue(() -> bob.received.size() == 1 && alice.received.size() == 2);
+        assertTrue(alice.received.get(1).contains("LOBBY_JOIN") && alice.received.get(1).contains("\"bob\""));
+
+        assertEquals(0, gw1.activeGames());
+        assertEquals(0, gw2.activeGames());
+        assertEquals(1, engineRouter.activeGames());
+
+        // pings never leave the gateway
+        gw1.route(alice, CommandDecoder.decode("{\"type\":\"PING\"}"));
+        awaitTrue(() -> alice.received.size() == 3);
+        assertTrue(alice.received.get(2).contains("\"PONG\""));
+    }
+
+    @Test
+    public void clientsKeepTheirGamesWhenTheEngineLinkIsReplaced() throws Exception {
+        MessageRouter gw1 = gateway("gw1"), gw2 = gateway("gw2");
+        RecordingConnection alice = new RecordingConnection("alice"), bob = new RecordingConnection("bob");
+        gw1.route(alice, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"alice\"}"));
+        awaitTrue(() -> alice.received.size() == 1);
+        gw2.route(bob, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"bob\"}"));
+        awaitTrue(() -> bob.received.size() == 1 && alice.received.size() == 2);
+
+        // every gateway link drops; the engine's games stay where they are
+        engine.close();
+        engine = new EngineServer(dir.resolve("engine.sock"), engineRouter);
+        engine.bind();
+        new Thread(engine, "test-engine-2").start();
+        open.add(engine);
+        // bob keeps playing, retrying what bounces; alice sends nothing and must still hear him
+        String ready = "{\"type\":\"SET_READY\",\"gameId\":\"g\",\"playerId\":\"bob\",\"payload\":{\"ready\":true}}";
+        long deadline = System.currentTimeMillis() + 5000;
+        while (alice.received.size() == 2 && System.currentTimeMillis() < deadline) {
+            gw2.route(bob, CommandDecoder.decode(ready));
+            Thread.sleep(50);
+        }
+        awaitTrue(() -> alice.received.size() >= 3);
+        assertTrue(alice.received.get(2).contains("READY_CHANGED") && alice.received.get(2).contains("\"bob\""));
+        assertTrue(bob.received.stream().anyMatch(m -> m.contains("\"ACK\"") && m.contains("SET_READY")));
+    }
+
+    @Test
+    public void unreachableEngineAnswersWithAnError() throws Exception {
+        engine.close();
+        MessageRouter gw = gateway("gw");
+        RecordingConnection c = new RecordingConnection("c");
+        gw.route(c, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"c\"}"));
+        awaitTrue(() -> c.received.size() == 1);
+        assertTrue(c.received.get(0).contains("\"ERROR\"") && c.received.get(0).contains("unavailable"));
+    }
+}
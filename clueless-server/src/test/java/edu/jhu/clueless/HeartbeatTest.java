@@ -0,0 +1,81 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.Heartbeat;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.MessageType;
+import edu.jhu.clueless.network.dto.ClientMessage;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static edu.jhu.clueless.RecordingConnection.awaitTrue;
+import static org.junit.Assert.*;
+
+public class HeartbeatTest {
+
+    private final Heartbeat wheel = new Heartbeat(new Heartbeat.Config(100, 100, 10));
+
+    @After
+    public void stopWheel() {
+        wheel.stop();
+    }
+
+    @Test
+    public void silentConnectionIsPingedThenReaped() throws Exception {
+        wheel.start();
+        RecordingConnection c = new RecordingConnection("silent");
+        wheel.register(c);
+
+        awaitTrue(() -> pings(c) == 1, 1000);
+        assertTrue(c.isOpen());
+        awaitTrue(() -> !c.isOpen(), 1000);
+        assertEquals(1, pings(c));
+    }
+
+    @Test
+    public void answeringThePingKeepsTheConnection() throws Exception {
+        wheel.start();
+        RecordingConnection c = new RecordingConnection("answers");
+        wheel.register(c);
+
+        long until = System.currentTimeMillis() + 600;
+        long seen = 0;
+        while (System.currentTimeMillis() < until) {
+            if (pings(c) > seen) { seen = pings(c); c.touch(); } // the client's PONG
+            Thread.sleep(5);
+        }
+        assertTrue(c.isOpen());
+        assertTrue(seen >= 2);
+    }
+
+    @Test
+    public void busyConnectionIsNeverPinged() throws Exception {
+        wheel.start();
+        RecordingConnection c = new RecordingConnection("busy");
+        wheel.register(c);
+        for (int i = 0; i < 40; i++) { c.touch(); Thread.sleep(10); }
+        assertEquals(0, pings(c));
+        assertTrue(c.isOpen());
+    }
+
+    @Test
+    public void closedConnectionLeavesGameSubscriptions() throws Exception {
+        MessageRouter router = new MessageRouter();
+        RecordingConnection alice = new RecordingConnection("alice");
+        RecordingConnection bob = new RecordingConnection("bob");
+        router.route(alice, new ClientMessage(MessageType.JOIN_LOBBY, "1", "hb", "alice", null));
+        router.route(bob, new ClientMessage(MessageType.JOIN_LOBBY, "2", "hb", "bob", null));
+        awaitTrue(() -> alice.received.size() == 2, 1000); // ACK + bob's LOBBY_JOIN
+
+        alice.close();
+        router.route(bob, new ClientMessage(MessageType.SET_READY, "3", "hb", "bob", Map.of("ready", true)));
+        awaitTrue(() -> bob.received.size() == 2, 1000);
+        Thread.sleep(50);
+        assertEquals(2, alice.received.size());
+    }
+
+    private static long pings(RecordingConnection c) {
+        return c.received.stream().filter(s -> s.equals("{\"type\":\"PING\"}")).count();
+    }
+}
@@ -0,0 +1,106 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.GameLoops;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.RateLimiter;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.util.Metrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static edu.jhu.clueless.RecordingConnection.awaitTrue;
+import static org.junit.Assert.*;
+
+public class IdempotencyTest {
+
+    private GameLoops loops;
+    private MessageRouter router;
+
+    @Before
+    public void setUp() {
+        loops = new GameLoops(1, GameLoops.Placement.LEAST_LOADED);
+        router = new MessageRouter(RateLimiter.unlimited(), loops);
+    }
+
+    @After
+    public void tearDown() {
+        loops.shutdown();
+    }
+
+    private void send(RecordingConnection c, String json) throws InterruptedException {
+        int before = c.received.size();
+        router.route(c, CommandDecoder.decode(json));
+        awaitTrue(() -> c.received.size() > before);
+    }
+
+    private String endTurn(RecordingConnection c, String player, String correlationId) throws InterruptedException {
+        send(c, "{\"type\":\"END_TURN\",\"correlationId\":\"" + correlationId + "\",\"gameId\":\"g\",\"playerId\":\"" + player + "\"}");
+        return c.last();
+    }
+
+    private void startGame(RecordingConnection c) throws InterruptedException {
+        send(c, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"ann\"}");
+        send(c, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"bo\"}");
+        send(c, "{\"type\":\"SELECT_CHARACTER\",\"gameId\":\"g\",\"playerId\":\"ann\",\"payload\":{\"character\":\"SCARLET\"}}");
+        send(c, "{\"type\":\"SELECT_CHARACTER\",\"gameId\":\"g\",\"playerId\":\"bo\",\"payload\":{\"character\":\"PLUM\"}}");
+        send(c, "{\"type\":\"SET_READY\",\"gameId\":\"g\",\"playerId\":\"ann\",\"payload\":{\"ready\":true}}");
+        send(c, "{\"type\":\"SET_READY\",\"gameId\":\"g\",\"playerId\":\"bo\",\"payload\":{\"ready\":true}}");
+        send(c, "{\"type\":\"START_GAME\",\"gameId\":\"g\",\"playerId\":\"ann\"}");
+    }
+
+    @Test
+    public void retriedEndTurnIsAnsweredFromCacheAndAppliedOnce() throws Exception {
+        RecordingConnection c = new RecordingConnection("c");
+        startGame(c);
+        long hits = Metrics.value("idempotency.hits"), misses = Metrics.value("idempotency.misses");
+
+        String first = endTurn(c, "ann", "t1");
+        assertTrue(first, first.contains("\"ACK\"") && first.contains("\"correlationId\":\"t1\""));
+        // the client timed out and sends it again, this time over a new connection
+        RecordingConnection retry = new RecordingConnection("c2");
+        assertEquals(first, endTurn(retry, "ann", "t1"));
+        assertEquals(hits + 1, Metrics.value("idempotency.hits"));
+        assertEquals(misses + 1, Metrics.value("idempotency.misses"));
+
+        // applied twice it would have come back round to ann; it's bo's turn
+        assertTrue(endTurn(c, "ann", "t2").contains("Not your turn"));
+        // the key is per player: bo's "t1" is a new command
+        assertTrue(endTurn(c, "bo", "t1").contains("\"ACK\""));
+    }
+
+    @Test
+    public void retryIsNotAnsweredWithTheFirstConnectionsDelta() throws Exception {
+        RecordingConnection c = new RecordingConnection("c");
+        c.setDeltaUpdates(true);
+        startGame(c);
+        String first = endTurn(c, "ann", "t1");
+        assertTrue(first, first.contains("\"baseVersion\"") && first.contains("\"delta\""));
+
+        // a delta client on a new connection holds no version to apply that delta to
+        RecordingConnection retry = new RecordingConnection("c2");
+        retry.setDeltaUpdates(true);
+        String again = endTurn(retry, "ann", "t1");
+        assertTrue(again, again.contains("\"correlationId\":\"t1\"") && again.contains("\"state\""));
+        assertFalse(again, again.contains("\"baseVersion\""));
+    }
+
+    @Test
+    public void retriedErrorGetsTheSameError() throws Exception {
+        RecordingConnection c = new RecordingConnection("c");
+        startGame(c);
+        String first = endTurn(c, "bo", "x");
+        assertTrue(first, first.contains("Not your turn"));
+        assertEquals(first, endTurn(c, "bo", "x"));
+    }
+
+    @Test
+    public void requestsWithoutCorrelationIdAreNotCached() throws Exception {
+        RecordingConnection c = new RecordingConnection("c");
+        startGame(c);
+        send(c, "{\"type\":\"END_TURN\",\"gameId\":\"g\",\"playerId\":\"ann\"}");
+        assertTrue(c.last().contains("\"ACK\""));
+        send(c, "{\"type\":\"END_TURN\",\"gameId\":\"g\",\"playerId\":\"ann\"}");
+        assertTrue(c.last().contains("Not your turn"));
+    }
+}
@@ -3,6 +3,9 @@ package edu.jhu.clueless;
 import edu.jhu.clueless.engine.Lobby;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 
 public class LobbyTest {
@@ -36,4 +39,51 @@ public class LobbyTest {
         // character GREEN becomes available again
         assertTrue(lobby.getAvailableCharacters().contains("GREEN"));
     }
+
+    @Test
+    public void racingSelectionsGiveEachCharacterToOnePlayer() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            Lobby lobby = new Lobby("race");
+            CountDownLatch go = new CountDownLatch(1);
+            AtomicInteger wins = new AtomicInteger();
+            Thread[] ts = new Thread[4];
+            for (int t = 0; t < ts.length; t++) {
+                String player = "p" + t;
+                ts[t] = new Thread(() -> {
+                    lobby.join(player);
+                    try { go.await(); } catch (InterruptedException e) { return; }
+                    if (lobby.selectCharacter(player, "SCARLET")) wins.incrementAndGet();
+                });
+                ts[t].start();
+            }
+            go.countDown();
+            for (Thread t : ts) t.join();
+            assertEquals(1, wins.get());
+            assertEquals(1, lobby.getSelections().size());
+        }
+    }
+
+    @Test
+    public void startChecksTrackJoinsAndVersion() {
+        Lobby lobby = new Lobby("g2");
+        assertFalse(lobby.allReady());
+        lobby.join("alice");
+        long v = lobby.getVersion();
+        lobby.setReady("alice", true);
+        lobby.selectCharacter("alice", "plum");
+        assertTrue(lobby.allReady() && lobby.allSelectedCharacters());
+        assertTrue(lobby.getVersion() > v);
+
+        // a newcomer is neither ready nor seated at a character yet
+        lobby.join("bob");
+        assertFalse(lobby.allReady());
+        assertFalse(lobby.allSelectedCharacters());
+
+        // switching characters frees the old one
+        assertTrue(lobby.selectCharacter("alice", "GREEN"));
+        assertTrue(lobby.getAvailableCharacters().contains("PLUM"));
+        v = lobby.getVersion();
+        lobby.setReady("alice", true); // no change
+        assertEquals(v, lobby.getVersion());
+    }
 }
@@ -0,0 +1,96 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.util.LoggerUtil;
+import edu.jhu.clueless.util.Metrics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class LoggerUtilTest {
+
+    private static final LoggerUtil LOG = LoggerUtil.get("TEST");
+    private final LoggerUtil.Level saved = LoggerUtil.getLevel();
+
+    @After
+    public void restore() throws Exception {
+        LoggerUtil.setOutput(null, 0, 0);
+        LoggerUtil.setLevel(saved);
+        LoggerUtil.setPayloadSample(1);
+    }
+
+    @Test
+    public void disabledLevelsNeverBuildTheMessage() {
+        LoggerUtil.setLevel(LoggerUtil.Level.INFO);
+        AtomicBoolean built = new AtomicBoolean();
+        LOG.debug(() -> { built.set(true); return "expensive"; });
+        LoggerUtil.flush();
+        assertFalse(built.get());
+        assertFalse(LOG.isDebugEnabled());
+    }
+
+    @Test
+    public void recordsFromManyThreadsAreFormattedOnTheAppender() throws Exception {
+        Path dir = Files.createTempDirectory("clue-log");
+        Path file = dir.resolve("server.log");
+        LoggerUtil.setOutput(file, 1 << 20, 2);
+        LoggerUtil.setLevel(LoggerUtil.Level.DEBUG);
+
+        Thread[] ts = new Thread[4];
+        for (int t = 0; t < ts.length; t++) {
+            int id = t;
+            ts[t] = new Thread(() -> { for (int i = 0; i < 500; i++) LOG.info("worker {} line {}", id, i); });
+            ts[t].start();
+        }
+        for (Thread t : ts) t.join();
+        LOG.payload("OUT", "{\"type\":\"ACK\"}");
+        LoggerUtil.flush();
+
+        // other tests' servers may still be logging as they shut down; only count ours
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8).stream().filter(l -> l.contains("[TEST]")).toList();
+        assertEquals(2001, lines.size());
+        assertTrue(lines.get(0), lines.get(0).contains(" INFO  [TEST] ") && lines.get(0).contains(" line "));
+        assertTrue(lines.get(2000), lines.get(2000).endsWith("OUT {\"type\":\"ACK\"}"));
+    }
+
+    @Test
+    public void aThrowingArgumentDoesNotStopTheAppender() throws Exception {
+        Path file = Files.createTempDirectory("clue-log").resolve("bad.log");
+        LoggerUtil.setOutput(file, 1 << 20, 1);
+        LoggerUtil.setLevel(LoggerUtil.Level.DEBUG);
+        long failed = Metrics.value("log.failed");
+        Object bad = new Object() {
+            @Override public String toString() { throw new IllegalStateException("boom"); }
+        };
+        LOG.info("bad {}", bad);
+        LOG.debug(() -> { throw new IllegalStateException("boom"); });
+        LOG.info("still logging");
+        LoggerUtil.flush();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8).stream().filter(l -> l.contains("[TEST]")).toList();
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0), lines.get(0).endsWith("still logging"));
+        assertEquals(failed + 2, Metrics.value("log.failed"));
+    }
+
+    @Test
+    public void rollingFileKeepsAtMostMaxFiles() throws Exception {
+        Path dir = Files.createTempDirectory("clue-log");
+        Path file = dir.resolve("roll.log");
+        LoggerUtil.RollingFile rf = new LoggerUtil.RollingFile(file, 1024, 2);
+        String line = "x".repeat(99) + "\n";
+        for (int i = 0; i < 50; i++) rf.write(line); // ~5 KB through a 1 KB cap
+        rf.close();
+
+        assertTrue(Files.size(file) <= 1024);
+        assertTrue(Files.exists(dir.resolve("roll.log.1")));
+        assertTrue(Files.exists(dir.resolve("roll.log.2")));
+        assertFalse(Files.exists(dir.resolve("roll.log.3")));
+    }
+}
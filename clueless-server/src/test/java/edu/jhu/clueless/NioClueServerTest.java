@@ -0,0 +1,110 @@
+package edu.jhu.clueless;
+
+import com.google.gson.JsonObject;
+import edu.jhu.clueless.network.BinaryCodec;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.MessageType;
+import edu.jhu.clueless.network.NioClueServer;
+import edu.jhu.clueless.network.dto.ClientMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NioClueServerTest {
+
+    private NioClueServer server;
+    private int port;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new NioClueServer(0, new MessageRouter(), 2);
+        Thread t = new Thread(server, "nio-test");
+        t.setDaemon(true);
+        t.start();
+        port = server.awaitBound(5, TimeUnit.SECONDS);
+        assertTrue(port > 0);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void joinIsAckedAndBroadcastToOtherSubscribers() throws Exception {
+        try (Socket a = new Socket("127.0.0.1", port); Socket b = new Socket("127.0.0.1", port)) {
+            a.setSoTimeout(5000);
+            b.setSoTimeout(5000);
+            BufferedReader ra = new BufferedReader(new InputStreamReader(a.getInputStream(), StandardCharsets.UTF_8));
+            BufferedReader rb = new BufferedReader(new InputStreamReader(b.getInputStream(), StandardCharsets.UTF_8));
+
+            send(a, "{\"type\":\"JOIN_LOBBY\",\"correlationId\":\"1\",\"gameId\":\"nio\",\"playerId\":\"alice\"}\n");
+            String ackA = ra.readLine();
+            assertTrue(ackA, ackA.contains("\"type\":\"ACK\"") && ackA.contains("\"for\":\"JOIN_LOBBY\""));
+
+            // split one message across two writes to exercise line framing
+            String join = "{\"type\":\"JOIN_LOBBY\",\"correlationId\":\"2\",\"gameId\":\"nio\",\"playerId\":\"bob\"}\n";
+            send(b, join.substring(0, 20));
+            Thread.sleep(50);
+            send(b, join.substring(20));
+            String ackB = rb.readLine();
+            assertTrue(ackB, ackB.contains("\"for\":\"JOIN_LOBBY\"") && ackB.contains("\"playerId\":\"bob\""));
+
+            String event = ra.readLine();
+            assertTrue(event, event.contains("\"event\":\"LOBBY_JOIN\"") && event.contains("\"playerId\":\"bob\""));
+        }
+    }
+
+    @Test
+    public void malformedLineGetsErrorAndConnectionStaysOpen() throws Exception {
+        try (Socket s = new Socket("127.0.0.1", port)) {
+            s.setSoTimeout(5000);
+            BufferedReader r = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            send(s, "not json\r\n");
+            assertTrue(r.readLine().contains("\"type\":\"ERROR\""));
+            send(s, "{\"type\":\"PING\",\"correlationId\":\"p\"}\n");
+            assertTrue(r.readLine().contains("\"type\":\"PONG\""));
+        }
+    }
+
+    @Test
+    public void binaryClientGetsBinaryFrames() throws Exception {
+        try (Socket s = new Socket("127.0.0.1", port)) {
+            s.setSoTimeout(5000);
+            OutputStream os = s.getOutputStream();
+            ClientMessage join = new ClientMessage(MessageType.JOIN_LOBBY, "1", "bin", "alice", null);
+            byte[] body = BinaryCodec.encode(join);
+            os.write(BinaryCodec.MAGIC);
+            os.write(BinaryCodec.frameHeader(body.length));
+            os.write(body);
+            os.flush();
+
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            int len = in.readUnsignedByte(); // small reply: one-byte varint
+            assertTrue(len < 0x80);
+            byte[] reply = new byte[len];
+            in.readFully(reply);
+            JsonObject ack = BinaryCodec.decode(ByteBuffer.wrap(reply)).getAsJsonObject();
+            assertEquals("ACK", ack.get("type").getAsString());
+            assertEquals("JOIN_LOBBY", ack.get("for").getAsString());
+            assertEquals("alice", ack.get("playerId").getAsString());
+        }
+    }
+
+    private static void send(Socket s, String text) throws Exception {
+        OutputStream os = s.getOutputStream();
+        os.write(text.getBytes(StandardCharsets.UTF_8));
+        os.flush();
+    }
+}
@@ -0,0 +1,133 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.OutboundMessage;
+import edu.jhu.clueless.network.OutboundQueue;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class OutboundQueueTest {
+
+    /** Sink that can be stalled (reports not writable) until released. */
+    private static final class StallableSink implements OutboundQueue.Sink {
+        final List<String> written = new CopyOnWriteArrayList<>();
+        final AtomicInteger flushes = new AtomicInteger();
+        final AtomicReference<String> aborted = new AtomicReference<>();
+        volatile boolean writable = true;
+
+        @Override public void write(OutboundMessage m) { written.add(m.getText()); }
+        @Override public void flush() { flushes.incrementAndGet(); }
+        @Override public boolean isWritable() { return writable; }
+        @Override public void abort(String reason) { aborted.set(reason); }
+    }
+
+    @Test
+    public void dropOldestKeepsNewestMessagesWhilePeerIsStalled() throws Exception {
+        StallableSink sink = new StallableSink();
+        sink.writable = false;
+        OutboundQueue q = new OutboundQueue(sink, new OutboundQueue.Config(3, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0));
+        for (int i = 1; i <= 5; i++) assertTrue(q.offer(new OutboundMessage("m" + i)));
+        assertEquals(3, q.depth());
+        assertEquals(2, q.dropped());
+
+        sink.writable = true;
+        awaitSize(sink.written, 3);
+        assertEquals(List.of("m3", "m4", "m5"), sink.written);
+        assertNull(sink.aborted.get());
+    }
+
+    @Test
+    public void disconnectPolicyAbortsWhenFull() {
+        StallableSink sink = new StallableSink();
+        sink.writable = false;
+        OutboundQueue q = new OutboundQueue(sink, new OutboundQueue.Config(2, OutboundQueue.OverflowPolicy.DISCONNECT, 0));
+        assertTrue(q.offer(new OutboundMessage("a")));
+        assertTrue(q.offer(new OutboundMessage("b")));
+        assertFalse(q.offer(new OutboundMessage("c")));
+        assertNotNull(sink.aborted.get());
+    }
+
+    @Test
+    public void blockPolicyWaitsForRoomThenGivesUp() throws Exception {
+        StallableSink sink = new StallableSink();
+        sink.writable = false;
+        OutboundQueue q = new OutboundQueue(sink, new OutboundQueue.Config(1, OutboundQueue.OverflowPolicy.BLOCK, 300));
+        assertTrue(q.offer(new OutboundMessage("a")));
+
+        // room appears while the producer is waiting
+        CountDownLatch started = new CountDownLatch(1);
+        Thread unstall = new Thread(() -> {
+            started.countDown();
+            try { Thread.sleep(50); } catch (InterruptedException ignored) { }
+            sink.writable = true;
+        });
+        unstall.start();
+        started.await();
+        assertTrue(q.offer(new OutboundMessage("b")));
+        awaitSize(sink.written, 2);
+
+        // nobody drains: producer gives up after the timeout and the peer is dropped
+        sink.writable = false;
+        Thread.sleep(20);
+        assertTrue(q.offer(new OutboundMessage("c")));
+        long t0 = System.nanoTime();
+        assertFalse(q.offer(new OutboundMessage("d")));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0) >= 250);
+        assertNotNull(sink.aborted.get());
+    }
+
+    @Test
+    public void queuedMessagesAreFlushedInBatches() throws Exception {
+        StallableSink sink = new StallableSink();
+        sink.writable = false;
+        OutboundQueue q = new OutboundQueue(sink, new OutboundQueue.Config(100, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0));
+        for (int i = 0; i < 10; i++) q.offer(new OutboundMessage("m" + i));
+        sink.writable = true;
+        awaitSize(sink.written, 10);
+        assertEquals(1, sink.flushes.get());
+    }
+
+    @Test
+    public void flushTickCoalescesMessagesIntoOneBatch() throws Exception {
+        StallableSink sink = new StallableSink();
+        OutboundQueue q = new OutboundQueue(sink, new OutboundQueue.Config(100, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0, false, 50));
+        q.offer(new OutboundMessage("ack"));
+        q.offer(new OutboundMessage("event"));
+        q.offer(new OutboundMessage("disprove"));
+        assertTrue(sink.written.isEmpty()); // nothing goes out before the tick
+        awaitSize(sink.written, 3);
+        assertEquals(1, sink.flushes.get());
+    }
+
+    @Test
+    public void conflationStripsSupersededSnapshotsButKeepsEvents() throws Exception {
+        StallableSink sink = new StallableSink();
+        sink.writable = false;
+        OutboundQueue q = new OutboundQueue(sink, new OutboundQueue.Config(100, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0, true));
+        q.offer(OutboundMessage.snapshot("{\"type\":\"EVENT\",\"event\":\"MOVE\",\"state\":{\"v\":1}}", "state", "state:g1"));
+        q.offer(new OutboundMessage("{\"type\":\"ACK\"}"));
+        q.offer(OutboundMessage.snapshot("{\"type\":\"EVENT\",\"event\":\"TURN\",\"state\":{\"v\":2}}", "state", "state:g1"));
+        q.offer(OutboundMessage.snapshot("{\"type\":\"EVENT\",\"event\":\"MOVE\",\"state\":{\"v\":9}}", "state", "state:g2"));
+
+        sink.writable = true;
+        awaitSize(sink.written, 4);
+        assertEquals(List.of(
+                "{\"type\":\"EVENT\",\"event\":\"MOVE\"}",
+                "{\"type\":\"ACK\"}",
+                "{\"type\":\"EVENT\",\"event\":\"TURN\",\"state\":{\"v\":2}}",
+                "{\"type\":\"EVENT\",\"event\":\"MOVE\",\"state\":{\"v\":9}}"), sink.written);
+    }
+
+    private static void awaitSize(List<?> list, int n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (list.size() < n && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertEquals(n, list.size());
+    }
+}
@@ -0,0 +1,87 @@
+package edu.jhu.clueless;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import edu.jhu.clueless.network.GameLoops;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.RateLimiter;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.network.dto.ClientMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static edu.jhu.clueless.RecordingConnection.awaitTrue;
+import static org.junit.Assert.*;
+
+public class PipeliningTest {
+
+    private GameLoops loops;
+    private MessageRouter router;
+
+    @Before
+    public void setUp() {
+        loops = new GameLoops(2, GameLoops.Placement.LEAST_LOADED);
+        router = new MessageRouter(RateLimiter.unlimited(), loops);
+    }
+
+    @After
+    public void tearDown() {
+        loops.shutdown();
+    }
+
+    @Test
+    public void manyRequestsInFlightAcrossGamesEachAnsweredWithItsCorrelationId() throws Exception {
+        int games = 4, perGame = 20;
+        RecordingConnection c = new RecordingConnection("bot", 1000);
+        // everything is sent before any answer is read
+        for (int j = 0; j < perGame; j++) {
+            for (int g = 0; g < games; g++) {
+                router.route(c, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"correlationId\":\"g" + g + "-" + j
+                        + "\",\"gameId\":\"g" + g + "\",\"playerId\":\"p" + j + "\"}"));
+            }
+        }
+        for (int g = 0; g < games; g++) {
+            router.route(c, CommandDecoder.decode("{\"type\":\"SET_READY\",\"correlationId\":\"g" + g + "-err\",\"gameId\":\"g" + g
+                    + "\",\"playerId\":\"nobody\",\"payload\":{\"ready\":true}}"));
+        }
+        awaitTrue(() -> c.received.size() == games * (perGame + 1));
+
+        Map<String, List<String>> byGame = new HashMap<>();
+        for (String text : c.received) {
+            JsonObject m = JsonParser.parseString(text).getAsJsonObject();
+            assertTrue(text, m.has("correlationId"));
+            String cid = m.get("correlationId").getAsString();
+            String game = cid.substring(0, cid.indexOf('-'));
+            if (cid.endsWith("-err")) {
+                assertEquals("ERROR", m.get("type").getAsString());
+            } else {
+                assertEquals("ACK", m.get("type").getAsString());
+                assertEquals(game, m.get("gameId").getAsString());
+            }
+            byGame.computeIfAbsent(game, k -> new ArrayList<>()).add(cid);
+        }
+        // answers interleave across games but each game's come back in the order it was sent
+        for (int g = 0; g < games; g++) {
+            List<String> expected = new ArrayList<>();
+            for (int j = 0; j < perGame; j++) expected.add("g" + g + "-" + j);
+            expected.add("g" + g + "-err");
+            assertEquals(expected, byGame.get("g" + g));
+        }
+    }
+
+    @Test
+    public void errorsOutsideAGameEchoTheCorrelationIdToo() throws Exception {
+        RecordingConnection c = new RecordingConnection("c", 1000);
+        router.route(c, new ClientMessage(null, "abc", "g", "p", null));
+        awaitTrue(() -> c.received.size() == 1);
+        JsonObject m = JsonParser.parseString(c.received.get(0)).getAsJsonObject();
+        assertEquals("ERROR", m.get("type").getAsString());
+        assertEquals("abc", m.get("correlationId").getAsString());
+    }
+}
@@ -0,0 +1,73 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.MessageType;
+import edu.jhu.clueless.network.RateLimiter;
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.util.Metrics;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    private static Command ping(String gameId) {
+        return CommandDecoder.decode("{\"type\":\"PING\",\"gameId\":\"" + gameId + "\"}");
+    }
+
+    @Test
+    public void burstIsAdmittedThenRejectedUntilRefill() throws Exception {
+        RateLimiter limiter = new RateLimiter(Map.of(MessageType.PING, new RateLimiter.Limit(20, 3)), Map.of());
+        RecordingConnection c = new RecordingConnection("c");
+        for (int i = 0; i < 3; i++) assertTrue(limiter.admit(c, ping("g")));
+        assertFalse(limiter.admit(c, ping("g")));
+
+        Thread.sleep(120); // 20/s refills a token every 50 ms
+        assertTrue(limiter.admit(c, ping("g")));
+    }
+
+    private static Command join(String gameId, String playerId) {
+        return CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"" + gameId + "\",\"playerId\":\"" + playerId + "\"}");
+    }
+
+    @Test
+    public void gameLimitIsSharedAcrossConnections() throws Exception {
+        long before = Metrics.counter("ratelimit.rejected.game").sum();
+        RateLimiter limiter = new RateLimiter(Map.of(), Map.of(MessageType.JOIN_LOBBY, new RateLimiter.Limit(1, 2)));
+        MessageRouter router = new MessageRouter(limiter);
+        RecordingConnection a = new RecordingConnection("a"), b = new RecordingConnection("b");
+        router.route(a, join("shared", "p1"));
+        router.route(b, join("shared", "p2"));
+        router.route(a, join("shared", "p3"));
+        router.route(a, join("other", "p4")); // a different game has its own bucket
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (a.received.size() + b.received.size() < 4 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertTrue(a.received.contains("{\"type\":\"ERROR\",\"message\":\"Rate limited\",\"for\":\"JOIN_LOBBY\"}"));
+        assertTrue(a.received.stream().anyMatch(m -> m.contains("\"ACK\"") && m.contains("p4")));
+        assertFalse(a.received.stream().anyMatch(m -> m.contains("p3")));
+        assertEquals(before + 1, Metrics.counter("ratelimit.rejected.game").sum());
+    }
+
+    @Test
+    public void rejectedMessagesNeverReachTheEngine() throws Exception {
+        RateLimiter limiter = new RateLimiter(Map.of(MessageType.JOIN_LOBBY, new RateLimiter.Limit(0.1, 1)), Map.of());
+        MessageRouter router = new MessageRouter(limiter);
+        RecordingConnection c = new RecordingConnection("c");
+        long before = Metrics.counter("ratelimit.rejected.JOIN_LOBBY").sum();
+        router.route(c, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"rl\",\"playerId\":\"p1\"}"));
+        router.route(c, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"rl\",\"playerId\":\"p2\"}"));
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (c.received.size() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertEquals(2, c.received.size());
+        // the rejection is sent from the calling thread, the ACK from the game's mailbox
+        assertTrue(c.received.contains("{\"type\":\"ERROR\",\"message\":\"Rate limited\",\"for\":\"JOIN_LOBBY\"}"));
+        assertTrue(c.received.stream().anyMatch(m -> m.contains("\"ACK\"") && m.contains("p1")));
+        assertFalse(c.received.stream().anyMatch(m -> m.contains("p2")));
+        assertEquals(before + 1, Metrics.counter("ratelimit.rejected.JOIN_LOBBY").sum());
+    }
+}
@@ -0,0 +1,48 @@
+package edu.jhu.clueless;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import edu.jhu.clueless.network.ClientConnection;
+import edu.jhu.clueless.network.OutboundMessage;
+import edu.jhu.clueless.network.OutboundQueue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * An in-process client for tests that drive a router directly: keeps the text of every
+ * message it is sent. {@link #awaitTrue} waits for what a test expects it to be sent.
+ */
+class RecordingConnection extends ClientConnection {
+    final List<String> received = new CopyOnWriteArrayList<>();
+
+    RecordingConnection(String id) {
+        this(id, 100);
+    }
+
+    /** {@code capacity} bounds its outbound queue; past it the oldest messages are dropped. */
+    RecordingConnection(String id, int capacity) {
+        super(id, new OutboundQueue.Config(capacity, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0));
+    }
+
+    @Override protected void writeToTransport(OutboundMessage m) { received.add(m.getText()); }
+    @Override protected void closeTransport() { }
+
+    String last() { return received.get(received.size() - 1); }
+
+    JsonObject lastJson() { return JsonParser.parseString(last()).getAsJsonObject(); }
+
+    /** Polls {@code cond} for up to five seconds and fails the test if it never holds. */
+    static void awaitTrue(BooleanSupplier cond) throws InterruptedException {
+        awaitTrue(cond, 5000);
+    }
+
+    static void awaitTrue(BooleanSupplier cond, long ms) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + ms;
+        while (!cond.getAsBoolean() && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertTrue(cond.getAsBoolean());
+    }
+}
@@ -0,0 +1,149 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.ClientConnection;
+import edu.jhu.clueless.network.GameLoops;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.OutboundMessage;
+import edu.jhu.clueless.network.OutboundQueue;
+import edu.jhu.clueless.network.RateLimiter;
+import edu.jhu.clueless.network.Replicator;
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandDecoder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Primary throughput with and without a standby attached. Not a unit test (surefire ignores
+ * it); run it by hand, e.g.
+ *
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) edu.jhu.clueless.ReplicationBenchmark 2000 100 50
+ *
+ * Arguments: clients (default 2000), games (default 100), SET_READY requests per client per
+ * round (default 50). Clients are in-process connections that count their ACKs, as in
+ * {@link SplitTierBenchmark}. With a standby, every applied command is also shipped by a
+ * {@link Replicator} over a Unix domain socket to a standby in a child JVM (App with
+ * clueless.role=standby) with the same classpath; what it costs the primary is the difference
+ * in requests per second. After each round the replicator's backlog and lag show whether the
+ * standby kept up. The standby re-applies everything it is sent, so on a machine with fewer
+ * cores than the two processes want the difference also includes its share of the CPU; the
+ * CPU the replicator's own threads (encode, write, read acks) used, as a share of this JVM's,
+ * is printed too and doesn't depend on the core count.
+ *
+ * Reports requests per second for each setup over a few rounds; the first is warm-up.
+ */
+public class ReplicationBenchmark {
+
+    private static final class CountingConnection extends ClientConnection {
+        final LongAdder acks;
+
+        CountingConnection(String id, LongAdder acks) {
+            super(id, new OutboundQueue.Config(1 << 16, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0));
+            this.acks = acks;
+        }
+
+        @Override protected void writeToTransport(OutboundMessage m) {
+            if (m.getText().startsWith("{\"type\":\"ACK\"")) acks.increment();
+        }
+        @Override protected void closeTransport() { }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int perClient = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("primary alone:");
+        run(new MessageRouter(RateLimiter.unlimited(), new GameLoops(threads, GameLoops.Placement.LEAST_LOADED)), null,
+                clients, games, perClient);
+
+        Path dir = Files.createTempDirectory("clueless-repl-bench");
+        Path socket = dir.resolve("standby.sock");
+        Process standby = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "-Dclueless.role=standby", "-Dclueless.replication.socket=" + socket,
+                "-Dclueless.log.level=WARN", "edu.jhu.clueless.App")
+                .inheritIO().start();
+        Replicator replicator = null;
+        try {
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!Files.exists(socket) && System.currentTimeMillis() < deadline) Thread.sleep(20);
+            MessageRouter primary = new MessageRouter(RateLimiter.unlimited(), new GameLoops(threads, GameLoops.Placement.LEAST_LOADED));
+            replicator = new Replicator(socket, primary);
+            replicator.start();
+            System.out.println("primary + standby process (unix socket):");
+            run(primary, replicator, clients, games, perClient);
+        } finally {
+            standby.destroy(); // before the replicator goes, so it never promotes
+            standby.waitFor(5, TimeUnit.SECONDS);
+            if (replicator != null) replicator.close();
+            Files.deleteIfExists(socket);
+            new File(dir.toString()).delete();
+        }
+        System.exit(0);
+    }
+
+    private static void run(MessageRouter router, Replicator replicator, int clients, int games, int perClient) throws Exception {
+        LongAdder acks = new LongAdder();
+        List<CountingConnection> conns = new ArrayList<>();
+        List<Command> ready = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            CountingConnection c = new CountingConnection("c" + i, acks);
+            conns.add(c);
+            String game = "bench-" + (i % games);
+            router.route(c, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"" + game + "\",\"playerId\":\"p" + i + "\"}"));
+            ready.add(CommandDecoder.decode("{\"type\":\"SET_READY\",\"gameId\":\"" + game + "\",\"playerId\":\"p" + i + "\",\"payload\":{\"ready\":true}}"));
+        }
+        if (!await(acks, clients)) { System.out.println("  joins timed out at " + acks.sum()); return; }
+
+        for (int round = 0; round < 4; round++) {
+            acks.reset();
+            long total = (long) clients * perClient;
+            long cpu = processCpuNanos(), replicationCpu = replicationCpuNanos();
+            long start = System.nanoTime();
+            for (int k = 0; k < perClient; k++) {
+                for (int i = 0; i < clients; i++) router.route(conns.get(i), ready.get(i));
+            }
+            boolean done = await(acks, total);
+            double secs = (System.nanoTime() - start) / 1e9;
+            String standby = replicator == null ? ""
+                    : String.format(", replicator %.1f%% of CPU, standby backlog %,d, lag %d ms",
+                            100.0 * (replicationCpuNanos() - replicationCpu) / Math.max(1, processCpuNanos() - cpu),
+                            replicator.backlog(), replicator.lagMillis());
+            System.out.printf("  round %d: %,d requests in %.2f s = %,.0f req/s%s%s%n",
+                    round, total, secs, acks.sum() / secs, standby, done ? "" : " (timed out)");
+        }
+        for (CountingConnection c : conns) c.close();
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    private static long replicationCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long sum = 0;
+        for (ThreadInfo t : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (t == null || !t.getThreadName().startsWith("replicator")) continue;
+            long ns = threads.getThreadCpuTime(t.getThreadId());
+            if (ns > 0) sum += ns;
+        }
+        return sum;
+    }
+
+    private static boolean await(LongAdder acks, long n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (acks.sum() < n && System.currentTimeMillis() < deadline) Thread.sleep(1);
+        return acks.sum() >= n;
+    }
+}
@@ -0,0 +1,221 @@
+package edu.jhu.clueless;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import edu.jhu.clueless.engine.GameEngine;
+import edu.jhu.clueless.engine.GameState;
+import edu.jhu.clueless.network.GameLoops;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.RateLimiter;
+import edu.jhu.clueless.network.Replicator;
+import edu.jhu.clueless.network.Standby;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static edu.jhu.clueless.RecordingConnection.awaitTrue;
+import static org.junit.Assert.*;
+
+public class ReplicationTest {
+
+    private Path dir;
+    private final List<GameLoops> loops = new ArrayList<>();
+    private MessageRouter primary, backup;
+    private Replicator replicator;
+    private Standby standby;
+
+    @Before
+    public void connect() throws Exception {
+        dir = Files.createTempDirectory("clueless-repl");
+        primary = router();
+        backup = router();
+        standby = new Standby(dir.resolve("standby.sock"), backup, 200);
+        standby.start();
+        replicator = new Replicator(dir.resolve("standby.sock"), primary);
+        replicator.start();
+    }
+
+    @After
+    public void shutdown() throws Exception {
+        replicator.close();
+        standby.close();
+        for (GameLoops l : loops) l.shutdown();
+        Files.deleteIfExists(dir.resolve("standby.sock"));
+        Files.deleteIfExists(dir);
+    }
+
+    private MessageRouter router() {
+        GameLoops l = new GameLoops(1, GameLoops.Placement.LEAST_LOADED);
+        loops.add(l);
+        return new MessageRouter(RateLimiter.unlimited(), l);
+    }
+
+    private static void send(MessageRouter router, RecordingConnection c, String json) throws InterruptedException {
+        int before = c.received.size();
+        router.route(c, CommandDecoder.decode(json));
+        awaitTrue(() -> c.received.size() > before);
+    }
+
+    private void playUntilDealt(RecordingConnection c) throws InterruptedException {
+        for (String p : new String[] {"ann", "bo"}) {
+            send(primary, c, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"" + p + "\"}");
+        }
+        send(primary, c, "{\"type\":\"SELECT_CHARACTER\",\"gameId\":\"g\",\"playerId\":\"ann\",\"payload\":{\"character\":\"SCARLET\"}}");
+        send(primary, c, "{\"type\":\"SELECT_CHARACTER\",\"gameId\":\"g\",\"playerId\":\"bo\",\"payload\":{\"character\":\"PLUM\"}}");
+        send(primary, c, "{\"type\":\"SET_READY\",\"gameId\":\"g\",\"playerId\":\"ann\",\"payload\":{\"ready\":true}}");
+        send(primary, c, "{\"type\":\"SET_READY\",\"gameId\":\"g\",\"playerId\":\"bo\",\"payload\":{\"ready\":true}}");
+        send(primary, c, "{\"type\":\"START_GAME\",\"gameId\":\"g\",\"playerId\":\"ann\"}");
+        assertTrue(c.received.get(c.received.size() - 1).contains("\"ACK\""));
+    }
+
+    private static String resync(MessageRouter router) throws InterruptedException {
+        RecordingConnection c = new RecordingConnection("resync");
+        send(router, c, "{\"type\":\"RESYNC\",\"gameId\":\"g\"}");
+        return c.received.get(0);
+    }
+
+    @Test
+    public void standbyHoldsTheSameGameIncludingTheDeal() throws Exception {
+        playUntilDealt(new RecordingConnection("c"));
+        // a command is shipped just after its reply goes out, so wait for all seven to land
+        awaitTrue(() -> standby.appliedSeq() >= 7 && replicator.backlog() == 0);
+        assertEquals(0, replicator.lagMillis());
+        assertTrue(standby.appliedSeq() >= 7);
+
+        String mine = resync(primary), theirs = resync(backup);
+        assertTrue(mine.contains("\"hand\":[{"));
+        assertEquals(mine, theirs);
+    }
+
+    @Test
+    public void standbyTakesOverWhenThePrimaryGoes() throws Exception {
+        playUntilDealt(new RecordingConnection("c"));
+        // a command is shipped just after its reply goes out, so wait for all seven to land
+        awaitTrue(() -> standby.appliedSeq() >= 7 && replicator.backlog() == 0);
+        String before = resync(primary);
+
+        replicator.close(); // the primary dies
+        awaitTrue(standby::isPromoted);
+        assertEquals(before, resync(backup));
+
+        // the promoted standby carries on with the game
+        RecordingConnection ann = new RecordingConnection("ann");
+        send(backup, ann, "{\"type\":\"END_TURN\",\"gameId\":\"g\",\"playerId\":\"ann\"}");
+        assertTrue(ann.received.get(0), ann.received.get(0).contains("\"ACK\""));
+    }
+
+    @Test
+    public void sessionTokenStillResumesAfterFailover() throws Exception {
+        RecordingConnection ann = new RecordingConnection("ann");
+        send(primary, ann, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"ann\"}");
+        JsonObject joined = JsonParser.parseString(ann.received.get(0)).getAsJsonObject();
+        String token = joined.get("sessionToken").getAsString();
+        awaitTrue(() -> standby.appliedSeq() >= 1 && replicator.backlog() == 0);
+
+        replicator.close(); // the primary dies
+        awaitTrue(standby::isPromoted);
+
+        RecordingConnection back = new RecordingConnection("ann-again");
+        send(backup, back, "{\"type\":\"RESUME\",\"gameId\":\"g\",\"payload\":{\"token\":\"" + token + "\",\"lastSeq\":"
+                + joined.get("seq").getAsLong() + "}}");
+        JsonObject ack = JsonParser.parseString(back.received.get(0)).getAsJsonObject();
+        assertEquals(back.received.get(0), "RESUME", ack.get("for").getAsString());
+        assertEquals("ann", ack.get("playerId").getAsString());
+    }
+
+    @Test
+    public void droppedEventsLeaveTheStandbyOutOfSyncAndUnpromoted() throws Exception {
+        MessageRouter p = router(), b = router();
+        Path sock = dir.resolve("late.sock");
+        System.setProperty("clueless.replication.maxBacklog", "3");
+        System.setProperty("clueless.replication.retryMs", "50");
+        Replicator r;
+        try {
+            r = new Replicator(sock, p);
+        } finally {
+            System.clearProperty("clueless.replication.maxBacklog");
+            System.clearProperty("clueless.replication.retryMs");
+        }
+        Standby late = new Standby(sock, b, 200);
+        try {
+            // no standby yet: the first three events are held, the next four dropped
+            r.start();
+            RecordingConnection c = new RecordingConnection("c");
+            for (int i = 0; i < 7; i++) send(p, c, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"p" + i + "\"}");
+            awaitTrue(() -> r.backlog() == 3);
+
+            late.start();
+            awaitTrue(() -> late.appliedSeq() == 3 && r.backlog() == 0);
+            assertTrue(late.isInSync());
+            send(p, c, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"p7\"}");
+            awaitTrue(() -> late.appliedSeq() == 8);
+            assertFalse(late.isInSync());
+
+            r.close(); // the primary dies, but this standby's games aren't the primary's
+            Thread.sleep(600);
+            assertFalse(late.isPromoted());
+        } finally {
+            r.close();
+            late.close();
+            Files.deleteIfExists(sock);
+        }
+    }
+
+    @Test
+    public void malformedDealFrameIsSkippedAndTheLinkStaysUp() throws Exception {
+        MessageRouter b = router();
+        Path sock = dir.resolve("raw.sock");
+        Standby s = new Standby(sock, b, 200);
+        s.start();
+        try (SocketChannel ch = SocketChannel.open(UnixDomainSocketAddress.of(sock))) {
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(ch));
+            // op, sequence number, body length, body: as the replicator writes them
+            frame(out, 'D', 1, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"ann\"}"); // no seed
+            frame(out, 'E', 2, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"bo\"}");
+            awaitTrue(() -> s.appliedSeq() == 2);
+            assertTrue(s.isInSync());
+            assertFalse(s.isPromoted());
+            // queued behind the replayed JOIN on the game's mailbox, so it sees bo in the lobby
+            RecordingConnection bo = new RecordingConnection("bo");
+            send(b, bo, "{\"type\":\"SELECT_CHARACTER\",\"gameId\":\"g\",\"playerId\":\"bo\",\"payload\":{\"character\":\"PLUM\"}}");
+            assertTrue(bo.received.get(0), bo.received.get(0).contains("\"ACK\""));
+        } finally {
+            s.close();
+            Files.deleteIfExists(sock);
+        }
+    }
+
+    private static void frame(DataOutputStream out, char op, long seq, String body) throws IOException {
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(op);
+        out.writeLong(seq);
+        out.writeInt(b.length);
+        out.write(b);
+        out.flush();
+    }
+
+    @Test
+    public void sameDealSeedDealsTheSameHands() {
+        String[] hands = new String[2];
+        for (int i = 0; i < 2; i++) {
+            GameEngine e = new GameEngine(new GameState());
+            e.joinPlayer("ann", "SCARLET");
+            e.joinPlayer("bo", "PLUM");
+            e.startGame(42L);
+            hands[i] = e.publishSnapshot().toMap().toString();
+        }
+        assertEquals(hands[0], hands[1]);
+    }
+}
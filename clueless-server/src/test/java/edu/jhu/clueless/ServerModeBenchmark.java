@@ -0,0 +1,160 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.ClueServer;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.RateLimiter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares ClueServer's POOLED and VIRTUAL modes with many idle and active TCP connections.
+ * Not a unit test (surefire ignores it); run it by hand, e.g.
+ *
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -Xss256k -cp target/classes:target/test-classes:$(cat cp.txt) edu.jhu.clueless.ServerModeBenchmark 1000,10000,50000 3
+ *
+ * Arguments: comma-separated connection counts (default 1000,10000,50000) and the number of
+ * PING round trips per connection in the active phase (default 3). Clients are spread over
+ * 127.0.0.x source addresses so 50k connections don't exhaust one address's ephemeral ports;
+ * the process still needs a file-descriptor limit of roughly 2x the largest count.
+ *
+ * For each mode and count it reports: connections established, how many of them the server
+ * actually services (a PONG comes back) within the deadline, p50/p99 round-trip latency,
+ * throughput, live thread count and heap in use.
+ */
+public class ServerModeBenchmark {
+
+    private static final byte[] PING = "{\"type\":\"PING\",\"correlationId\":\"b\"}\n".getBytes(StandardCharsets.UTF_8);
+    private static final long PHASE_TIMEOUT_MS = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        int[] counts = Arrays.stream((args.length > 0 ? args[0] : "1000,10000,50000").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        System.out.printf("%-8s %7s %10s %9s %9s %9s %10s %8s %9s%n",
+                "mode", "conns", "connected", "serviced", "p50(us)", "p99(us)", "msgs/s", "threads", "heapMB");
+        for (ClueServer.Mode mode : ClueServer.Mode.values()) {
+            for (int n : counts) {
+                run(mode, n, rounds);
+            }
+        }
+    }
+
+    private static void run(ClueServer.Mode mode, int n, int rounds) throws Exception {
+        ClueServer server = new ClueServer(0, new MessageRouter(RateLimiter.unlimited()), mode);
+        Thread t = new Thread(server, "bench-server");
+        t.setDaemon(true);
+        t.start();
+        int port = server.awaitBound(5, TimeUnit.SECONDS);
+
+        Selector selector = Selector.open();
+        List<Client> clients = new ArrayList<>(n);
+        try {
+            // idle phase: open everything and let it sit
+            for (int i = 0; i < n; i++) {
+                try {
+                    SocketChannel ch = SocketChannel.open();
+                    ch.bind(new InetSocketAddress("127.0.0." + (2 + i / 20_000), 0));
+                    ch.connect(new InetSocketAddress("127.0.0.1", port));
+                    ch.configureBlocking(false);
+                    Client c = new Client(ch);
+                    ch.register(selector, SelectionKey.OP_READ, c);
+                    clients.add(c);
+                } catch (IOException e) {
+                    System.err.println("connect " + i + " failed: " + e.getMessage());
+                    break;
+                }
+            }
+            Thread.sleep(1000);
+            long idleThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+            long idleHeap = usedHeapMb();
+            System.out.printf("%-8s %7d %10d %9s %9s %9s %10s %8d %9d%n",
+                    mode + "/idle", n, clients.size(), "-", "-", "-", "-", idleThreads, idleHeap);
+
+            // active phase: every connection does `rounds` PING/PONG round trips
+            long[] latencies = new long[clients.size() * rounds];
+            int done = 0;
+            long start = System.nanoTime();
+            for (Client c : clients) c.ping();
+            long deadline = System.currentTimeMillis() + PHASE_TIMEOUT_MS;
+            while (done < latencies.length && System.currentTimeMillis() < deadline) {
+                if (selector.select(100) == 0) continue;
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    Client c = (Client) key.attachment();
+                    int lines = c.readLines();
+                    for (int i = 0; i < lines; i++) {
+                        latencies[done++] = System.nanoTime() - c.sentAt;
+                        if (++c.completed < rounds) c.ping();
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            int serviced = 0;
+            for (Client c : clients) if (c.completed > 0) serviced++;
+            long[] got = Arrays.copyOf(latencies, done);
+            Arrays.sort(got);
+            System.out.printf("%-8s %7d %10d %9d %9d %9d %10.0f %8d %9d%n",
+                    mode + "/active", n, clients.size(), serviced,
+                    pct(got, 0.50) / 1000, pct(got, 0.99) / 1000,
+                    done / (elapsed / 1e9),
+                    ManagementFactory.getThreadMXBean().getThreadCount(), usedHeapMb());
+        } finally {
+            for (Client c : clients) { try { c.ch.close(); } catch (IOException ignored) {} }
+            selector.close();
+            server.stop();
+            Thread.sleep(500);
+            System.gc();
+        }
+    }
+
+    private static long pct(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static long usedHeapMb() {
+        Runtime rt = Runtime.getRuntime();
+        return (rt.totalMemory() - rt.freeMemory()) / (1024 * 1024);
+    }
+
+    private static final class Client {
+        final SocketChannel ch;
+        final ByteBuffer in = ByteBuffer.allocate(512);
+        long sentAt;
+        int completed;
+
+        Client(SocketChannel ch) { this.ch = ch; }
+
+        void ping() throws IOException {
+            sentAt = System.nanoTime();
+            ByteBuffer b = ByteBuffer.wrap(PING);
+            while (b.hasRemaining()) ch.write(b);
+        }
+
+        /** Reads what's available and returns how many complete lines arrived. */
+        int readLines() throws IOException {
+            int lines = 0;
+            in.clear();
+            int r = ch.read(in);
+            if (r <= 0) return 0;
+            for (int i = 0; i < r; i++) if (in.get(i) == '\n') lines++;
+            return lines;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package edu.jhu.clueless;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import edu.jhu.clueless.network.BinaryCodec;
+import edu.jhu.clueless.network.GameLoops;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.MessageType;
+import edu.jhu.clueless.network.RateLimiter;
+import edu.jhu.clueless.network.command.CommandDecoder;
+import edu.jhu.clueless.network.dto.ClientMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static edu.jhu.clueless.RecordingConnection.awaitTrue;
+import static org.junit.Assert.*;
+
+public class SessionResumeTest {
+
+    private GameLoops loops;
+    private MessageRouter router;
+
+    @Before
+    public void setUp() {
+        loops = new GameLoops(1, GameLoops.Placement.LEAST_LOADED);
+        router = new MessageRouter(RateLimiter.unlimited(), loops);
+    }
+
+    @After
+    public void tearDown() {
+        loops.shutdown();
+    }
+
+    private void send(RecordingConnection c, String json, int expectMore) throws InterruptedException {
+        int before = c.received.size();
+        router.route(c, CommandDecoder.decode(json));
+        awaitTrue(() -> c.received.size() >= before + expectMore);
+    }
+
+    private void send(RecordingConnection c, String json) throws InterruptedException { send(c, json, 1); }
+
+    private void ready(RecordingConnection c, String player, boolean ready) throws InterruptedException {
+        send(c, "{\"type\":\"SET_READY\",\"gameId\":\"g\",\"playerId\":\"" + player + "\",\"payload\":{\"ready\":" + ready + "}}");
+    }
+
+    private static String resume(String token, long lastSeq) {
+        return "{\"type\":\"RESUME\",\"gameId\":\"g\",\"payload\":{\"token\":\"" + token + "\",\"lastSeq\":" + lastSeq + "}}";
+    }
+
+    @Test
+    public void reconnectGetsOnlyTheEventsItMissed() throws Exception {
+        RecordingConnection ann = new RecordingConnection("ann", 200), bo = new RecordingConnection("bo", 200);
+        send(ann, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"ann\"}");
+        String token = ann.lastJson().get("sessionToken").getAsString();
+        assertFalse(token.isEmpty());
+
+        send(bo, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"bo\"}");
+        awaitTrue(() -> ann.received.size() == 2);
+        long seen = ann.lastJson().get("seq").getAsLong();
+        assertEquals("LOBBY_JOIN", ann.lastJson().get("event").getAsString());
+
+        // ann's connection drops; bo carries on
+        ann.close();
+        send(bo, "{\"type\":\"SELECT_CHARACTER\",\"gameId\":\"g\",\"playerId\":\"bo\",\"payload\":{\"character\":\"PLUM\"}}");
+        ready(bo, "bo", true);
+
+        RecordingConnection back = new RecordingConnection("ann-again", 200);
+        send(back, resume(token, seen), 3);
+        JsonObject ack = JsonParser.parseString(back.received.get(0)).getAsJsonObject();
+        assertEquals("RESUME", ack.get("for").getAsString());
+        assertEquals("ann", ack.get("playerId").getAsString());
+        assertEquals(2, ack.get("replayed").getAsInt());
+        assertEquals(seen + 2, ack.get("seq").getAsLong());
+        assertTrue(back.received.get(1).contains("\"seq\":" + (seen + 1)));
+        assertTrue(back.received.get(1).contains("CHARACTER_SELECTED"));
+        assertTrue(back.received.get(2).contains("\"seq\":" + (seen + 2)));
+        assertTrue(back.received.get(2).contains("READY_CHANGED"));
+
+        // and is subscribed again
+        ready(bo, "bo", false);
+        awaitTrue(() -> back.received.size() == 4);
+        assertEquals(seen + 3, back.lastJson().get("seq").getAsLong());
+    }
+
+    @Test
+    public void resumeWorksOverTheBinaryProtocol() throws Exception {
+        RecordingConnection ann = new RecordingConnection("ann", 200), bo = new RecordingConnection("bo", 200);
+        send(ann, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"ann\"}");
+        String token = ann.lastJson().get("sessionToken").getAsString();
+        send(bo, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"bo\"}");
+        awaitTrue(() -> ann.received.size() == 2);
+        long seen = ann.lastJson().get("seq").getAsLong();
+        ann.close();
+        ready(bo, "bo", true);
+
+        // lastSeq goes over the wire as a binary INT
+        byte[] body = BinaryCodec.encode(new ClientMessage(MessageType.RESUME, "r1", "g", null, Map.of("token", token, "lastSeq", seen)));
+        RecordingConnection back = new RecordingConnection("ann-again", 200);
+        router.route(back, BinaryCodec.decodeCommand(ByteBuffer.wrap(body)));
+        awaitTrue(() -> back.received.size() == 2);
+        JsonObject ack = JsonParser.parseString(back.received.get(0)).getAsJsonObject();
+        assertEquals(back.received.get(0), "ACK", ack.get("type").getAsString());
+        assertEquals(1, ack.get("replayed").getAsInt());
+        assertTrue(back.received.get(1).contains("READY_CHANGED"));
+    }
+
+    @Test
+    public void tooFarBehindGetsASnapshot() throws Exception {
+        RecordingConnection ann = new RecordingConnection("ann", 200), bo = new RecordingConnection("bo", 200);
+        send(ann, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"ann\"}");
+        String token = ann.lastJson().get("sessionToken").getAsString();
+        long seen = ann.lastJson().get("seq").getAsLong();
+        send(bo, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"bo\"}");
+        ann.close();
+        for (int i = 0; i < 100; i++) ready(bo, "bo", i % 2 == 0); // more than the log holds
+
+        RecordingConnection back = new RecordingConnection("ann-again", 200);
+        send(back, resume(token, seen));
+        JsonObject ack = back.lastJson();
+        assertEquals("RESUME", ack.get("for").getAsString());
+        assertTrue(ack.get("snapshot").getAsBoolean());
+        assertEquals(seen + 102, ack.get("seq").getAsLong());
+        assertTrue(ack.getAsJsonObject("lobby").getAsJsonArray("players").size() == 2);
+        assertEquals(1, back.received.size());
+    }
+
+    @Test
+    public void unknownTokenIsRefused() throws Exception {
+        RecordingConnection ann = new RecordingConnection("ann", 200);
+        send(ann, "{\"type\":\"JOIN_LOBBY\",\"gameId\":\"g\",\"playerId\":\"ann\"}");
+        RecordingConnection stranger = new RecordingConnection("stranger", 200);
+        send(stranger, resume("not-a-token", 0));
+        assertEquals("ERROR", stranger.lastJson().get("type").getAsString());
+    }
+}
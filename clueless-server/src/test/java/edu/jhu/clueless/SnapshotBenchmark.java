@@ -0,0 +1,40 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.engine.*;
+
+/**
+ * Cost of publishing a game snapshot after an action. Not a unit test (surefire ignores it);
+ * run it by hand, e.g.
+ *
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) edu.jhu.clueless.SnapshotBenchmark 2000000
+ *
+ * Argument: iterations per case (default 1000000). A six-player dealt game ends a turn each
+ * iteration, so one player view changes and everything else is shared. Reports ns per
+ * publish with structural sharing, ns per capture without a previous snapshot (everything
+ * rebuilt), and ns per toMap() (the plain-collections form the router serializes).
+ */
+public class SnapshotBenchmark {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        GameEngine engine = new GameEngine(new GameState());
+        String[] chars = {"GREEN", "MUSTARD", "PEACOCK", "PLUM", "SCARLET", "WHITE"};
+        for (int i = 0; i < chars.length; i++) engine.joinPlayer("p" + i, chars[i]);
+        engine.startGame();
+
+        for (int round = 0; round < 3; round++) { // the first round is warm-up
+            long shared = time(n, () -> { engine.advanceTurn(); engine.publishSnapshot(); });
+            long rebuilt = time(n, () -> { engine.advanceTurn(); GameSnapshot.capture(engine.getGameState(), engine.getBoard(), null); });
+            long toMap = time(n, () -> engine.getSnapshot().toMap());
+            System.out.printf("round %d: publish %6.1f ns   capture-from-scratch %6.1f ns   toMap %6.1f ns%n",
+                    round, (double) shared / n, (double) rebuilt / n, (double) toMap / n);
+        }
+    }
+
+    private static long time(int n, Runnable r) {
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) r.run();
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,116 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.ClientConnection;
+import edu.jhu.clueless.network.Gateway;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.OutboundMessage;
+import edu.jhu.clueless.network.OutboundQueue;
+import edu.jhu.clueless.network.RateLimiter;
+import edu.jhu.clueless.network.command.Command;
+import edu.jhu.clueless.network.command.CommandDecoder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-process server vs. gateway + engine process over a Unix domain socket. Not a unit
+ * test (surefire ignores it); run it by hand, e.g.
+ *
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) edu.jhu.clueless.SplitTierBenchmark 2000 100 50
+ *
+ * Arguments: clients (default 2000), games (default 100), SET_READY requests per client per
+ * round (default 50). Clients are in-process connections that count their ACKs, so what is
+ * measured is the server side: routing, mailboxes and engine work, plus, when split, the
+ * encode/frame/decode hop to the engine and the reply hop back. The engine runs in a child
+ * JVM (App with clueless.role=engine) with the same classpath.
+ *
+ * Reports requests per second for each setup over a few rounds; the first is warm-up.
+ */
+public class SplitTierBenchmark {
+
+    private static final class CountingConnection extends ClientConnection {
+        final LongAdder acks;
+
+        CountingConnection(String id, LongAdder acks) {
+            super(id, new OutboundQueue.Config(1 << 16, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0));
+            this.acks = acks;
+        }
+
+        @Override protected void writeToTransport(OutboundMessage m) {
+            if (m.getText().startsWith("{\"type\":\"ACK\"")) acks.increment();
+        }
+        @Override protected void closeTransport() { }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int perClient = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        System.out.println("single process:");
+        run(new MessageRouter(RateLimiter.unlimited()), clients, games, perClient);
+
+        Path dir = Files.createTempDirectory("clueless-split");
+        Path socket = dir.resolve("engine.sock");
+        Process engine = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "-Dclueless.role=engine", "-Dclueless.engine.socket=" + socket,
+                "-Dclueless.rate.conn.default=1000000/1000000", "-Dclueless.rate.game.default=1000000/1000000",
+                "-Dclueless.log.level=WARN", "edu.jhu.clueless.App")
+                .inheritIO().start();
+        try {
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!Files.exists(socket) && System.currentTimeMillis() < deadline) Thread.sleep(20);
+            MessageRouter gatewayRouter = new MessageRouter(RateLimiter.unlimited());
+            new Gateway("bench", List.of(new Gateway.Engine("engine", socket)), gatewayRouter).start();
+            System.out.println("gateway + engine process (unix socket):");
+            run(gatewayRouter, clients, games, perClient);
+        } finally {
+            engine.destroy();
+            engine.waitFor(5, TimeUnit.SECONDS);
+            Files.deleteIfExists(socket);
+            new File(dir.toString()).delete();
+        }
+        System.exit(0);
+    }
+
+    private static void run(MessageRouter router, int clients, int games, int perClient) throws Exception {
+        LongAdder acks = new LongAdder();
+        List<CountingConnection> conns = new ArrayList<>();
+        List<Command> ready = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            CountingConnection c = new CountingConnection("c" + i, acks);
+            conns.add(c);
+            String game = "bench-" + (i % games);
+            router.route(c, CommandDecoder.decode("{\"type\":\"JOIN_LOBBY\",\"gameId\":\"" + game + "\",\"playerId\":\"p" + i + "\"}"));
+            ready.add(CommandDecoder.decode("{\"type\":\"SET_READY\",\"gameId\":\"" + game + "\",\"playerId\":\"p" + i + "\",\"payload\":{\"ready\":true}}"));
+        }
+        if (!await(acks, clients)) { System.out.println("  joins timed out at " + acks.sum()); return; }
+
+        for (int round = 0; round < 4; round++) {
+            acks.reset();
+            long total = (long) clients * perClient;
+            long start = System.nanoTime();
+            for (int k = 0; k < perClient; k++) {
+                for (int i = 0; i < clients; i++) router.route(conns.get(i), ready.get(i));
+            }
+            boolean done = await(acks, total);
+            double secs = (System.nanoTime() - start) / 1e9;
+            System.out.printf("  round %d: %,d requests in %.2f s = %,.0f req/s%s%n",
+                    round, total, secs, acks.sum() / secs, done ? "" : " (timed out)");
+        }
+        for (CountingConnection c : conns) c.close();
+    }
+
+    private static boolean await(LongAdder acks, long n) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (acks.sum() < n && System.currentTimeMillis() < deadline) Thread.sleep(1);
+        return acks.sum() >= n;
+    }
+}
@@ -0,0 +1,94 @@
+package edu.jhu.clueless;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.MessageType;
+import edu.jhu.clueless.network.dto.ClientMessage;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static edu.jhu.clueless.RecordingConnection.awaitTrue;
+import static org.junit.Assert.*;
+
+public class StateDeltaTest {
+
+    private static ClientMessage msg(MessageType type, String player, Map<String, Object> payload) {
+        return new ClientMessage(type, null, "g", player, payload);
+    }
+
+    @Test
+    public void optedInClientGetsDeltaAfterFullSnapshot() throws Exception {
+        MessageRouter router = new MessageRouter();
+        RecordingConnection legacy = new RecordingConnection("legacy", 1000);
+        RecordingConnection delta = new RecordingConnection("delta", 1000);
+
+        router.route(legacy, msg(MessageType.JOIN_LOBBY, "alice", null));
+        router.route(delta, msg(MessageType.JOIN_LOBBY, "bob", Map.of("deltas", true)));
+        router.route(legacy, msg(MessageType.SELECT_CHARACTER, "alice", Map.of("character", "GREEN")));
+        router.route(delta, msg(MessageType.SELECT_CHARACTER, "bob", Map.of("character", "PLUM")));
+        router.route(legacy, msg(MessageType.SET_READY, "alice", Map.of("ready", true)));
+        router.route(delta, msg(MessageType.SET_READY, "bob", Map.of("ready", true)));
+        router.route(legacy, msg(MessageType.START_GAME, "alice", null));
+
+        // the deal is always a full snapshot, versioned for the delta client only
+        JsonObject started = awaitLast(delta, 6);
+        assertEquals("START_GAME", started.get("event").getAsString());
+        assertTrue(started.has("state"));
+        long v1 = started.get("version").getAsLong();
+        assertFalse(awaitLast(legacy, 7).has("version"));
+
+        String current = started.getAsJsonObject("state").get("currentPlayer").getAsString();
+        RecordingConnection actor = current.equals("alice") ? legacy : delta;
+        router.route(actor, msg(MessageType.END_TURN, current, null));
+
+        JsonObject turn = awaitLast(delta, 7);
+        assertFalse(turn.has("state"));
+        assertEquals(v1 + 1, turn.get("version").getAsLong());
+        assertEquals(v1, turn.get("baseVersion").getAsLong());
+        JsonObject changes = turn.getAsJsonObject("delta");
+        assertNotEquals(current, changes.get("currentPlayer").getAsString());
+        assertFalse(changes.has("rooms"));
+
+        assertTrue(awaitLast(legacy, 8).has("state"));
+
+        // a resync hands back the full state at the current version
+        router.route(delta, msg(MessageType.RESYNC, "bob", null));
+        JsonObject resync = awaitLast(delta, 8);
+        assertEquals("RESYNC", resync.get("for").getAsString());
+        assertEquals(v1 + 1, resync.get("version").getAsLong());
+        assertTrue(resync.has("state"));
+    }
+
+    @Test
+    public void clientThatMissedAVersionGetsFullSnapshot() throws Exception {
+        MessageRouter router = new MessageRouter();
+        RecordingConnection a = new RecordingConnection("a", 1000);
+        RecordingConnection b = new RecordingConnection("b", 1000);
+        router.route(a, msg(MessageType.JOIN_LOBBY, "alice", Map.of("deltas", true)));
+        router.route(b, msg(MessageType.JOIN_LOBBY, "bob", Map.of("deltas", true)));
+        router.route(a, msg(MessageType.SELECT_CHARACTER, "alice", Map.of("character", "GREEN")));
+        router.route(b, msg(MessageType.SELECT_CHARACTER, "bob", Map.of("character", "PLUM")));
+        router.route(a, msg(MessageType.SET_READY, "alice", Map.of("ready", true)));
+        router.route(b, msg(MessageType.SET_READY, "bob", Map.of("ready", true)));
+        router.route(a, msg(MessageType.START_GAME, "alice", null));
+        JsonObject started = awaitLast(b, 6);
+
+        // pretend b lost track of the version it holds
+        b.setStateVersion("g", -1);
+        String current = started.getAsJsonObject("state").get("currentPlayer").getAsString();
+        router.route(current.equals("alice") ? a : b, msg(MessageType.END_TURN, current, null));
+
+        JsonObject turn = awaitLast(b, 7);
+        assertTrue(turn.has("state"));
+        assertFalse(turn.has("delta"));
+        assertEquals(started.get("version").getAsLong() + 1, turn.get("version").getAsLong());
+    }
+
+    private static JsonObject awaitLast(RecordingConnection c, int count) throws InterruptedException {
+        awaitTrue(() -> c.received.size() >= count);
+        assertEquals(count, c.received.size());
+        return JsonParser.parseString(c.received.get(count - 1)).getAsJsonObject();
+    }
+}
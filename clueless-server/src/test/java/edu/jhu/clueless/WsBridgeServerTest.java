@@ -0,0 +1,81 @@
+package edu.jhu.clueless;
+
+import edu.jhu.clueless.network.MessageRouter;
+import edu.jhu.clueless.network.WsBridgeServer;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WsBridgeServerTest {
+
+    private WsBridgeServer server;
+    private int port;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new WsBridgeServer(0, new MessageRouter());
+        server.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((port = server.getPort()) <= 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertTrue(port > 0);
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.stop(1000);
+    }
+
+    /** Text client that collects everything it receives. */
+    private static final class Client extends WebSocketClient {
+        final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+        Client(int port) { super(URI.create("ws://127.0.0.1:" + port)); }
+
+        @Override public void onOpen(ServerHandshake h) { }
+        @Override public void onMessage(String message) { received.add(message); }
+        @Override public void onClose(int code, String reason, boolean remote) { }
+        @Override public void onError(Exception ex) { }
+
+        String next() throws InterruptedException {
+            String m = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull("no message received", m);
+            return m;
+        }
+    }
+
+    @Test
+    public void broadcastReachesEverySubscriberAsTextFrame() throws Exception {
+        Client a = new Client(port), b = new Client(port), c = new Client(port);
+        try {
+            assertTrue(a.connectBlocking(5, TimeUnit.SECONDS));
+            assertTrue(b.connectBlocking(5, TimeUnit.SECONDS));
+            assertTrue(c.connectBlocking(5, TimeUnit.SECONDS));
+
+            a.send("{\"type\":\"JOIN_LOBBY\",\"correlationId\":\"1\",\"gameId\":\"ws\",\"playerId\":\"alice\"}");
+            a.next();
+            b.send("{\"type\":\"JOIN_LOBBY\",\"correlationId\":\"2\",\"gameId\":\"ws\",\"playerId\":\"bob\"}");
+            b.next();
+            a.next(); // LOBBY_JOIN for bob
+
+            // non-ASCII id checks the shared UTF-8 payload survives framing intact
+            c.send("{\"type\":\"JOIN_LOBBY\",\"correlationId\":\"3\",\"gameId\":\"ws\",\"playerId\":\"zoë\"}");
+            assertTrue(c.next().contains("\"playerId\":\"zoë\""));
+            String ea = a.next(), eb = b.next();
+            assertEquals(ea, eb);
+            assertTrue(ea, ea.contains("\"event\":\"LOBBY_JOIN\"") && ea.contains("\"playerId\":\"zoë\""));
+        } finally {
+            a.closeBlocking();
+            b.closeBlocking();
+            c.closeBlocking();
+        }
+    }
+}